@@ -0,0 +1,246 @@
+package bjc.utils.ioutils;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * A writer that incrementally encodes characters into bytes, and sends them to
+ * a channel or a byte buffer.
+ *
+ * Characters are staged in a fixed-size buffer, and encoded whenever it fills
+ * up, so no intermediate strings are created no matter how much gets written.
+ *
+ * Writers can be re-pointed at a new destination with the reset methods, so a
+ * single one can be reused for many outputs.
+ *
+ * @author Ben Culkin
+ */
+public class ChannelWriter extends Writer {
+	/**
+	 * The default size of the character and byte buffers.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	// The channel we send bytes to; null if we're filling a buffer instead
+	private WritableByteChannel channel;
+
+	// Characters that haven't been encoded yet
+	private CharBuffer chars;
+	// Bytes that haven't been sent to the channel yet
+	private ByteBuffer bytes;
+	// Our own byte buffer, used when we're writing to a channel
+	private ByteBuffer ownBytes;
+
+	private CharsetEncoder encoder;
+
+	/**
+	 * Create a new writer that writes UTF-8 to a channel.
+	 *
+	 * @param chan
+	 *             The channel to write to.
+	 */
+	public ChannelWriter(WritableByteChannel chan) {
+		this(chan, StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a new writer that writes to a channel.
+	 *
+	 * @param chan
+	 *                The channel to write to.
+	 * @param charset
+	 *                The charset to encode characters with.
+	 * @param bufSize
+	 *                The size of the character and byte buffers to use.
+	 */
+	public ChannelWriter(WritableByteChannel chan, Charset charset, int bufSize) {
+		this(charset, bufSize);
+
+		reset(chan);
+	}
+
+	/**
+	 * Create a new writer that writes UTF-8 into a byte buffer.
+	 *
+	 * If the buffer fills up, a {@link BufferOverflowException} is thrown.
+	 *
+	 * @param target
+	 *               The buffer to write into.
+	 */
+	public ChannelWriter(ByteBuffer target) {
+		this(StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+
+		reset(target);
+	}
+
+	/**
+	 * Create a new writer with no destination.
+	 *
+	 * One of the reset methods needs to be called before anything is written.
+	 *
+	 * @param charset
+	 *                The charset to encode characters with.
+	 * @param bufSize
+	 *                The size of the character and byte buffers to use.
+	 */
+	public ChannelWriter(Charset charset, int bufSize) {
+		chars    = CharBuffer.allocate(bufSize);
+		ownBytes = ByteBuffer.allocate(bufSize);
+
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Point this writer at a new channel.
+	 *
+	 * Anything that hasn't been written to the old destination is discarded,
+	 * so call {@link #finish()} first if that matters.
+	 *
+	 * @param chan
+	 *             The channel to write to.
+	 */
+	public void reset(WritableByteChannel chan) {
+		channel = chan;
+		bytes   = ownBytes;
+
+		clearState();
+	}
+
+	/**
+	 * Point this writer at a byte buffer.
+	 *
+	 * Anything that hasn't been written to the old destination is discarded,
+	 * so call {@link #finish()} first if that matters.
+	 *
+	 * @param target
+	 *               The buffer to write into.
+	 */
+	public void reset(ByteBuffer target) {
+		channel = null;
+		bytes   = target;
+
+		clearState();
+	}
+
+	// Clear out anything left over from the last destination
+	private void clearState() {
+		chars.clear();
+		ownBytes.clear();
+
+		encoder.reset();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int idx = off;
+		int end = off + len;
+
+		while (idx < end) {
+			int count = Math.min(end - idx, chars.remaining());
+
+			chars.put(cbuf, idx, count);
+			idx += count;
+
+			if (!chars.hasRemaining()) encodeChars(false);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		int idx = off;
+		int end = off + len;
+
+		while (idx < end) {
+			int count = Math.min(end - idx, chars.remaining());
+
+			chars.put(str, idx, idx + count);
+			idx += count;
+
+			if (!chars.hasRemaining()) encodeChars(false);
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if (!chars.hasRemaining()) encodeChars(false);
+
+		chars.put((char) c);
+	}
+
+	// Encode the staged characters into the byte buffer
+	private void encodeChars(boolean endOfInput) throws IOException {
+		chars.flip();
+
+		while (true) {
+			CoderResult res = encoder.encode(chars, bytes, endOfInput);
+
+			if (res.isUnderflow()) break;
+			else if (res.isOverflow()) drainBytes();
+			else res.throwException();
+		}
+
+		// Keep anything the encoder couldn't use yet, like half of a
+		// surrogate pair.
+		chars.compact();
+	}
+
+	// Send the encoded bytes to the channel
+	private void drainBytes() throws IOException {
+		if (channel == null) {
+			// The caller's buffer is full, and there is nowhere else to put
+			// things.
+			throw new BufferOverflowException();
+		}
+
+		bytes.flip();
+		while (bytes.hasRemaining()) channel.write(bytes);
+		bytes.clear();
+	}
+
+	/**
+	 * Encode everything written so far, and send it to the destination.
+	 *
+	 * Unlike {@link #flush()}, this also ends the encoding; this is what should
+	 * be called once everything has been written. The writer can be used again
+	 * afterwards.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing to the channel.
+	 */
+	public void finish() throws IOException {
+		encodeChars(true);
+
+		while (encoder.flush(bytes).isOverflow()) drainBytes();
+
+		if (channel != null) drainBytes();
+
+		encoder.reset();
+	}
+
+	/**
+	 * Encode everything written so far, and send it to the channel.
+	 *
+	 * Characters that can't be encoded on their own yet (half of a surrogate
+	 * pair, say) are held back until more characters are written.
+	 */
+	@Override
+	public void flush() throws IOException {
+		encodeChars(false);
+
+		if (channel != null) drainBytes();
+	}
+
+	/**
+	 * Finish writing, and close the channel if there is one.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+
+		if (channel != null) channel.close();
+	}
+}
@@ -1,7 +1,7 @@
 package bjc.utils.ioutils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,6 +10,9 @@ import java.util.regex.Pattern;
  * By default, grouping delimiters are (), [], {}, and &lt;&gt;, as well as single and
  * double quoted strings.
  *
+ * Delimiters that will be used for many strings can be compiled once, with
+ * {@link #compile(String...)}, instead of for every string.
+ *
  * @author bjculkin */
 public class LevelSplitter {
 	/** Default configured level splitter. */
@@ -26,61 +29,23 @@ public class LevelSplitter {
 	 * @return Whether or not any of the strings were contained outside of groups.
 	 */
 	public boolean levelContains(String haystack, String... needles) {
-		int nestLevel = 0;
-		int i = 0;
-
-		boolean prevCharWasSlash = false;
-		boolean inString = false;
-
-		char stringEnder = ' ';
-
-		while (i < haystack.length()) {
-			if (inString == false && nestLevel == 0) {
-				for (String needle : needles) {
-					if (haystack.regionMatches(i, needle, 0, needle.length())) {
-						return true;
-					}
-				}
-			}
-
-			if (inString) {
-				if (prevCharWasSlash == true) {
-					prevCharWasSlash = false;
-				} else if (haystack.charAt(i) == stringEnder) {
-					inString = false;
-				}
-			} else {
-				switch (haystack.charAt(i)) {
-				case '\'':
-					inString = true;
-					stringEnder = '\'';
-					break;
-				case '\"':
-					inString = true;
-					stringEnder = '\"';
-					break;
-				case '(':
-				case '[':
-				case '{':
-				case '<':
-					nestLevel += 1;
-					break;
-				case ')':
-				case ']':
-				case '}':
-				case '>':
-					nestLevel = Math.max(0, nestLevel - 1);
-					break;
-				default:
-					// Not a character we care about
-					break;
-				}
-			}
+		return levelContains(haystack, compile(needles));
+	}
 
-			i += 1;
-		}
+	/** Check if a string contains any one of a set of delimiters, respecting
+	 * groups.
+	 *
+	 * An empty delimiter is contained in any string that isn't empty, since it
+	 * matches at the start of it.
+	 *
+	 * @param haystack The string to look in.
+	 * @param needles The delimiters to look for.
+	 * @return Whether or not any of the delimiters were contained outside of groups.
+	 */
+	public boolean levelContains(CharSequence haystack, Delimiters needles) {
+		if (needles.hasEmpty && haystack.length() > 0) return true;
 
-		return false;
+		return new Scanner(haystack, needles).next() >= 0;
 	}
 
 	/** Split a string, respecting groups.
@@ -105,87 +70,236 @@ public class LevelSplitter {
 	 *         delimiters in between the split strings.
 	 */
 	public List<String> levelSplit(String phrase, boolean keepDelims, String... splits) {
-		String work = phrase;
+		return levelSplit(phrase, keepDelims, compile(splits));
+	}
+
+	/** Split a string, respecting groups.
+	 *
+	 * The string is only scanned once, and each piece of it is only copied
+	 * once, so this takes time linear in the length of the string.
+	 *
+	 * @param phrase The string to split.
+	 * @param keepDelims Whether or not to include the delimiters in the results.
+	 * @param splits The delimiters to split on.
+	 * 
+	 * @return A list of split strings. If keepDelims is true, it also includes the
+	 *         delimiters in between the split strings.
+	 *
+	 * @throws IllegalArgumentException If any of the delimiters are empty.
+	 */
+	public List<String> levelSplit(String phrase, boolean keepDelims, Delimiters splits) {
+		if (splits.hasEmpty) {
+			throw new IllegalArgumentException("Can't split on an empty delimiter");
+		}
 
 		List<String> strangs = new ArrayList<>();
 
-		int nestLevel = 0;
-		int i = 0;
+		Scanner scan = new Scanner(phrase, splits);
 
-		boolean prevCharWasSlash = false;
-		boolean inString = false;
+		int pieceStart = 0;
 
-		char stringEnder = ' ';
+		int delim;
+		while ((delim = scan.next()) >= 0) {
+			addPiece(strangs, phrase.substring(pieceStart, scan.matchStart));
 
-		// Shortcut empty strings
-		if (phrase.equals("")) {
-			strangs.add("");
+			if (keepDelims) strangs.add(splits.needles[delim]);
 
-			return strangs;
+			pieceStart = scan.pos;
 		}
 
-		while (i < work.length()) {
-			if (inString == false && nestLevel == 0) {
-				for (String split : splits) {
-					if (work.regionMatches(i, split, 0, split.length())) {
-						strangs.add(work.substring(0, i));
+		addPiece(strangs, phrase.substring(pieceStart));
 
-						if (keepDelims) strangs.add(split);
+		return strangs;
+	}
 
-						work = work.substring(i + split.length());
-						i = 0;
+	private void addPiece(List<String> strangs, String piece) {
+		if (ignoreEmpty && piece.isEmpty()) return;
 
-						continue;
-					}
+		strangs.add(piece);
+	}
+
+	/** Compile a set of delimiters, so that they can be used for many splits.
+	 *
+	 * @param delims The delimiters to compile.
+	 * @return The compiled delimiters.
+	 */
+	public static Delimiters compile(String... delims) {
+		return new Delimiters(delims);
+	}
+
+	/** A set of delimiters, compiled so that they can be quickly found.
+	 *
+	 * The delimiters are bucketed by their first character, so checking for
+	 * them at a position in a string only looks at the delimiters that start
+	 * with the character there. When more than one delimiter matches at the same
+	 * position, the one that was given first wins. Empty delimiters are
+	 * allowed, but are only of use to {@link LevelSplitter#levelContains}.
+	 *
+	 * These are immutable, and so can be shared and reused freely.
+	 *
+	 * @author Ben Culkin */
+	public static final class Delimiters {
+		private static final int[] NO_DELIMS = new int[0];
+
+		// The delimiters, in the order they were given
+		private final String[] needles;
+
+		// Indexes of delimiters starting with an ASCII char, by that char
+		private final int[][] asciiStarts;
+		// Indexes of delimiters starting with any other char
+		private final Map<Character, int[]> otherStarts;
+
+		// Whether any of the delimiters are empty
+		private final boolean hasEmpty;
+
+		private Delimiters(String... delims) {
+			needles = delims.clone();
+
+			Map<Character, List<Integer>> starts = new HashMap<>();
+
+			boolean sawEmpty = false;
+
+			for (int i = 0; i < needles.length; i++) {
+				// These don't start with anything, so they can't be bucketed
+				if (needles[i].isEmpty()) {
+					sawEmpty = true;
+					continue;
 				}
+
+				starts.computeIfAbsent(needles[i].charAt(0), (chr) -> new ArrayList<>())
+						.add(i);
 			}
 
-			if (inString) {
-				if (prevCharWasSlash == true) {
-					prevCharWasSlash = false;
-				} else if (work.charAt(i) == stringEnder) {
-					inString = false;
-				}
-			} else {
-				/*
-				 * @TODO Ben Culkin 9/4/18 :DelimiterEnd
-				 *
-				 * This currently crashes if the string ends with one of the delimiters in
-				 * question.
-				 */
-				switch (work.charAt(i)) {
-				case '\'':
-					inString = true;
-					stringEnder = '\'';
-					break;
-				case '\"':
-					inString = true;
-					stringEnder = '\"';
-					break;
-				case '(':
-				case '[':
-				case '{':
-				case '<':
-					nestLevel += 1;
-					break;
-				case ')':
-				case ']':
-				case '}':
-				case '>':
-					nestLevel = Math.max(0, nestLevel - 1);
-					break;
-				default:
-					// Not a character we care about
-					break;
-				}
+			hasEmpty = sawEmpty;
+
+			asciiStarts = new int[128][];
+			otherStarts = new HashMap<>();
+
+			Arrays.fill(asciiStarts, NO_DELIMS);
+
+			for (Entry<Character, List<Integer>> start : starts.entrySet()) {
+				int[] idxs = start.getValue().stream().mapToInt(Integer::intValue).toArray();
+
+				char chr = start.getKey();
+				if (chr < asciiStarts.length) asciiStarts[chr] = idxs;
+				else                          otherStarts.put(chr, idxs);
 			}
+		}
 
-			i += 1;
+		/** Get the delimiters.
+		 *
+		 * @return The delimiters, in the order they were given.
+		 */
+		public List<String> getDelimiters() {
+			return Collections.unmodifiableList(Arrays.asList(needles));
 		}
 
-		strangs.add(work);
+		// Get the index of the delimiter at a position, or -1 if there isn't one
+		private int matchAt(CharSequence seq, int pos) {
+			char chr = seq.charAt(pos);
 
-		return strangs;
+			int[] idxs;
+			if (chr < asciiStarts.length) idxs = asciiStarts[chr];
+			else                          idxs = otherStarts.getOrDefault(chr, NO_DELIMS);
+
+			for (int idx : idxs) {
+				if (regionMatches(seq, pos, needles[idx])) return idx;
+			}
+
+			return -1;
+		}
+
+		private static boolean regionMatches(CharSequence seq, int pos, String needle) {
+			if (pos + needle.length() > seq.length()) return false;
+
+			// The first char already matched, to get here.
+			for (int i = 1; i < needle.length(); i++) {
+				if (seq.charAt(pos + i) != needle.charAt(i)) return false;
+			}
+
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Delimiters %s", Arrays.toString(needles));
+		}
+	}
+
+	/* Finds the delimiters that are outside of groups, one after another. */
+	private static final class Scanner {
+		private final CharSequence seq;
+		private final Delimiters delims;
+
+		private int nestLevel = 0;
+
+		private boolean inString = false;
+		private char stringEnder = ' ';
+
+		// Where to continue scanning from; after a match, this is just past it
+		int pos = 0;
+		// Where the last match started
+		int matchStart = -1;
+
+		Scanner(CharSequence seq, Delimiters delims) {
+			this.seq = seq;
+			this.delims = delims;
+		}
+
+		// Find the next delimiter, returning its index, or -1 if there aren't
+		// any more
+		int next() {
+			int len = seq.length();
+
+			while (pos < len) {
+				if (inString == false && nestLevel == 0) {
+					int delim = delims.matchAt(seq, pos);
+
+					if (delim >= 0) {
+						matchStart = pos;
+						pos += delims.needles[delim].length();
+
+						return delim;
+					}
+				}
+
+				char chr = seq.charAt(pos);
+
+				if (inString) {
+					if (chr == stringEnder) inString = false;
+				} else {
+					switch (chr) {
+					case '\'':
+						inString = true;
+						stringEnder = '\'';
+						break;
+					case '\"':
+						inString = true;
+						stringEnder = '\"';
+						break;
+					case '(':
+					case '[':
+					case '{':
+					case '<':
+						nestLevel += 1;
+						break;
+					case ')':
+					case ']':
+					case '}':
+					case '>':
+						nestLevel = Math.max(0, nestLevel - 1);
+						break;
+					default:
+						// Not a character we care about
+						break;
+					}
+				}
+
+				pos += 1;
+			}
+
+			return -1;
+		}
 	}
 
 	// @TODO @FIXME
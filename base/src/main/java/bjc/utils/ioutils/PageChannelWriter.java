@@ -0,0 +1,281 @@
+package bjc.utils.ioutils;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * A writer that encodes output a page at a time, and writes finished pages to
+ * a file.
+ *
+ * Each page is encoded into a single direct byte buffer, which is reused for
+ * every page. When a page is finished (a {@link ReportWriter} writing to one
+ * of these finishes them as it paginates), everything up to the last block
+ * boundary in the file is written in one go, and only the part of the last
+ * block that isn't full yet is kept for the next page. This keeps the writes
+ * to the file large, and lined up with the blocks of the file.
+ *
+ * If a page doesn't fit in the buffer, the full blocks of it are written out
+ * early, so pages can be any size.
+ *
+ * @author Ben Culkin
+ */
+public class PageChannelWriter extends Writer implements PageSink {
+	/**
+	 * The default size of the page buffer.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+
+	/**
+	 * The default size of the blocks that writes are lined up with.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	private FileChannel channel;
+	// Where in the file the first byte in the page buffer goes
+	private long filePos;
+
+	private final int blockSize;
+
+	// Characters that haven't been encoded yet
+	private final CharBuffer chars;
+	// The page being encoded
+	private final ByteBuffer page;
+
+	private final CharsetEncoder encoder;
+
+	/**
+	 * Create a new writer that writes UTF-8 to a file.
+	 *
+	 * @param chan
+	 *             The channel for the file to write to. Writing starts at the
+	 *             current position of the channel.
+	 *
+	 * @throws IOException
+	 *                     If the position of the channel can't be read.
+	 */
+	public PageChannelWriter(FileChannel chan) throws IOException {
+		this(chan, StandardCharsets.UTF_8, DEFAULT_PAGE_SIZE, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Create a new writer that writes to a file.
+	 *
+	 * @param chan
+	 *                  The channel for the file to write to. Writing starts at
+	 *                  the current position of the channel.
+	 * @param charset
+	 *                  The charset to encode characters with.
+	 * @param pageSize
+	 *                  The size of the page buffer, in bytes.
+	 * @param blockSize
+	 *                  The size of the blocks to line writes up with, in bytes.
+	 *
+	 * @throws IOException
+	 *                     If the position of the channel can't be read.
+	 */
+	public PageChannelWriter(FileChannel chan, Charset charset, int pageSize,
+			int blockSize) throws IOException {
+		if (blockSize < 1) {
+			String msg = String.format("Block size must be positive (was %d)",
+					blockSize);
+
+			throw new IllegalArgumentException(msg);
+		} else if (pageSize < blockSize) {
+			String msg = String.format(
+					"Page size (%d) must be at least the block size (%d)", pageSize,
+					blockSize);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.blockSize = blockSize;
+
+		chars = CharBuffer.allocate(ChannelWriter.DEFAULT_BUFFER_SIZE);
+		page  = ByteBuffer.allocateDirect(pageSize);
+
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		reset(chan);
+	}
+
+	/**
+	 * Point this writer at a new file.
+	 *
+	 * Anything that hasn't been written to the old file is discarded, so call
+	 * {@link #finish()} first if that matters.
+	 *
+	 * @param chan
+	 *             The channel for the file to write to. Writing starts at the
+	 *             current position of the channel.
+	 *
+	 * @throws IOException
+	 *                     If the position of the channel can't be read.
+	 */
+	public void reset(FileChannel chan) throws IOException {
+		channel = chan;
+		filePos = chan.position();
+
+		chars.clear();
+		page.clear();
+
+		encoder.reset();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int idx = off;
+		int end = off + len;
+
+		while (idx < end) {
+			int count = Math.min(end - idx, chars.remaining());
+
+			chars.put(cbuf, idx, count);
+			idx += count;
+
+			if (!chars.hasRemaining()) encodeChars(false);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		int idx = off;
+		int end = off + len;
+
+		while (idx < end) {
+			int count = Math.min(end - idx, chars.remaining());
+
+			chars.put(str, idx, idx + count);
+			idx += count;
+
+			if (!chars.hasRemaining()) encodeChars(false);
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if (!chars.hasRemaining()) encodeChars(false);
+
+		chars.put((char) c);
+	}
+
+	// Encode the staged characters into the page
+	private void encodeChars(boolean endOfInput) throws IOException {
+		chars.flip();
+
+		while (true) {
+			CoderResult res = encoder.encode(chars, page, endOfInput);
+
+			if (res.isUnderflow()) break;
+			else if (res.isOverflow()) makeRoom();
+			else res.throwException();
+		}
+
+		// Keep anything the encoder couldn't use yet, like half of a
+		// surrogate pair.
+		chars.compact();
+	}
+
+	// Make room in a full page for the encoder to carry on
+	private void makeRoom() throws IOException {
+		int used = page.position();
+
+		writeBlocks();
+
+		// If the page doesn't hold a whole block past the last boundary (it can
+		// be as small as a block, and a character can straddle its end), write
+		// out the partial block instead of waiting for one that won't come.
+		if (page.position() == used) writeBytes(used);
+	}
+
+	// Write everything in the page up to the last block boundary
+	private void writeBlocks() throws IOException {
+		long end = filePos + page.position();
+
+		writeBytes((int) (end - end % blockSize - filePos));
+	}
+
+	// Write the first count bytes of the page, and keep the rest
+	private void writeBytes(int count) throws IOException {
+		if (count <= 0) return;
+
+		page.flip();
+
+		int limit = page.limit();
+		page.limit(count);
+
+		while (page.hasRemaining()) channel.write(page, filePos + page.position());
+
+		page.limit(limit);
+		page.compact();
+
+		filePos += count;
+	}
+
+	/**
+	 * Finish the current page.
+	 *
+	 * Everything up to the last block boundary is written to the file; the
+	 * rest is kept for the next page.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing to the file.
+	 */
+	@Override
+	public void endPage() throws IOException {
+		encodeChars(false);
+
+		writeBlocks();
+	}
+
+	/**
+	 * Encode everything written so far, and write it to the file.
+	 *
+	 * This ends the encoding, and writes the last block even if it isn't full;
+	 * this is what should be called once everything has been written. The
+	 * channel is left positioned after the last byte written, and the writer
+	 * can be used again afterwards.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing to the file.
+	 */
+	public void finish() throws IOException {
+		encodeChars(true);
+
+		while (encoder.flush(page).isOverflow()) makeRoom();
+
+		writeBytes(page.position());
+
+		channel.position(filePos);
+
+		encoder.reset();
+	}
+
+	/**
+	 * Encode everything written so far, and write it to the file.
+	 *
+	 * Unlike {@link #endPage()}, this writes the last block even if it isn't
+	 * full yet.
+	 */
+	@Override
+	public void flush() throws IOException {
+		encodeChars(false);
+
+		writeBytes(page.position());
+
+		channel.position(filePos);
+	}
+
+	/**
+	 * Finish writing, and close the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+
+		channel.close();
+	}
+}
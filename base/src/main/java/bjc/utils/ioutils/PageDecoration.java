@@ -0,0 +1,28 @@
+package bjc.utils.ioutils;
+
+import java.io.*;
+
+/**
+ * Something printed at the top or bottom of every page of a
+ * {@link ReportWriter}, like a page header or footer.
+ *
+ * @author Ben Culkin
+ */
+@FunctionalInterface
+public interface PageDecoration {
+	/**
+	 * Print the decoration for a page.
+	 *
+	 * What is written goes straight to the output; it isn't indented, and
+	 * doesn't count towards the lines on the page.
+	 *
+	 * @param out
+	 *             The place to write the decoration to.
+	 * @param page
+	 *             The number of the page being decorated, counting from one.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing the decoration.
+	 */
+	void decorate(Writer out, int page) throws IOException;
+}
@@ -0,0 +1,22 @@
+package bjc.utils.ioutils;
+
+import java.io.*;
+
+/**
+ * Something a {@link ReportWriter} writes to that wants to know where its
+ * pages end, such as to write each page out in one go.
+ *
+ * @author Ben Culkin
+ */
+public interface PageSink {
+	/**
+	 * Finish the current page.
+	 *
+	 * This is called after the footer for the page has been written, and
+	 * before anything on the next page is.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong finishing the page.
+	 */
+	void endPage() throws IOException;
+}
@@ -3,6 +3,7 @@ package bjc.utils.ioutils;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Arrays;
 
 import bjc.esodata.DefaultList;
 
@@ -26,6 +27,11 @@ public class ReportWriter extends Writer {
 		// Indent string w/ tabs replaced with spaces
 		public String indentStrSpacedTabs;
 
+		// Pre-rendered forms of the above, so printing an indent is a single
+		// bulk write.
+		public char[] indentChars;
+		public char[] indentCharsSpacedTabs;
+
 		public IndentVal() {}
 	}
 
@@ -44,6 +50,8 @@ public class ReportWriter extends Writer {
 
 	// # of char. positions to the tab
 	private int tabEqv = 8;
+	// The spaces that a tab is printed as
+	private char[] tabSpaces = spaces(8);
 	// @NOTE 9/17/18
 	//
 	// Consider adding support for both the vertical tab, and variable tab
@@ -55,6 +63,8 @@ public class ReportWriter extends Writer {
 
 	// The total count of lines printed
 	private int linesWritten = 0;
+	// The total count of characters printed, not counting page decorations
+	private long charsWritten = 0;
 	// The current position in the line
 	private int linePos = 0;
 
@@ -67,6 +77,12 @@ public class ReportWriter extends Writer {
 	private int pageNum = 0;
 	// The number of lines per page
 	private int linesPerPage = 20;
+	// Whether anything has been printed on the current page yet
+	private boolean pageStarted;
+
+	// What gets printed at the top and bottom of each page, if anything
+	private PageDecoration pageHeader;
+	private PageDecoration pageFooter;
 
 	// Whether or not to print tabs as spaces.
 	private boolean printTabsAsSpaces;
@@ -127,6 +143,25 @@ public class ReportWriter extends Writer {
 		return linesPerPage;
 	}
 
+	/**
+	 * Get what is printed at the top of every page.
+	 *
+	 * @return What is printed at the top of every page, or null if nothing is.
+	 */
+	public PageDecoration getPageHeader() {
+		return pageHeader;
+	}
+
+	/**
+	 * Get what is printed at the bottom of every page.
+	 *
+	 * @return What is printed at the bottom of every page, or null if nothing
+	 *         is.
+	 */
+	public PageDecoration getPageFooter() {
+		return pageFooter;
+	}
+
 	/**
 	 * Get the current indent position.
 	 *
@@ -176,6 +211,18 @@ public class ReportWriter extends Writer {
 		return linesWritten;
 	}
 
+	/**
+	 * Get the total number of characters written.
+	 *
+	 * This counts everything written through this writer, including
+	 * indentation and expanded tabs, but not page headers or footers.
+	 *
+	 * @return The total number of characters written.
+	 */
+	public long getCharsWritten() {
+		return charsWritten;
+	}
+
 	/**
 	 * Get the current position in the line.
 	 *
@@ -251,20 +298,38 @@ public class ReportWriter extends Writer {
 	 *              The number of lines per page.
 	 */
 	public void setLinesPerPage(int lines) {
+		// The lines on the current page have already been printed, so if
+		// there are too many of them now, the page just ends after the
+		// next newline.
 		linesPerPage = lines;
+	}
 
-		// @NOTE 9/17/18
-		//
-		// This is somewhat questionable as to what should happen, as
-		// the lines have already been printed.
-		//
-		// Right now, we just call writePage, which resets the line
-		// counts. If writePage gets changed to add additional
-		// functionality, it is questionable as to what we should do in
-		// that case; whether we should continue calling the function,
-		// or just adjust the counts and pretend that nothing
-		// significant happened
-		while (pageLine > linesPerPage) writePage();
+	/**
+	 * Set what is printed at the top of every page.
+	 *
+	 * The header for a page is printed just before the first thing on that
+	 * page, so a page with nothing on it doesn't get one.
+	 *
+	 * @param header
+	 *               What to print at the top of every page, or null to print
+	 *               nothing.
+	 */
+	public void setPageHeader(PageDecoration header) {
+		pageHeader = header;
+	}
+
+	/**
+	 * Set what is printed at the bottom of every page.
+	 *
+	 * The footer for a page is printed once the page is full, before a form
+	 * feed, or when the writer is closed.
+	 *
+	 * @param footer
+	 *               What to print at the bottom of every page, or null to print
+	 *               nothing.
+	 */
+	public void setPageFooter(PageDecoration footer) {
+		pageFooter = footer;
 	}
 
 	/**
@@ -285,6 +350,7 @@ public class ReportWriter extends Writer {
 	 */
 	public void setTabEqv(int eqv) {
 		tabEqv = eqv;
+		tabSpaces = spaces(eqv);
 
 		// Recalculate position count of indentStr
 		refreshIndents(-1);
@@ -376,10 +442,30 @@ public class ReportWriter extends Writer {
 		}
 
 		vl.indentStrSpacedTabs = conv.toString();
+
+		vl.indentChars           = vl.indentStr.toCharArray();
+		vl.indentCharsSpacedTabs = vl.indentStrSpacedTabs.toCharArray();
+	}
+
+	// Create an array of a given number of spaces
+	private static char[] spaces(int count) {
+		char[] res = new char[Math.max(0, count)];
+
+		Arrays.fill(res, ' ');
+
+		return res;
+	}
+
+	// Check if a character needs special handling when written
+	private static boolean isSpecial(char c) {
+		return c == '\n' || c == '\r' || c == '\f' || c == '\t';
 	}
 
 	/**
 	 * Duplicate this writers settings.
+	 *
+	 * Page headers and footers aren't copied, since the new writer is usually
+	 * collecting output that will end up in this one.
 	 * 
 	 * @param contents
 	 *                 The internal writer to use.
@@ -389,6 +475,22 @@ public class ReportWriter extends Writer {
 	public ReportWriter duplicate(Writer contents) {
 		ReportWriter rw = new ReportWriter(contents);
 
+		duplicateOnto(rw);
+
+		return rw;
+	}
+
+	/**
+	 * Copy this writers settings onto another writer.
+	 *
+	 * This is the same as {@link #duplicate(Writer)}, except that it reuses an
+	 * existing writer, which keeps writing to the place it was already writing
+	 * to.
+	 *
+	 * @param rw
+	 *           The writer to copy our settings to.
+	 */
+	public void duplicateOnto(ReportWriter rw) {
 		rw.iVals = iVals;
 		rw.defIVal = defIVal;
 
@@ -396,8 +498,10 @@ public class ReportWriter extends Writer {
 		rw.indentPos = indentPos;
 
 		rw.tabEqv = tabEqv;
+		rw.tabSpaces = tabSpaces;
 
 		rw.linesWritten = linesWritten;
+		rw.charsWritten = charsWritten;
 		rw.linePos = linePos;
 		rw.lineSpacing = lineSpacing;
 
@@ -411,11 +515,43 @@ public class ReportWriter extends Writer {
 		//
 		// Not sure if the lastChar* properties are things we should
 		// copy.
+		//
+		// Reset them, so a reused writer acts the same as a new one.
+		rw.lastCharWasNL = false;
+		rw.lastChar = '\0';
+	}
 
-		return rw;
+	/**
+	 * Point this writer at a new writer, and reset all of its position
+	 * tracking.
+	 *
+	 * Configuration settings (indentation strings, tab size, line spacing and
+	 * such) are kept, but the indentation level goes back to zero, and the
+	 * line, page and column counts start over as if nothing had been written.
+	 *
+	 * This is so that a single writer can be reused for many outputs.
+	 *
+	 * @param write
+	 *              The place to write to.
+	 */
+	public void reset(Writer write) {
+		contained = write;
+
+		indentLevel = 0;
+		indentPos = 0;
+
+		linesWritten = 0;
+		charsWritten = 0;
+		linePos = 0;
+
+		pageLine = 0;
+		pageNum = 0;
+		pageStarted = false;
+
+		lastCharWasNL = false;
+		lastChar = '\0';
 	}
 
-	
 	/**
 	 * Create a new report writer that writes to a new blank string writer.
 	 */
@@ -509,38 +645,70 @@ public class ReportWriter extends Writer {
 		sb.delete(0, sb.length());
 	}
 
-	// @NOTE 9/17/18
+	// Print the header for the page we're starting to write on
+	private void startPage() throws IOException {
+		pageStarted = true;
+
+		if (pageHeader != null) pageHeader.decorate(contained, pageNum + 1);
+	}
+
+	// Print the footer for the current page, if it has anything on it, and let
+	// the writer we write to know the page is done if it is a PageSink.
 	//
-	// Need to make some decision about how to handle doing a new page, and
-	// whether we want to simulate it with simply newlines until we hit the
-	// next page, or just printing the actual form-feed and hoping whatever
-	// reading software handles it properly
-	private void writePage() {
-		pageNum += 1;
-		pageLine -= linesPerPage;
+	// Pages aren't separated by anything other than their headers and
+	// footers; a footer can end with a form feed if one is wanted.
+	private void endPage() throws IOException {
+		if (!pageStarted) return;
+
+		pageStarted = false;
+
+		if (pageFooter != null) pageFooter.decorate(contained, pageNum + 1);
+
+		if (contained instanceof PageSink) ((PageSink) contained).endPage();
 	}
 
 	private void writeNL(char c) throws IOException {
+		if (!pageStarted) startPage();
+
+		// A form feed always ends the page, and the footer for it needs to go
+		// before the feed.
+		if (c == '\f') {
+			endPage();
+
+			pageNum += 1;
+			pageLine = 0;
+		} else {
+			pageLine += lineSpacing;
+		}
+
 		// Count lines written
 		linesWritten += lineSpacing;
-		pageLine += lineSpacing;
 
 		lastCharWasNL = true;
 
 		for (int i = 0; i < lineSpacing; i++) {
 			contained.write(c);
+			charsWritten += 1;
 
 			// If we're printing CRLF pairs, make sure that we don't
 			// print incomplete pairs.
 			if (i < lineSpacing - 1) {
-				if (c == '\n' && lastChar == '\r') contained.write('\r');
+				if (c == '\n' && lastChar == '\r') {
+					contained.write('\r');
+					charsWritten += 1;
+				}
 			}
 		}
 
-		// @NOTE 9/17/18
-		//
-		// Not sure if this should be here, or before the above loop
-		if (pageLine > linesPerPage || c == '\f') writePage();
+		if (pageLine >= linesPerPage) {
+			endPage();
+
+			// With line spacing, part of the spacing can spill onto the
+			// next page. Nothing else does, even if the page was already
+			// overfull from shrinking the page length.
+			pageNum += 1;
+			pageLine = Math.min(pageLine - linesPerPage, lineSpacing - 1);
+		}
 
 		linePos = 0;
 		indentPos = 0;
@@ -555,37 +723,60 @@ public class ReportWriter extends Writer {
 		if (lastCharWasNL) {
 			lastCharWasNL = false;
 
+			if (!pageStarted) startPage();
+
 			printIndents();
 		}
 
-		for (int i = 0; i < len; i++) {
-			int idx = i + off;
+		int end = off + len;
+		int idx = off;
 
-			char c = cbuf[idx];
+		while (idx < end) {
+			// Find the run of ordinary characters up to the next one that
+			// needs special handling, and write it all at once.
+			int runStart = idx;
+			while (idx < end && !isSpecial(cbuf[idx])) idx += 1;
+
+			int runLength = idx - runStart;
+			if (runLength > 0) {
+				if (!pageStarted) startPage();
 
-			if ((c == '\n' && lastChar != '\r') 
-					|| c == '\n' 
-					|| c == '\r'
-					|| c == '\f') {
-				writeNL(c);
-			} else {
 				if (lastCharWasNL) {
 					lastCharWasNL = false;
 
 					printIndents();
 				}
 
-				if (c == '\t') {
-					linePos += tabEqv;
+				contained.write(cbuf, runStart, runLength);
+
+				linePos      += runLength;
+				charsWritten += runLength;
+				lastChar = cbuf[idx - 1];
+			}
+
+			if (idx == end) break;
+
+			char c = cbuf[idx];
+
+			if (c == '\t') {
+				if (!pageStarted) startPage();
+
+				if (lastCharWasNL) {
+					lastCharWasNL = false;
 
-					for (int j = 0; j < tabEqv; j++) contained.write(' ');
-				} else {
-					linePos += 1;
-					contained.write(c);
+					printIndents();
 				}
+
+				linePos      += tabEqv;
+				charsWritten += tabSpaces.length;
+
+				contained.write(tabSpaces, 0, tabSpaces.length);
+			} else {
+				writeNL(c);
 			}
 
 			lastChar = c;
+			idx += 1;
 		}
 	}
 
@@ -593,11 +784,15 @@ public class ReportWriter extends Writer {
 		for (int j = 0; j < indentLevel; j++) {
 			IndentVal ival = iVals.get(j);
 
-			if (printTabsAsSpaces) contained.write(ival.indentStrSpacedTabs);
-			else                   contained.write(ival.indentStr);
+			char[] indent;
+			if (printTabsAsSpaces) indent = ival.indentCharsSpacedTabs;
+			else                   indent = ival.indentChars;
+
+			contained.write(indent, 0, indent.length);
 
-			linePos   += ival.indentStrPos;
-			indentPos += ival.indentStrPos;
+			linePos      += ival.indentStrPos;
+			indentPos    += ival.indentStrPos;
+			charsWritten += indent.length;
 		}
 	}
 
@@ -606,8 +801,14 @@ public class ReportWriter extends Writer {
 		contained.flush();
 	}
 
+	/**
+	 * Print the footer for the last page, if it has anything on it, then close
+	 * the contained writer.
+	 */
 	@Override
 	public void close() throws IOException {
+		endPage();
+
 		contained.close();
 	}
 
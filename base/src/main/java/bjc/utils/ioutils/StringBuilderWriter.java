@@ -0,0 +1,157 @@
+package bjc.utils.ioutils;
+
+import java.io.*;
+
+/**
+ * A writer that collects its output into a {@link StringBuilder}.
+ *
+ * Unlike {@link StringWriter}, this is unsynchronized, gives direct access to
+ * the characters written so far so they can be edited in place, and can be
+ * cleared and reused without giving up its storage.
+ *
+ * @author Ben Culkin
+ */
+public class StringBuilderWriter extends Writer {
+	// Size of the chunks used to copy our contents to another writer
+	private static final int TRANSFER_SIZE = 1024;
+
+	private StringBuilder builder;
+
+	// Buffer used to copy our contents to another writer
+	private char[] transfer;
+
+	/**
+	 * Create a new empty writer.
+	 */
+	public StringBuilderWriter() {
+		builder = new StringBuilder();
+	}
+
+	/**
+	 * Create a new empty writer with a given initial capacity.
+	 *
+	 * @param capacity
+	 *                 The number of characters to make room for.
+	 */
+	public StringBuilderWriter(int capacity) {
+		builder = new StringBuilder(capacity);
+	}
+
+	/**
+	 * Get the builder that holds the output.
+	 *
+	 * Changes to the builder are changes to the output.
+	 *
+	 * @return The builder holding the output.
+	 */
+	public StringBuilder getBuilder() {
+		return builder;
+	}
+
+	/**
+	 * Get the number of characters written.
+	 *
+	 * @return The number of characters written.
+	 */
+	public int length() {
+		return builder.length();
+	}
+
+	/**
+	 * Throw away everything that has been written.
+	 *
+	 * The storage for the output is kept around for reuse.
+	 */
+	public void clear() {
+		builder.setLength(0);
+	}
+
+	/**
+	 * Throw away everything that has been written, as well as any storage over a
+	 * given size.
+	 *
+	 * @param maxCapacity
+	 *                    The largest amount of storage to hold on to.
+	 */
+	public void clear(int maxCapacity) {
+		builder.setLength(0);
+
+		if (builder.capacity() > maxCapacity) builder.trimToSize();
+	}
+
+	/**
+	 * Write everything written so far to another writer.
+	 *
+	 * This copies through a small reusable buffer instead of converting the
+	 * output into a string first.
+	 *
+	 * @param target
+	 *               The writer to copy the output to.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing to the writer.
+	 */
+	public void writeTo(Writer target) throws IOException {
+		if (transfer == null) transfer = new char[TRANSFER_SIZE];
+
+		int len = builder.length();
+
+		for (int start = 0; start < len; start += TRANSFER_SIZE) {
+			int end = Math.min(len, start + TRANSFER_SIZE);
+
+			builder.getChars(start, end, transfer, 0);
+			target.write(transfer, 0, end - start);
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		builder.append(cbuf, off, len);
+	}
+
+	@Override
+	public void write(int c) {
+		builder.append((char) c);
+	}
+
+	@Override
+	public void write(String str, int off, int len) {
+		builder.append(str, off, off + len);
+	}
+
+	@Override
+	public StringBuilderWriter append(CharSequence csq) {
+		builder.append(csq);
+
+		return this;
+	}
+
+	@Override
+	public StringBuilderWriter append(CharSequence csq, int start, int end) {
+		builder.append(csq, start, end);
+
+		return this;
+	}
+
+	@Override
+	public StringBuilderWriter append(char c) {
+		builder.append(c);
+
+		return this;
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to flush
+	}
+
+	@Override
+	public void close() {
+		// Nothing to close
+	}
+
+	@Override
+	public String toString() {
+		return builder.toString();
+	}
+}
@@ -1,5 +1,8 @@
 package bjc.utils.math;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * A variety of functions for doing useful stuff with numbers.
  *
@@ -14,6 +17,42 @@ public class NumberUtils {
 	 * implemented by roman()).
 	 */
 
+	/*
+	 * Numbers below this have their cardinals, ordinals and roman numerals
+	 * cached once they have been converted.
+	 */
+	private static final int CACHE_SIZE = 10000;
+
+	/*
+	 * The caches for converted numbers.
+	 *
+	 * These are kept in their own class so that they aren't created until
+	 * something is converted. Entries are filled in as they are used; two
+	 * threads may convert the same number at once, but they both store the
+	 * same string, so that does no harm.
+	 */
+	private static final class Cache {
+		static final String[] CARDINALS      = new String[CACHE_SIZE];
+		static final String[] ORDINALS       = new String[CACHE_SIZE];
+		static final String[] ROMANS         = new String[CACHE_SIZE];
+		static final String[] CLASSIC_ROMANS = new String[CACHE_SIZE];
+	}
+
+	// The values of the roman numerals, from largest to smallest
+	private static final long[] ROMAN_VALUES = {
+			1000, 900, 500, 400, 100, 90, 50, 40, 10, 9, 5, 4, 1
+	};
+
+	private static final String[] ROMAN_NUMERALS = {
+			"M", "CM", "D", "CD", "C", "XC", "L", "XL", "X", "IX", "V", "IV", "I"
+	};
+
+	// Which of the numerals are left out of classic roman numerals
+	private static final boolean[] ROMAN_SUBTRACTIVE = {
+			false, true, false, true, false, true, false, true, false, true, false,
+			true, false
+	};
+
 	/**
 	 * Convert a number into a roman numeral.
 	 *
@@ -25,111 +64,97 @@ public class NumberUtils {
 	 * @return The number as a roman numeral.
 	 */
 	public static String toRoman(long number, boolean classic) {
-		StringBuilder work = new StringBuilder();
-
-		long currNumber = number;
+		if (number >= 0 && number < CACHE_SIZE) return cachedRoman((int) number, classic);
 
-		if (currNumber == 0) {
-			return "N";
-		}
-
-		if (currNumber < 0) {
-			currNumber *= -1;
+		StringBuilder work = new StringBuilder();
 
-			work.append("-");
+		try {
+			appendRoman(number, classic, work);
+		} catch (IOException ioex) {
+			// StringBuilders don't throw IOException
+			throw new UncheckedIOException(ioex);
 		}
 
-		if (currNumber >= 1000) {
-			int numM = (int) (currNumber / 1000);
-			currNumber = currNumber % 1000;
-
-			for (int i = 0; i < numM; i++) {
-				work.append("M");
-			}
-		}
+		return work.toString();
+	}
 
-		if (currNumber >= 900 && !classic) {
-			currNumber = currNumber % 900;
+	/**
+	 * Write a number as a roman numeral.
+	 *
+	 * @param number
+	 *                The number to convert.
+	 * @param classic
+	 *                Whether to use classic roman numerals (use IIII instead of IV,
+	 *                and such).
+	 * @param out
+	 *                The place to write the numeral to.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing the numeral.
+	 */
+	public static void appendRoman(long number, boolean classic, Appendable out)
+			throws IOException {
+		if (number >= 0 && number < CACHE_SIZE) {
+			out.append(cachedRoman((int) number, classic));
 
-			work.append("CM");
+			return;
 		}
 
-		if (currNumber >= 500) {
-			currNumber = currNumber % 500;
-
-			work.append("D");
-		}
+		spellRoman(number, classic, out);
+	}
 
-		if (currNumber >= 400 && !classic) {
-			currNumber = currNumber % 400;
+	private static String cachedRoman(int number, boolean classic) {
+		String[] cache = classic ? Cache.CLASSIC_ROMANS : Cache.ROMANS;
 
-			work.append("CD");
-		}
+		String res = cache[number];
 
-		if (currNumber >= 100) {
-			int numC = (int) (currNumber / 100);
-			currNumber = currNumber % 100;
+		if (res == null) {
+			StringBuilder work = new StringBuilder();
 
-			for (int i = 0; i < numC; i++) {
-				work.append("C");
+			try {
+				spellRoman(number, classic, work);
+			} catch (IOException ioex) {
+				throw new UncheckedIOException(ioex);
 			}
-		}
 
-		if (currNumber >= 90 && !classic) {
-			currNumber = currNumber % 90;
+			res = work.toString();
 
-			work.append("XC");
+			cache[number] = res;
 		}
 
-		if (currNumber >= 50) {
-			currNumber = currNumber % 50;
-
-			work.append("L");
-		}
-
-		if (currNumber >= 40 && !classic) {
-			currNumber = currNumber % 40;
-
-			work.append("XL");
-		}
+		return res;
+	}
 
-		if (currNumber >= 10) {
-			int numX = (int) (currNumber / 10);
-			currNumber = currNumber % 10;
+	private static void spellRoman(long number, boolean classic, Appendable out)
+			throws IOException {
+		if (number == 0) {
+			out.append('N');
 
-			for (int i = 0; i < numX; i++) {
-				work.append("X");
-			}
+			return;
 		}
 
-		if (currNumber >= 9 && !classic) {
-			currNumber = currNumber % 9;
-
-			work.append("IX");
-		}
+		long currNumber = number;
 
-		if (currNumber >= 5) {
-			currNumber = currNumber % 5;
+		if (currNumber < 0) {
+			currNumber *= -1;
 
-			work.append("V");
+			out.append('-');
 		}
 
-		if (currNumber >= 4 && !classic) {
-			currNumber = currNumber % 4;
+		for (int i = 0; i < ROMAN_VALUES.length; i++) {
+			if (classic && ROMAN_SUBTRACTIVE[i]) continue;
 
-			work.append("IV");
-		}
+			long value = ROMAN_VALUES[i];
 
-		if (currNumber >= 1) {
-			int numI = (int) (currNumber / 1);
-			currNumber = currNumber % 1;
+			if (currNumber >= value) {
+				int count = (int) (currNumber / value);
+				currNumber = currNumber % value;
 
-			for (int i = 0; i < numI; i++) {
-				work.append("I");
+				for (int j = 0; j < count; j++) {
+					out.append(ROMAN_NUMERALS[i]);
+				}
 			}
 		}
-
-		return work.toString();
 	}
 
 	/**
@@ -143,12 +168,50 @@ public class NumberUtils {
 		return toCardinal(number, null);
 	}
 
-	private static String[] cardinals = new String[] {
+	private static final String[] CARDINALS = new String[] {
 			"zero", "one", "two", "three", "four", "five", "six", "seven", "eight",
 			"nine", "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen",
 			"sixteen", "seventeen", "eighteen", "nineteen", "twenty",
 	};
 
+	private static final String[] TENS = new String[] {
+			null, null, "twenty", "thirty", "forty", "fifty", "sixty", "seventy",
+			"eighty", "ninety"
+	};
+
+	/*
+	 * The cardinals for every number below a hundred.
+	 *
+	 * A number that isn't in the table above is written as its tens digit and
+	 * its ones digit, joined by a dash; this is how numbers have always been
+	 * written, so it has been kept.
+	 */
+	private static final String[] BELOW_HUNDRED = new String[100];
+
+	// The scales of large numbers, from largest to smallest
+	private static final long[] SCALE_VALUES = {
+			1_000_000_000L, 1_000_000L, 1_000L, 100L
+	};
+
+	private static final String[] SCALE_NAMES = {
+			" billion, ", " million, ", " thousand, ", " hundred and "
+	};
+
+	// The smallest number we don't convert
+	private static final long TRILLION = 1_000_000_000_000L;
+
+	static {
+		for (int i = 0; i < BELOW_HUNDRED.length; i++) {
+			if (i <= 20) {
+				BELOW_HUNDRED[i] = CARDINALS[i];
+			} else if (i % 10 == 0) {
+				BELOW_HUNDRED[i] = TENS[i / 10];
+			} else {
+				BELOW_HUNDRED[i] = CARDINALS[i / 10] + "-" + CARDINALS[i % 10];
+			}
+		}
+	}
+
 	/**
 	 * Convert a number into a cardinal number.
 	 *
@@ -159,89 +222,145 @@ public class NumberUtils {
 	 * @return The number as a cardinal.
 	 */
 	public static String toCardinal(long number, CardinalState custom) {
-		if (custom != null) {
-			String res = custom.handleCustom(number);
+		if (custom == null && number >= 0 && number < CACHE_SIZE) {
+			return cachedCardinal((int) number);
+		}
+
+		StringBuilder work = new StringBuilder();
 
-			if (res != null)
-				return res;
+		try {
+			appendCardinal(number, custom, work);
+		} catch (IOException ioex) {
+			// StringBuilders don't throw IOException
+			throw new UncheckedIOException(ioex);
 		}
 
-		if (number < 0)
-			return "negative " + toCardinal(number * -1, custom);
+		return work.toString();
+	}
 
-		if (number <= 20)
-			return cardinals[(int) number];
+	/**
+	 * Write a number as a cardinal number.
+	 *
+	 * The customizations are consulted for the number, and for every part of
+	 * it that gets converted, just as {@link #toCardinal(long, CardinalState)}
+	 * does.
+	 *
+	 * @param number
+	 *               The number to convert to a cardinal.
+	 * @param custom
+	 *               The customizations to use, or null to use none.
+	 * @param out
+	 *               The place to write the cardinal to.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing the cardinal.
+	 */
+	public static void appendCardinal(long number, CardinalState custom, Appendable out)
+			throws IOException {
+		// Check this first, so that we don't write half of a number
+		if (custom == null && (number >= TRILLION || number <= -TRILLION)) {
+			throw tooLarge();
+		}
 
-		if (number < 100) {
-			if (number % 10 == 0) {
-				switch ((int) number) {
-				case 30:
-					return "thirty";
-				case 40:
-					return "forty";
-				case 50:
-					return "fifty";
-				case 60:
-					return "sixty";
-				case 70:
-					return "seventy";
-				case 80:
-					return "eighty";
-				case 90:
-					return "ninety";
-				default:
-					/*
-					 * Shouldn't happen.
-					 */
-					assert (false);
-				}
-			}
+		cardinal(number, custom, out);
+	}
 
-			long numTens = number / 10;
-			long numOnes = number % 10;
+	private static void cardinal(long number, CardinalState custom, Appendable out)
+			throws IOException {
+		if (custom != null) {
+			String res = custom.handleCustom(number);
 
-			return toCardinal(numTens, custom) + "-" + toCardinal(numOnes, custom);
+			if (res != null) {
+				out.append(res);
+
+				return;
+			}
 		}
 
-		if (number < 1000) {
-			long numHundreds = number / 100;
-			long rest = number % 100;
+		if (number < 0) {
+			if (number == Long.MIN_VALUE) throw tooLarge();
+
+			out.append("negative ");
 
-			return toCardinal(numHundreds, custom) + " hundred and "
-					+ toCardinal(rest, custom);
+			cardinal(number * -1, custom, out);
+		} else if (custom == null && number < CACHE_SIZE) {
+			out.append(cachedCardinal((int) number));
+		} else {
+			spellCardinal(number, custom, out);
 		}
+	}
 
-		long MILLION = (long) (Math.pow(10, 6));
-		if (number < MILLION) {
-			long numThousands = number / 1000;
-			long rest = number % 1000;
+	private static String cachedCardinal(int number) {
+		String res = Cache.CARDINALS[number];
 
-			return toCardinal(numThousands, custom) + " thousand, "
-					+ toCardinal(rest, custom);
+		if (res == null) {
+			StringBuilder work = new StringBuilder();
+
+			try {
+				spellCardinal(number, null, work);
+			} catch (IOException ioex) {
+				throw new UncheckedIOException(ioex);
+			}
+
+			res = work.toString();
+
+			Cache.CARDINALS[number] = res;
 		}
 
-		long BILLION = (long) (Math.pow(10, 9));
-		if (number < BILLION) {
-			long numMillions = number / MILLION;
-			long rest = number % MILLION;
+		return res;
+	}
+
+	/*
+	 * Write the cardinal for a positive number, which the customizations
+	 * have already been asked about.
+	 */
+	private static void spellCardinal(long number, CardinalState custom, Appendable out)
+			throws IOException {
+		if (number < 100) {
+			if (custom == null || number <= 20 || number % 10 == 0) {
+				out.append(BELOW_HUNDRED[(int) number]);
+			} else {
+				// The customizations get asked about both digits
+				cardinal(number / 10, custom, out);
+				out.append('-');
+				cardinal(number % 10, custom, out);
+			}
 
-			return toCardinal(numMillions, custom) + " million, "
-					+ toCardinal(rest, custom);
+			return;
 		}
 
-		long TRILLION = (long) (Math.pow(10, 12));
-		if (number < TRILLION) {
-			long numBillions = number / BILLION;
-			long rest = number % BILLION;
+		if (number >= TRILLION) throw tooLarge();
+
+		for (int i = 0; i < SCALE_VALUES.length; i++) {
+			long scale = SCALE_VALUES[i];
+
+			if (number >= scale) {
+				cardinal(number / scale, custom, out);
+				out.append(SCALE_NAMES[i]);
+				cardinal(number % scale, custom, out);
 
-			return toCardinal(numBillions, custom) + " billion, "
-					+ toCardinal(rest, custom);
+				return;
+			}
 		}
+	}
 
-		throw new IllegalArgumentException(
+	private static IllegalArgumentException tooLarge() {
+		return new IllegalArgumentException(
 				"Numbers greater than or equal to 1 trillion are not supported yet.");
 	}
 
+	private static final String[] ORDINALS = new String[] {
+			"zeroth", "first", "second", "third", "fourth", "fifth", "sixth",
+			"seventh", "eighth", "ninth", "tenth", "eleventh", "twelfth",
+			"thirteenth", "fourteenth", "fifteenth", "sixteenth", "seventeenth",
+			"eighteenth", "nineteenth"
+	};
+
+	private static final String[] TENS_ORDINALS = new String[] {
+			null, null, "twentieth", "thirtieth", "fortieth", "fiftieth", "sixtieth",
+			"seventieth", "eightieth", "ninetieth"
+	};
+
 	/**
 	 * Convert a number into an ordinal.
 	 *
@@ -250,106 +369,112 @@ public class NumberUtils {
 	 * @return The number as an ordinal.
 	 */
 	public static String toOrdinal(long number) {
-		if (number < 0) {
-			return "minus " + toOrdinal(number);
+		if (number >= 0 && number < CACHE_SIZE) return cachedOrdinal((int) number);
+
+		StringBuilder work = new StringBuilder();
+
+		try {
+			appendOrdinal(number, work);
+		} catch (IOException ioex) {
+			// StringBuilders don't throw IOException
+			throw new UncheckedIOException(ioex);
 		}
 
-		if (number < 20) {
-			switch ((int) number) {
-			case 0:
-				return "zeroth";
-			case 1:
-				return "first";
-			case 2:
-				return "second";
-			case 3:
-				return "third";
-			case 4:
-				return "fourth";
-			case 5:
-				return "fifth";
-			case 6:
-				return "sixth";
-			case 7:
-				return "seventh";
-			case 8:
-				return "eighth";
-			case 9:
-				return "ninth";
-			case 10:
-				return "tenth";
-			case 11:
-				return "eleventh";
-			case 12:
-				return "twelfth";
-			case 13:
-				return "thirteenth";
-			case 14:
-				return "fourteenth";
-			case 15:
-				return "fifteenth";
-			case 16:
-				return "sixteenth";
-			case 17:
-				return "seventeenth";
-			case 18:
-				return "eighteenth";
-			case 19:
-				return "nineteenth";
-			default:
-				/*
-				 * Shouldn't happen.
-				 */
-				assert (false);
+		return work.toString();
+	}
+
+	/**
+	 * Write a number as an ordinal.
+	 *
+	 * @param number
+	 *               The number to convert to an ordinal.
+	 * @param out
+	 *               The place to write the ordinal to.
+	 *
+	 * @throws IOException
+	 *                     If something goes wrong writing the ordinal.
+	 */
+	public static void appendOrdinal(long number, Appendable out) throws IOException {
+		if (number < 0) {
+			out.append("negative ");
+
+			// Long.MIN_VALUE has no positive counterpart, but it can be
+			// written as an unsigned number.
+			if (number == Long.MIN_VALUE) {
+				out.append(Long.toUnsignedString(number));
+				out.append(ordinalSuffix(number * -1));
+
+				return;
 			}
+
+			number *= -1;
 		}
 
-		if (number < 100) {
-			if (number % 10 == 0) {
-				switch ((int) number) {
-				case 20:
-					return "twentieth";
-				case 30:
-					return "thirtieth";
-				case 40:
-					return "fortieth";
-				case 50:
-					return "fiftieth";
-				case 60:
-					return "sixtieth";
-				case 70:
-					return "seventieth";
-				case 80:
-					return "eightieth";
-				case 90:
-					return "ninetieth";
-				default:
-					throw new IllegalArgumentException(
-							String.format("Illegal number %d", number));
-				}
+		if (number < CACHE_SIZE) {
+			out.append(cachedOrdinal((int) number));
+		} else {
+			spellOrdinal(number, out);
+		}
+	}
+
+	private static String cachedOrdinal(int number) {
+		String res = Cache.ORDINALS[number];
+
+		if (res == null) {
+			StringBuilder work = new StringBuilder();
+
+			try {
+				spellOrdinal(number, work);
+			} catch (IOException ioex) {
+				throw new UncheckedIOException(ioex);
 			}
 
-			long numPostfix = number % 10;
-			return toCardinal(number - numPostfix) + "-" + toOrdinal(numPostfix);
+			res = work.toString();
+
+			Cache.ORDINALS[number] = res;
+		}
+
+		return res;
+	}
+
+	// Write the ordinal for a positive number
+	private static void spellOrdinal(long number, Appendable out) throws IOException {
+		if (number < 20) {
+			out.append(ORDINALS[(int) number]);
+		} else if (number < 100) {
+			int tens = (int) (number / 10);
+			int ones = (int) (number % 10);
+
+			if (ones == 0) {
+				out.append(TENS_ORDINALS[tens]);
+			} else {
+				out.append(TENS[tens]);
+				out.append('-');
+				out.append(ORDINALS[ones]);
+			}
+		} else {
+			out.append(Long.toString(number));
+			out.append(ordinalSuffix(number));
 		}
+	}
 
-		long procNum = number % 100;
+	// Get the suffix for a numeric ordinal; this works for unsigned numbers too
+	private static String ordinalSuffix(long number) {
+		long procNum = Long.remainderUnsigned(number, 100);
 		long tens = procNum / 10;
 		long ones = procNum % 10;
 
-		if (tens == 1) {
-			return Long.toString(number) + "th";
-		}
+		if (tens == 1) return "th";
 
 		switch ((int) ones) {
 		case 1:
-			return Long.toString(number) + "st";
+			return "st";
 		case 2:
-			return Long.toString(number) + "nd";
+			return "nd";
 		case 3:
-			return Long.toString(number) + "rd";
+			return "rd";
 		default:
-			return Long.toString(number) + "th";
+			return "th";
 		}
 	}
 
@@ -376,6 +501,15 @@ public class NumberUtils {
 		}
 	}
 
+	/**
+	 * The most characters a number can take up in
+	 * {@link #toCommaChars(long, int, char, int, char, boolean, int, char[])},
+	 * not counting padding.
+	 *
+	 * This is a binary number with a comma between every digit, and a sign.
+	 */
+	public static final int MAX_COMMA_LENGTH = 64 + 63 + 1;
+
 	/**
 	 * Convert a number into a commafied string.
 	 *
@@ -397,44 +531,89 @@ public class NumberUtils {
 	 */
 	public static String toCommaString(long val, int mincols, char padchar,
 			int commaInterval, char commaChar, boolean signed, int radix) {
+		char[] buf = new char[Math.max(mincols, MAX_COMMA_LENGTH)];
+
+		int start = toCommaChars(val, mincols, padchar, commaInterval, commaChar,
+				signed, radix, buf);
+
+		return new String(buf, start, buf.length - start);
+	}
+
+	/**
+	 * Convert a number into a commafied string, stored in the end of an array.
+	 *
+	 * This does the same thing as
+	 * {@link #toCommaString(long, int, char, int, char, boolean, int)}, but
+	 * doesn't allocate anything, so a formatter can reuse one array for every
+	 * number it prints.
+	 *
+	 * @param val
+	 *                      The number to convert.
+	 * @param mincols
+	 *                      The minimum number of columns to use.
+	 * @param padchar
+	 *                      The padding char to use.
+	 * @param commaInterval
+	 *                      The interval to place commas at, or 0 for no commas.
+	 * @param commaChar
+	 *                      The character to use as a comma
+	 * @param signed
+	 *                      Whether or not to always display a sign
+	 * @param radix
+	 *                      The radix to use
+	 * @param buf
+	 *                      The array to store the number in. This must be at
+	 *                      least as long as both mincols and
+	 *                      {@link #MAX_COMMA_LENGTH}.
+	 *
+	 * @return The index the number starts at; it takes up the rest of the
+	 *         array.
+	 */
+	public static int toCommaChars(long val, int mincols, char padchar,
+			int commaInterval, char commaChar, boolean signed, int radix, char[] buf) {
 		if (radix > radixChars.length) {
 			throw new IllegalArgumentException(
 					String.format("Radix %d is larger than largest supported radix %d",
 							radix, radixChars.length));
+		} else if (radix < 2) {
+			throw new IllegalArgumentException(
+					String.format("Radix %d is smaller than smallest supported radix 2",
+							radix));
 		}
 
-		StringBuilder work = new StringBuilder();
-
-		boolean isNeg = false;
-		long currVal = val;
-		if (currVal < 0) {
-			isNeg = true;
-			currVal *= -1;
+		if (buf.length < mincols || buf.length < MAX_COMMA_LENGTH) {
+			throw new IllegalArgumentException(String.format(
+					"Buffer of length %d is too short for a number of %d columns",
+					buf.length, mincols));
 		}
 
+		int pos = buf.length;
+
+		// Work with the number as a negative, since every long has a
+		// negative counterpart, but Long.MIN_VALUE has no positive one.
+		boolean isNeg = val < 0;
+		long currVal = isNeg ? val : -val;
+
 		if (currVal == 0) {
-			work.append(radixChars[0]);
+			buf[--pos] = radixChars[0];
 		} else {
 			int valCounter = 0;
 
 			while (currVal != 0) {
 				valCounter += 1;
 
-				int radDigit = (int) (currVal % radix);
-				work.append(radixChars[radDigit]);
+				buf[--pos] = radixChars[(int) -(currVal % radix)];
 				currVal = currVal / radix;
 
 				if (commaInterval != 0 && valCounter % commaInterval == 0 && currVal != 0)
-					work.append(commaChar);
+					buf[--pos] = commaChar;
 			}
 		}
 
 		if (isNeg)
-			work.append("-");
+			buf[--pos] = '-';
 		else if (signed)
-			work.append("+");
-
-		work.reverse();
+			buf[--pos] = '+';
 
 		/*
 		 * @TODO :PadDirection Ben Culkin 5/20/20
@@ -443,29 +622,14 @@ public class NumberUtils {
 		 *
 		 * By this, I mean specify padding direction (left, right, balanced...)
 		 */
-		StringBuilder pad = new StringBuilder();
-
-		if (work.length() < mincols) {
-			@SuppressWarnings("unused")
-			int padCount = 0;
-			for (int i = work.length(); i < mincols; i++) {
-				// @NOTE 9/6/18 :CommaPad
-				//
-				// I have no idea if this is the intended
-				// behavior, or if something is wrong with the
-				// example case in the menu
-				// if (commaInterval != 0 && padCount != 0) {
-				// if (Character.isDigit(padchar) && padCount % commaInterval == 0)
-				// pad.append(commaChar);
-				// else
-				pad.append(padchar);
-				// }
-
-				padCount++;
-			}
-		}
-
-		return pad.toString() + work.toString();
+		// @NOTE 9/6/18 :CommaPad
+		//
+		// I have no idea if padding should have commas inserted into it, or if
+		// something is wrong with the example case in the menu
+		int padStart = buf.length - mincols;
+		while (pos > padStart) buf[--pos] = padchar;
+
+		return pos;
 	}
 
 	/**
@@ -1,8 +1,8 @@
 package bjc.utils.parserutils;
 
-import static bjc.utils.misc.PropertyDB.getRegex;
-
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.function.UnaryOperator;
@@ -14,28 +14,25 @@ import java.util.regex.PatternSyntaxException;
 /**
  * Customizable string escapes.
  *
+ * Escapes are found in a single pass over the string. After the backslash,
+ * the escapes built into Java strings are tried first, then the custom
+ * literal escapes (the longest one that matches wins), then the custom special
+ * escapes. Custom escapes only take effect once {@link #compileEscapes()} has
+ * been called.
+ *
  * @author Benjamin Culkin
  */
 public class StringDescaper {
 	/* The logger. */
 	private Logger LOGGER = Logger.getLogger(StringDescaper.class.getName());
 
-	/*
-	 * Patterns and pattern parts.
-	 */
-	private static String rPossibleEscapeString = getRegex("possibleStringEscape");
-	private static Pattern possibleEscapePatt = Pattern.compile(rPossibleEscapeString);
-
-	private static String rShortEscape = getRegex("shortFormStringEscape");
-	private static String rOctalEscape = getRegex("octalStringEscape");
-	private static String rUnicodeEscape = getRegex("unicodeStringEscape");
-
-	private String rEscapeString;
-	private Pattern escapePatt;
-
 	private Map<String, String> literalEscapes;
 	private Map<Pattern, UnaryOperator<String>> specialEscapes;
 
+	/* The compiled custom escapes. */
+	private EscapeTrie literalTrie;
+	private List<Entry<Pattern, UnaryOperator<String>>> specialList;
+
 	/**
 	 * Create a new customizable string escape remover.
 	 */
@@ -44,10 +41,8 @@ public class StringDescaper {
 		literalEscapes = new HashMap<>();
 		specialEscapes = new HashMap<>();
 
-		/* Set up the hard-coded escapes. */
-		rEscapeString = String.format("\\\\(%1$s|%2$s|%3$s)", rShortEscape, rOctalEscape,
-				rUnicodeEscape);
-		escapePatt = Pattern.compile(rEscapeString);
+		literalTrie = new EscapeTrie();
+		specialList = new ArrayList<>();
 	}
 
 	/**
@@ -59,6 +54,10 @@ public class StringDescaper {
 	 *               The value for the escape.
 	 */
 	public void addLiteralEscape(String escape, String val) {
+		if (escape.isEmpty()) {
+			throw new IllegalArgumentException("Literal escapes must not be empty");
+		}
+
 		if (literalEscapes.containsKey(escape)) {
 			LOGGER.warning(String.format("Shadowing literal escape '%s'\n", escape));
 		}
@@ -69,6 +68,9 @@ public class StringDescaper {
 	/**
 	 * Create a new custom escape.
 	 *
+	 * The implementation is given the text the pattern matched after the
+	 * backslash.
+	 *
 	 * @param escape
 	 *               The escape to add.
 	 * @param val
@@ -100,29 +102,19 @@ public class StringDescaper {
 
 	/**
 	 * Compile the escapes.
+	 *
+	 * The literal escapes are put into a trie, so finding the one after a
+	 * backslash only looks at each character once.
 	 */
 	public void compileEscapes() {
-		StringBuilder work = new StringBuilder();
+		EscapeTrie trie = new EscapeTrie();
 
-		for (String litEscape : literalEscapes.keySet()) {
-			work.append("|(?:");
-			work.append(Pattern.quote(litEscape));
-			work.append(")");
+		for (Entry<String, String> litEscape : literalEscapes.entrySet()) {
+			trie.add(litEscape.getKey(), litEscape.getValue());
 		}
 
-		for (Pattern specEscape : specialEscapes.keySet()) {
-			work.append("|(?:");
-			work.append(specEscape.toString());
-			work.append(")");
-		}
-
-		/*
-		 * Convert user-defined escapes to a regex for matching. We don't need a bar
-		 * before %4 because the string has it.
-		 */
-		rEscapeString = String.format("\\(%1$s|%2$s|%3$s%4$s)", rShortEscape,
-				rOctalEscape, rUnicodeEscape, work.toString());
-		escapePatt = Pattern.compile(rEscapeString);
+		literalTrie = trie;
+		specialList = new ArrayList<>(specialEscapes.entrySet());
 	}
 
 	/**
@@ -139,137 +131,180 @@ public class StringDescaper {
 			throw new NullPointerException("Input to descapeString must not be null");
 		}
 
-		/*
-		 * Prepare the buffer and escape finder.
-		 */
-		final StringBuffer work = new StringBuffer();
-		final Matcher possibleEscapeFinder = possibleEscapePatt.matcher(inp);
-		final Matcher escapeFinder = escapePatt.matcher(inp);
+		int slash = inp.indexOf('\\');
+
+		/* Most strings don't have any escapes. */
+		if (slash == -1) return inp;
 
-		/* Go through each escape. */
-		while (possibleEscapeFinder.find()) {
-			if (!escapeFinder.find()) {
+		final int len = inp.length();
+
+		final StringBuilder work = new StringBuilder(len);
+
+		int runStart = 0;
+
+		while (slash != -1) {
+			work.append(inp, runStart, slash);
+
+			/* A backslash at the very end isn't an escape. */
+			if (slash + 1 == len) {
+				runStart = slash;
+
+				break;
+			}
+
+			runStart = descapeAt(inp, slash + 1, work);
+
+			if (runStart == -1) {
 				/*
 				 * Found a possible escape that isn't actually an escape.
 				 */
 				final String msg = String.format(
 						"Illegal escape sequence '%s' at position %d of string '%s'",
-						possibleEscapeFinder.group(), possibleEscapeFinder.start(), inp);
+						inp.substring(slash, slash + 2), slash, inp);
 				throw new IllegalArgumentException(msg);
 			}
 
-			final String escapeSeq = escapeFinder.group();
-
-			/*
-			 * Convert the escape to a string.
-			 */
-			String escapeRep = "";
-			switch (escapeSeq) {
-			case "\\b":
-				escapeRep = "\b";
-				break;
-			case "\\t":
-				escapeRep = "\t";
-				break;
-			case "\\n":
-				escapeRep = "\n";
-				break;
-			case "\\f":
-				escapeRep = "\f";
-				break;
-			case "\\r":
-				escapeRep = "\r";
-				break;
-			case "\\\"":
-				escapeRep = "\"";
-				break;
-			case "\\'":
-				escapeRep = "'";
-				break;
-			case "\\\\":
-				/*
-				 * Skip past the second slash.
-				 */
-				possibleEscapeFinder.find();
-				escapeRep = "\\";
-				break;
-			default:
-				if (escapeSeq.startsWith("u")) {
-					/* Handle a unicode escape. */
-					escapeRep = handleUnicodeEscape(escapeSeq.substring(1));
-				} else if (escapeSeq.startsWith("O")) {
-					/* Handle an octal escape. */
-					escapeRep = handleOctalEscape(escapeSeq.substring(1));
-				} else if (literalEscapes.containsKey(escapeSeq)) {
-					/* Handle a custom literal escape. */
-					escapeRep = literalEscapes.get(escapeSeq);
-				} else {
-					/* Handle a custom special escape. */
-					for (Entry<Pattern, UnaryOperator<String>> ent : specialEscapes
-							.entrySet()) {
-						Pattern pat = ent.getKey();
-
-						Matcher mat = pat.matcher(escapeSeq);
-						if (mat.matches()) {
-							escapeRep = ent.getValue().apply(escapeSeq);
-							break;
-						}
-					}
-				}
-			}
-
-			escapeFinder.appendReplacement(work, escapeRep);
+			slash = inp.indexOf('\\', runStart);
 		}
 
-		escapeFinder.appendTail(work);
+		work.append(inp, runStart, len);
 
 		return work.toString();
 	}
 
 	/*
-	 * Handle a unicode codepoint.
+	 * Convert the escape after a backslash at a position, returning where the
+	 * escape ends, or -1 if there isn't one.
 	 */
-	private static String handleUnicodeEscape(final String seq) {
-		try {
-			final int codepoint = Integer.parseInt(seq, 16);
+	private int descapeAt(final String inp, final int pos, final StringBuilder work) {
+		final char chr = inp.charAt(pos);
+
+		switch (chr) {
+		case 'b':
+			work.append('\b');
+			return pos + 1;
+		case 't':
+			work.append('\t');
+			return pos + 1;
+		case 'n':
+			work.append('\n');
+			return pos + 1;
+		case 'f':
+			work.append('\f');
+			return pos + 1;
+		case 'r':
+			work.append('\r');
+			return pos + 1;
+		case '"':
+		case '\'':
+		case '\\':
+			work.append(chr);
+			return pos + 1;
+		default:
+			break;
+		}
+
+		if (chr >= '0' && chr <= '7') {
+			/* Handle an octal escape, of at most \377. */
+			final int maxDigits = chr <= '3' ? 3 : 2;
+
+			int codepoint = 0;
+			int end = pos;
+
+			while (end < inp.length() && end - pos < maxDigits) {
+				final char digit = inp.charAt(end);
+
+				if (digit < '0' || digit > '7') break;
+
+				codepoint = codepoint * 8 + (digit - '0');
+				end += 1;
+			}
+
+			work.append((char) codepoint);
+			return end;
+		}
+
+		if (chr == 'u' && pos + 5 <= inp.length()) {
+			/* Handle a unicode escape. */
+			int codepoint = 0;
+
+			int idx;
+			for (idx = pos + 1; idx < pos + 5; idx++) {
+				final int digit = Character.digit(inp.charAt(idx), 16);
+
+				if (digit == -1) break;
 
-			return new String(Character.toChars(codepoint));
-		} catch (final IllegalArgumentException iaex) {
-			final String msg
-					= String.format("'%s' is not a valid Unicode escape sequence'", seq);
+				codepoint = codepoint * 16 + digit;
+			}
 
-			final IllegalArgumentException reiaex = new IllegalArgumentException(msg);
+			if (idx == pos + 5) {
+				work.append((char) codepoint);
+				return idx;
+			}
+		}
 
-			reiaex.initCause(iaex);
+		/* Handle a custom literal escape. */
+		final int literalEnd = literalTrie.match(inp, pos, work);
+		if (literalEnd != -1) return literalEnd;
 
-			throw reiaex;
+		/* Handle a custom special escape. */
+		for (Entry<Pattern, UnaryOperator<String>> ent : specialList) {
+			final Matcher mat = ent.getKey().matcher(inp);
+			mat.region(pos, inp.length());
+
+			if (mat.lookingAt()) {
+				work.append(ent.getValue().apply(mat.group()));
+				return mat.end();
+			}
 		}
+
+		return -1;
 	}
 
 	/*
-	 * Handle a octal codepoint.
+	 * A trie of literal escapes.
 	 */
-	private static String handleOctalEscape(final String seq) {
-		try {
-			final int codepoint = Integer.parseInt(seq, 8);
+	private static final class EscapeTrie {
+		private final Map<Character, EscapeTrie> children = new HashMap<>();
 
-			if (codepoint > 255) {
-				final String msg = String
-						.format("'%d' is outside the range of octal escapes'", codepoint);
+		/* The value of the escape that ends here, if one does. */
+		private String value;
 
-				throw new IllegalArgumentException(msg);
+		void add(String escape, String val) {
+			EscapeTrie node = this;
+
+			for (int i = 0; i < escape.length(); i++) {
+				node = node.children.computeIfAbsent(escape.charAt(i),
+						(key) -> new EscapeTrie());
 			}
 
-			return new String(Character.toChars(codepoint));
-		} catch (final IllegalArgumentException iaex) {
-			final String msg
-					= String.format("'%s' is not a valid octal escape sequence'", seq);
+			node.value = val;
+		}
+
+		/*
+		 * Append the value of the longest escape at a position, returning where
+		 * it ends, or -1 if there isn't one.
+		 */
+		int match(String inp, int pos, StringBuilder work) {
+			EscapeTrie node = this;
+
+			String best = null;
+			int bestEnd = -1;
 
-			final IllegalArgumentException reiaex = new IllegalArgumentException(msg);
+			for (int i = pos; i < inp.length() && !node.children.isEmpty(); i++) {
+				node = node.children.get(inp.charAt(i));
+
+				if (node == null) break;
+
+				if (node.value != null) {
+					best = node.value;
+					bestEnd = i + 1;
+				}
+			}
 
-			reiaex.initCause(iaex);
+			if (best != null) work.append(best);
 
-			throw reiaex;
+			return bestEnd;
 		}
 	}
 }
@@ -39,18 +39,9 @@ public class TokenUtils {
 
 	/* Possible string escapes. */
 	private static String rPossibleEscapeString = getRegex("possibleStringEscape");
-	private static Pattern possibleEscapePatt = Pattern.compile(rPossibleEscapeString);
 
-	/* Non-single char escapes. */
-	private static String rShortEscape = getRegex("shortFormStringEscape");
-	private static String rOctalEscape = getRegex("octalStringEscape");
-	private static String rUnicodeEscape = getRegex("unicodeStringEscape");
-
-	/* All string escapes. */
-	private static String rEscapeString
-			= applyFormat("stringEscape", rShortEscape, rOctalEscape, rUnicodeEscape);
-
-	private static Pattern escapePatt = Pattern.compile(rEscapeString);
+	/* The escapes built into Java strings. */
+	private static StringDescaper javaEscapes = new StringDescaper();
 
 	private static String rDoubleQuoteString = applyFormat("doubleQuotes",
 			getRegex("nonStringEscape"), rPossibleEscapeString);
@@ -165,124 +156,7 @@ public class TokenUtils {
 		if (inp == null)
 			throw new NullPointerException("inp must not be null");
 
-		/*
-		 * Prepare the buffer and escape finder.
-		 */
-		final StringBuffer work = new StringBuffer();
-		final Matcher possibleEscapeFinder = possibleEscapePatt.matcher(inp);
-		final Matcher escapeFinder = escapePatt.matcher(inp);
-
-		/* Go through all possible escapes. */
-		while (possibleEscapeFinder.find()) {
-			if (!escapeFinder.find()) {
-				/*
-				 * Found a possible escape that isn't actually an escape.
-				 */
-				final String msg = String.format(
-						"Illegal escape sequence '%s' at position %d",
-						possibleEscapeFinder.group(), possibleEscapeFinder.start());
-
-				throw new IllegalArgumentException(msg);
-			}
-
-			final String escapeSeq = escapeFinder.group();
-
-			/*
-			 * Convert the escape to a string.
-			 */
-			String escapeRep = "";
-			switch (escapeSeq) {
-			case "\\b":
-				escapeRep = "\b";
-				break;
-			case "\\t":
-				escapeRep = "\t";
-				break;
-			case "\\n":
-				escapeRep = "\n";
-				break;
-			case "\\f":
-				escapeRep = "\f";
-				break;
-			case "\\r":
-				escapeRep = "\r";
-				break;
-			case "\\\"":
-				escapeRep = "\"";
-				break;
-			case "\\'":
-				escapeRep = "'";
-				break;
-			case "\\\\":
-				/*
-				 * Skip past the second slash.
-				 */
-				possibleEscapeFinder.find();
-				escapeRep = "\\";
-				break;
-			default:
-				/* Handle a non-short form escape. */
-				if (escapeSeq.startsWith("u")) {
-					escapeRep = handleUnicodeEscape(escapeSeq.substring(1));
-				} else {
-					escapeRep = handleOctalEscape(escapeSeq);
-				}
-			}
-
-			/* Replace the escape with its representation. */
-			escapeFinder.appendReplacement(work, escapeRep);
-		}
-
-		escapeFinder.appendTail(work);
-
-		return work.toString();
-	}
-
-	/*
-	 * Handle a unicode codepoint.
-	 */
-	private static String handleUnicodeEscape(final String seq) {
-		try {
-			final int codepoint = Integer.parseInt(seq, 16);
-
-			return new String(Character.toChars(codepoint));
-		} catch (final IllegalArgumentException iaex) {
-			final String msg
-					= String.format("'%s' is not a valid Unicode escape sequence'", seq);
-
-			final IllegalArgumentException reiaex = new IllegalArgumentException(msg);
-
-			reiaex.initCause(iaex);
-
-			throw reiaex;
-		}
-	}
-
-	/*
-	 * Handle a octal codepoint.
-	 */
-	private static String handleOctalEscape(final String seq) {
-		try {
-			final int codepoint = Integer.parseInt(seq, 8);
-
-			if (codepoint > 255) {
-				final String msg = String
-						.format("'%d' is outside the range of octal escapes'", codepoint);
-
-				throw new IllegalArgumentException(msg);
-			}
-
-			return new String(Character.toChars(codepoint));
-		} catch (final IllegalArgumentException iaex) {
-			final String msg
-					= String.format("'%s' is not a valid octal escape sequence'", seq);
-
-			final IllegalArgumentException reiaex = new IllegalArgumentException(msg);
-
-			reiaex.initCause(iaex);
-
-			throw reiaex;
-		}
+		return javaEscapes.descapeString(inp);
 	}
 
 	/**
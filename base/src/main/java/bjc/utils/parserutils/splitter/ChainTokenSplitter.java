@@ -45,4 +45,26 @@ public class ChainTokenSplitter implements TokenSplitter {
 
 		return spliters.reduceAux(initList, (splitter, strangs) -> strangs.flatMap(splitter::split));
 	}
+
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		TokenSpans current = new TokenSpans(input);
+		TokenSpans next    = new TokenSpans(input);
+
+		current.add(start, end);
+
+		for (TokenSplitter splitter : spliters.toIterable()) {
+			next.clear();
+
+			for (int i = 0; i < current.size(); i++) {
+				current.splitToken(splitter, i, next);
+			}
+
+			TokenSpans tmp = current;
+			current = next;
+			next    = tmp;
+		}
+
+		for (int i = 0; i < current.size(); i++) spans.add(current, i);
+	}
 }
\ No newline at end of file
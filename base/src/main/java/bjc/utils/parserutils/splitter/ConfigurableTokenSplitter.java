@@ -20,6 +20,9 @@ public class ConfigurableTokenSplitter extends SimpleTokenSplitter {
 	private final Set<String> multipleDelimiters;
 	private final Set<String> rRawDelimiters;
 
+	/* The delimiters as a trie, if they are all literals. */
+	private LiteralDelimiters literals;
+
 	/**
 	 * Create a new token splitter with blank configuration.
 	 *
@@ -89,6 +92,11 @@ public class ConfigurableTokenSplitter extends SimpleTokenSplitter {
 	/**
 	 * Take the configuration and compile it into a regular expression to use when
 	 * splitting.
+	 *
+	 * If there are no raw delimiters, the simple and multiple delimiters are
+	 * also compiled into a trie, which finds the same delimiters the regular
+	 * expression would without backtracking through every delimiter at each
+	 * position. That is then used for splitting instead.
 	 */
 	public void compile() {
 		final StringBuilder rPattern = new StringBuilder();
@@ -108,6 +116,27 @@ public class ConfigurableTokenSplitter extends SimpleTokenSplitter {
 		rPattern.deleteCharAt(rPattern.length() - 1);
 
 		spliter = Pattern.compile(rPattern.toString());
+
+		if (rRawDelimiters.isEmpty()) {
+			literals = LiteralDelimiters.compile(multipleDelimiters, simpleDelimiters);
+		} else {
+			literals = null;
+		}
+	}
+
+	/**
+	 * Check if this splitter splits with a trie, instead of with a regular
+	 * expression.
+	 *
+	 * @return Whether this splitter splits with a trie.
+	 */
+	public boolean isLiteral() {
+		return literals != null;
+	}
+
+	/* Get the trie of delimiters, or null if this isn't compiled to one. */
+	LiteralDelimiters getLiterals() {
+		return literals;
 	}
 
 	@Override
@@ -115,17 +144,55 @@ public class ConfigurableTokenSplitter extends SimpleTokenSplitter {
 		if (spliter == null)
 			throw new IllegalStateException("Must compile splitter before use");
 
+		if (literals != null) return splitSpans(input).toList();
+
 		return super.split(input);
 	}
 
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		if (spliter == null)
+			throw new IllegalStateException("Must compile splitter before use");
+
+		if (literals == null) {
+			super.splitSpans(input, start, end, spans);
+
+			return;
+		}
+
+		int last = start;
+		int pos  = start;
+
+		while (pos < end) {
+			int delimEnd = literals.matchAt(input, pos, end);
+
+			if (delimEnd == -1) {
+				pos += 1;
+
+				continue;
+			}
+
+			spans.add(last, pos);
+
+			// Dropped delimiters still leave an empty token behind.
+			if (keepDelim) spans.add(pos, delimEnd);
+			else           spans.add(delimEnd, delimEnd);
+
+			last = delimEnd;
+			pos  = delimEnd;
+		}
+
+		spans.add(last, end);
+	}
+
 	@Override
 	public String toString() {
 		final String fmt
 				= "ConfigurableTokenSplitter [simpleDelimiters=%s, multipleDelimiters=%s,"
-						+ " rRawDelimiters=%s, spliter=%s]";
+						+ " rRawDelimiters=%s, spliter=%s, literal=%s]";
 
 		return String.format(fmt, simpleDelimiters, multipleDelimiters, rRawDelimiters,
-				spliter);
+				spliter, isLiteral());
 	}
 
 	/**
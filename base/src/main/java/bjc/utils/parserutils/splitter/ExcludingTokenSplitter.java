@@ -1,5 +1,6 @@
 package bjc.utils.parserutils.splitter;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -15,6 +16,9 @@ import bjc.funcdata.ListEx;
  */
 public class ExcludingTokenSplitter implements TokenSplitter {
 	private final Set<String> literalExclusions;
+	// The lengths of the literal exclusions, so that most tokens can be ruled
+	// out without making a string for them.
+	private final BitSet exclusionLengths;
 	private final ListEx<Predicate<String>> predExclusions;
 
 	private final TokenSplitter spliter;
@@ -29,6 +33,7 @@ public class ExcludingTokenSplitter implements TokenSplitter {
 		spliter = splitter;
 
 		literalExclusions = new HashSet<>();
+		exclusionLengths = new BitSet();
 
 		predExclusions = new FunctionalList<>();
 	}
@@ -42,6 +47,7 @@ public class ExcludingTokenSplitter implements TokenSplitter {
 	public final void addLiteralExclusions(final String... exclusions) {
 		for (final String exclusion : exclusions) {
 			literalExclusions.add(exclusion);
+			exclusionLengths.set(exclusion.length());
 		}
 	}
 
@@ -67,4 +73,20 @@ public class ExcludingTokenSplitter implements TokenSplitter {
 		else
 			return spliter.split(input);
 	}
+
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		if (predExclusions.getSize() > 0 || exclusionLengths.get(end - start)) {
+			String token = input.subSequence(start, end).toString();
+
+			if (literalExclusions.contains(token)
+					|| predExclusions.anyMatch(pred -> pred.test(token))) {
+				spans.add(start, end);
+
+				return;
+			}
+		}
+
+		spliter.splitSpans(input, start, end, spans);
+	}
 }
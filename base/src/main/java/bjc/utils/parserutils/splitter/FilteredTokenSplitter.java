@@ -34,4 +34,15 @@ public class FilteredTokenSplitter implements TokenSplitter {
 	public ListEx<String> split(String input) {
 		return source.split(input).getMatching(filter);
 	}
+
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		TokenSpans unfiltered = new TokenSpans(input);
+
+		source.splitSpans(input, start, end, unfiltered);
+
+		for (int i = 0; i < unfiltered.size(); i++) {
+			if (filter.test(unfiltered.get(i))) spans.add(unfiltered, i);
+		}
+	}
 }
@@ -13,4 +13,9 @@ public class IdentityTokenSplitter implements TokenSplitter {
 	public ListEx<String> split(String input) {
 		return new FunctionalList<>(input);
 	}
+
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		spans.add(start, end);
+	}
 }
@@ -0,0 +1,223 @@
+package bjc.utils.parserutils.splitter;
+
+import java.util.*;
+
+/**
+ * A set of literal delimiters, compiled into a trie.
+ *
+ * This finds the same delimiters a regex that is an alternation of the
+ * delimiters (in the order they were given) would; where more than one of
+ * them match at a position, the first one given wins, not the longest one.
+ * Delimiters can also be marked as repeating, which matches one or more of
+ * them in a row, like <code>(?:delim)+</code>.
+ *
+ * @author Ben Culkin
+ */
+final class LiteralDelimiters {
+	private static final int NO_NODE = -1;
+
+	private final String[]  delims;
+	private final boolean[] repeats;
+
+	// The nodes the root goes to on each ASCII char, since nearly every match
+	// attempt fails there
+	private final int[] asciiRoot;
+
+	// The chars each node has transitions on, sorted, and the nodes they go to
+	private final char[][] keys;
+	private final int[][]  targets;
+
+	// The first delimiter that ends at each node, or -1
+	private final int[] ends;
+
+	private final int maxLength;
+
+	private LiteralDelimiters(String[] delims, boolean[] repeats) {
+		this.delims  = delims;
+		this.repeats = repeats;
+
+		List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+		List<Integer> nodeEnds = new ArrayList<>();
+
+		trie.add(new TreeMap<>());
+		nodeEnds.add(-1);
+
+		for (int i = 0; i < delims.length; i++) {
+			int node = 0;
+
+			for (char chr : delims[i].toCharArray()) {
+				Integer next = trie.get(node).get(chr);
+
+				if (next == null) {
+					next = trie.size();
+
+					trie.add(new TreeMap<>());
+					nodeEnds.add(-1);
+
+					trie.get(node).put(chr, next);
+				}
+
+				node = next;
+			}
+
+			// The first delimiter given wins
+			if (nodeEnds.get(node) == -1) nodeEnds.set(node, i);
+		}
+
+		keys    = new char[trie.size()][];
+		targets = new int[trie.size()][];
+		ends    = new int[trie.size()];
+
+		for (int node = 0; node < trie.size(); node++) {
+			TreeMap<Character, Integer> edges = trie.get(node);
+
+			keys[node]    = new char[edges.size()];
+			targets[node] = new int[edges.size()];
+
+			int idx = 0;
+			for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+				keys[node][idx]    = edge.getKey();
+				targets[node][idx] = edge.getValue();
+
+				idx += 1;
+			}
+
+			ends[node] = nodeEnds.get(node);
+		}
+
+		int longest = 0;
+		for (String delim : delims) longest = Math.max(longest, delim.length());
+
+		maxLength = longest;
+
+		asciiRoot = new int[128];
+
+		for (char chr = 0; chr < asciiRoot.length; chr++) {
+			asciiRoot[chr] = search(0, chr);
+		}
+	}
+
+	/**
+	 * Compile a set of delimiters.
+	 *
+	 * @param repeating
+	 *                  The delimiters that match one or more times in a row.
+	 *                  These come before the non-repeating ones.
+	 * @param single
+	 *                  The delimiters that match once.
+	 *
+	 * @return The compiled delimiters, or null if there aren't any, or one of
+	 *         them is empty.
+	 */
+	static LiteralDelimiters compile(Collection<String> repeating,
+			Collection<String> single) {
+		int count = repeating.size() + single.size();
+
+		if (count == 0) return null;
+
+		String[]  delims  = new String[count];
+		boolean[] repeats = new boolean[count];
+
+		int idx = 0;
+		for (String delim : repeating) {
+			delims[idx]  = delim;
+			repeats[idx] = true;
+
+			idx += 1;
+		}
+
+		for (String delim : single) {
+			delims[idx] = delim;
+
+			idx += 1;
+		}
+
+		for (String delim : delims) {
+			// An empty delimiter matches everywhere; leave those to the regex.
+			if (delim.isEmpty()) return null;
+		}
+
+		return new LiteralDelimiters(delims, repeats);
+	}
+
+	/**
+	 * Get the length of the longest delimiter.
+	 *
+	 * This is how far past a position has to be looked at to find the
+	 * delimiter there, not counting repeats.
+	 *
+	 * @return The length of the longest delimiter.
+	 */
+	int maxLength() {
+		return maxLength;
+	}
+
+	private int step(int node, char chr) {
+		if (node == 0 && chr < asciiRoot.length) return asciiRoot[chr];
+
+		return search(node, chr);
+	}
+
+	private int search(int node, char chr) {
+		int idx = Arrays.binarySearch(keys[node], chr);
+
+		if (idx < 0) return NO_NODE;
+
+		return targets[node][idx];
+	}
+
+	/**
+	 * Find the end of the delimiter that starts at a position.
+	 *
+	 * @param seq
+	 *              The string to look in.
+	 * @param pos
+	 *              The position to look at.
+	 * @param limit
+	 *              The end of the part of the string to look in.
+	 *
+	 * @return The end of the delimiter, or -1 if there isn't one at the
+	 *         position.
+	 */
+	int matchAt(CharSequence seq, int pos, int limit) {
+		int best = -1;
+		int node = 0;
+
+		for (int i = pos; i < limit; i++) {
+			node = step(node, seq.charAt(i));
+
+			if (node == NO_NODE) break;
+
+			int delim = ends[node];
+			if (delim != -1 && (best == -1 || delim < best)) best = delim;
+		}
+
+		if (best == -1) return -1;
+
+		String delim = delims[best];
+
+		int end = pos + delim.length();
+
+		if (repeats[best]) {
+			while (end + delim.length() <= limit && regionMatches(seq, end, delim)) {
+				end += delim.length();
+			}
+		}
+
+		return end;
+	}
+
+	private static boolean regionMatches(CharSequence seq, int pos, String delim) {
+		for (int i = 0; i < delim.length(); i++) {
+			if (seq.charAt(pos + i) != delim.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LiteralDelimiters [delims=%s, repeats=%s, nodes=%d]",
+				Arrays.toString(delims), Arrays.toString(repeats), ends.length);
+	}
+}
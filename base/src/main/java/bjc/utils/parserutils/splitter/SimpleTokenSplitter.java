@@ -1,5 +1,6 @@
 package bjc.utils.parserutils.splitter;
 
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import bjc.funcdata.ListEx;
@@ -38,6 +39,15 @@ public class SimpleTokenSplitter implements TokenSplitter {
 		keepDelim = keepDelims;
 	}
 
+	/**
+	 * Get the pattern this splits on.
+	 *
+	 * @return The pattern this splits on.
+	 */
+	public Pattern getPattern() {
+		return spliter;
+	}
+
 	@Override
 	public ListEx<String> split(final String input) {
 		if (keepDelim) {
@@ -47,6 +57,26 @@ public class SimpleTokenSplitter implements TokenSplitter {
 		return RegexStringEditor.mapOccurances(input, spliter, ID.id(), strang -> "");
 	}
 
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		Matcher mat = spliter.matcher(input);
+		mat.region(start, end);
+
+		int last = start;
+
+		while (mat.find()) {
+			spans.add(last, mat.start());
+
+			// Dropped delimiters still leave an empty token behind.
+			if (keepDelim) spans.add(mat.start(), mat.end());
+			else           spans.add(mat.end(), mat.end());
+
+			last = mat.end();
+		}
+
+		spans.add(last, end);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("SimpleTokenSplitter [spliter=%s, keepDelim=%s]", spliter,
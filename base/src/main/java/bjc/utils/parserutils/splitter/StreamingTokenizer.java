@@ -0,0 +1,353 @@
+package bjc.utils.parserutils.splitter;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Splits the text read from a stream into tokens, without reading all of the
+ * text into memory at once.
+ *
+ * Text is read into a buffer that slides along the stream; only the part of
+ * it from the start of the current token on is kept. A token bigger than the
+ * buffer grows it, so the most memory used is the size of the buffer plus the
+ * size of the biggest token.
+ *
+ * Tokens are split on the delimiters of a {@link ConfigurableTokenSplitter},
+ * which must not have any raw delimiters, since a regular expression can't be
+ * matched against a stream a piece at a time. The tokens are the same ones
+ * that splitter would give for the whole text.
+ *
+ * Java-style double-quoted strings can also be kept whole. Each string is a
+ * token (including its quotes), and the text between the strings is split on
+ * the delimiters. A backslash in a string escapes the character after it.
+ *
+ * This splits out strings the same way as
+ * {@link bjc.utils.parserutils.TokenUtils#removeDQuotedStrings}, except for
+ * strings that end in an escaped backslash, like <code>"a\"</code>. This
+ * treats the quote after the escaped backslash as the end of the string, but
+ * removeDQuotedStrings doesn't count that quote when it checks for unclosed
+ * strings, so it can reject text with one of those strings in it.
+ *
+ * @author Ben Culkin
+ */
+public class StreamingTokenizer implements Iterator<String>, Closeable {
+	/**
+	 * The default size of the buffer.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private final Reader source;
+
+	// The delimiters to split on, or null to not split
+	private final LiteralDelimiters delims;
+	private final boolean keepDelims;
+
+	private final boolean quotedStrings;
+
+	private char[] buffer;
+	// A view of the buffer, for the delimiters to look at
+	private CharBuffer view;
+
+	// The end of the text in the buffer
+	private int limit;
+	// The start of the current token
+	private int tokenStart;
+	// The position being looked at
+	private int pos;
+
+	// The position in the stream of the start of the buffer
+	private long offset;
+
+	private boolean atEOF;
+	private boolean finished;
+
+	// Whether a string has been seen, and if anything has been since the
+	// last one
+	private boolean sawString;
+	private boolean pieceEmpty;
+
+	private final Deque<String> pending;
+
+	/**
+	 * Create a new tokenizer.
+	 *
+	 * @param source
+	 *                 The stream to read from.
+	 * @param splitter
+	 *                 The splitter whose delimiters to split on.
+	 */
+	public StreamingTokenizer(Reader source, ConfigurableTokenSplitter splitter) {
+		this(source, splitter, false, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a new tokenizer.
+	 *
+	 * @param source
+	 *                      The stream to read from.
+	 * @param splitter
+	 *                      The splitter whose delimiters to split on, or null
+	 *                      to only split out strings.
+	 * @param quotedStrings
+	 *                      Whether double-quoted strings should be kept whole.
+	 * @param bufferSize
+	 *                      The starting size of the buffer.
+	 */
+	public StreamingTokenizer(Reader source, ConfigurableTokenSplitter splitter,
+			boolean quotedStrings, int bufferSize) {
+		if (bufferSize < 1) {
+			String msg = String.format("Buffer size must be positive (was %d)",
+					bufferSize);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		if (splitter == null) {
+			delims     = null;
+			keepDelims = false;
+		} else if (splitter.isLiteral()) {
+			delims     = splitter.getLiterals();
+			keepDelims = splitter.keepDelim;
+		} else {
+			String msg = String.format(
+					"Only splitters with literal delimiters can split streams (splitter was %s)",
+					splitter);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.source        = source;
+		this.quotedStrings = quotedStrings;
+
+		buffer = new char[bufferSize];
+		view   = CharBuffer.wrap(buffer);
+
+		pending = new ArrayDeque<>(3);
+	}
+
+	/**
+	 * Create a new tokenizer that reads from a channel.
+	 *
+	 * @param source
+	 *                      The channel to read from.
+	 * @param charset
+	 *                      The charset the channel is in.
+	 * @param splitter
+	 *                      The splitter whose delimiters to split on, or null
+	 *                      to only split out strings.
+	 * @param quotedStrings
+	 *                      Whether double-quoted strings should be kept whole.
+	 *
+	 * @return A tokenizer for the channel.
+	 */
+	public static StreamingTokenizer fromChannel(ReadableByteChannel source,
+			Charset charset, ConfigurableTokenSplitter splitter, boolean quotedStrings) {
+		Reader rdr = Channels.newReader(source, charset.newDecoder(), -1);
+
+		return new StreamingTokenizer(rdr, splitter, quotedStrings, DEFAULT_BUFFER_SIZE);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (pending.isEmpty() && !finished) advance();
+
+		return !pending.isEmpty();
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) throw new NoSuchElementException("No more tokens");
+
+		return pending.remove();
+	}
+
+	/**
+	 * Get a spliterator over the tokens.
+	 *
+	 * @return A spliterator over the tokens.
+	 */
+	public Spliterator<String> spliterator() {
+		return Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Get a stream of the tokens.
+	 *
+	 * Closing the stream closes the source.
+	 *
+	 * @return A stream of the tokens.
+	 */
+	public Stream<String> stream() {
+		return StreamSupport.stream(spliterator(), false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException ioex) {
+				throw new UncheckedIOException(ioex);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+
+	// Read more text into the buffer; returns false at the end of the stream
+	private boolean fill() {
+		if (atEOF) return false;
+
+		if (limit == buffer.length) {
+			if (tokenStart > 0) {
+				// Slide the current token to the start of the buffer
+				System.arraycopy(buffer, tokenStart, buffer, 0, limit - tokenStart);
+
+				offset += tokenStart;
+				limit  -= tokenStart;
+				pos    -= tokenStart;
+
+				tokenStart = 0;
+			} else {
+				// The token fills the whole buffer, so it needs a bigger one
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				view   = CharBuffer.wrap(buffer);
+			}
+		}
+
+		try {
+			int count = source.read(buffer, limit, buffer.length - limit);
+
+			if (count == -1) {
+				atEOF = true;
+
+				return false;
+			}
+
+			limit += count;
+
+			return true;
+		} catch (IOException ioex) {
+			throw new UncheckedIOException(ioex);
+		}
+	}
+
+	// Make sure there are count chars after pos, or as many as are left
+	private void ensure(int count) {
+		while (limit - pos < count && fill()) {
+			// Keep reading
+		}
+	}
+
+	private String take(int start, int end) {
+		return new String(buffer, start, end - start);
+	}
+
+	// Find the next token or tokens, and add them to pending
+	private void advance() {
+		while (true) {
+			if (pos == limit && !fill()) {
+				// Only add an empty last piece if there weren't any strings.
+				if (!sawString || !pieceEmpty) pending.add(take(tokenStart, limit));
+
+				tokenStart = limit;
+				finished   = true;
+
+				return;
+			}
+
+			if (quotedStrings && buffer[pos] == '"') {
+				pending.add(take(tokenStart, pos));
+
+				tokenStart = pos;
+
+				pos = scanString();
+
+				pending.add(take(tokenStart, pos));
+
+				tokenStart = pos;
+				sawString  = true;
+				pieceEmpty = true;
+
+				return;
+			}
+
+			pieceEmpty = false;
+
+			if (delims != null) {
+				int delimEnd = matchDelimiter();
+
+				if (delimEnd != -1) {
+					pending.add(take(tokenStart, pos));
+
+					// Dropped delimiters still leave an empty token behind.
+					if (keepDelims) pending.add(take(pos, delimEnd));
+					else            pending.add("");
+
+					tokenStart = delimEnd;
+					pos        = delimEnd;
+
+					return;
+				}
+			}
+
+			pos += 1;
+		}
+	}
+
+	// Find the end of the delimiter at pos, or -1 if there isn't one
+	private int matchDelimiter() {
+		int lookahead = delims.maxLength();
+
+		ensure(lookahead);
+
+		int delimEnd = delims.matchAt(view, pos, limit);
+
+		// A repeating delimiter might keep going past the buffer.
+		while (delimEnd != -1 && delimEnd + lookahead > limit && !atEOF) {
+			int matched = delimEnd - pos;
+
+			ensure(matched + lookahead);
+
+			delimEnd = delims.matchAt(view, pos, limit);
+		}
+
+		return delimEnd;
+	}
+
+	// Find the end of the string starting at pos, which is the start of the
+	// current token
+	private int scanString() {
+		boolean escaped = false;
+
+		pos += 1;
+
+		while (true) {
+			if (pos == limit && !fill()) {
+				String msg = String.format(
+						"Unclosed string literal. Opening quote was at position %d",
+						offset + tokenStart);
+
+				throw new IllegalArgumentException(msg);
+			}
+
+			char chr = buffer[pos];
+
+			pos += 1;
+
+			if (escaped)         escaped = false;
+			else if (chr == '\\') escaped = true;
+			else if (chr == '"')  return pos;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"StreamingTokenizer [position=%d, bufferSize=%d, quotedStrings=%s, finished=%s]",
+				offset + pos, buffer.length, quotedStrings, finished);
+	}
+}
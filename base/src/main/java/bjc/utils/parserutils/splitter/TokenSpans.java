@@ -0,0 +1,291 @@
+package bjc.utils.parserutils.splitter;
+
+import java.util.Arrays;
+
+import bjc.funcdata.FunctionalList;
+import bjc.funcdata.ListEx;
+
+/**
+ * A list of tokens, stored as the spans of a source string they cover.
+ *
+ * The spans are packed into a single int array, so adding a token doesn't
+ * allocate anything, and no strings are made for the tokens until they are
+ * asked for.
+ *
+ * Tokens that don't appear in the source as-is (because a splitter transformed
+ * them, for instance) are stored as the span they came from, along with the
+ * string they were replaced with.
+ *
+ * @author Ben Culkin
+ */
+public class TokenSpans {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final CharSequence source;
+
+	// The start and end of token i are at 2i and 2i + 1
+	private int[] bounds;
+	// The strings tokens were replaced with; allocated on first use, and then
+	// kept as long as the tokens are
+	private String[] replacements;
+
+	private int size;
+
+	/**
+	 * Create a new empty list of spans.
+	 *
+	 * @param source
+	 *               The string the spans are in.
+	 */
+	public TokenSpans(CharSequence source) {
+		this.source = source;
+
+		bounds = new int[DEFAULT_CAPACITY * 2];
+	}
+
+	/**
+	 * Get the string the spans are in.
+	 *
+	 * @return The string the spans are in.
+	 */
+	public CharSequence getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the number of tokens.
+	 *
+	 * @return The number of tokens.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if there are no tokens.
+	 *
+	 * @return Whether there are no tokens.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Add a token.
+	 *
+	 * @param start
+	 *              The start of the token in the source, inclusive.
+	 * @param end
+	 *              The end of the token in the source, exclusive.
+	 */
+	public void add(int start, int end) {
+		if (start < 0 || end < start || end > source.length()) {
+			String msg = String.format(
+					"Span [%d, %d) is not inside of a source of length %d", start, end,
+					source.length());
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		if (size * 2 == bounds.length) {
+			bounds = Arrays.copyOf(bounds, bounds.length * 2);
+
+			// Keep room for a replacement for every token
+			if (replacements != null) {
+				replacements = Arrays.copyOf(replacements, bounds.length / 2);
+			}
+		}
+
+		bounds[size * 2]     = start;
+		bounds[size * 2 + 1] = end;
+
+		size += 1;
+	}
+
+	/**
+	 * Add a token that has been replaced by a different string.
+	 *
+	 * @param start
+	 *                    The start of the span the token came from, inclusive.
+	 * @param end
+	 *                    The end of the span the token came from, exclusive.
+	 * @param replacement
+	 *                    The string the token was replaced with.
+	 */
+	public void add(int start, int end, String replacement) {
+		add(start, end);
+
+		if (replacements == null) replacements = new String[bounds.length / 2];
+
+		replacements[size - 1] = replacement;
+	}
+
+	/**
+	 * Add a token from another list of spans over the same source.
+	 *
+	 * @param other
+	 *              The list to get the token from.
+	 * @param idx
+	 *              The index of the token.
+	 */
+	public void add(TokenSpans other, int idx) {
+		if (other.isReplaced(idx)) {
+			add(other.start(idx), other.end(idx), other.replacements[idx]);
+		} else {
+			add(other.start(idx), other.end(idx));
+		}
+	}
+
+	/**
+	 * Split a token from this list with a splitter.
+	 *
+	 * @param splitter
+	 *                 The splitter to split the token with.
+	 * @param idx
+	 *                 The index of the token.
+	 * @param into
+	 *                 The list to add the pieces of the token to.
+	 */
+	void splitToken(TokenSplitter splitter, int idx, TokenSpans into) {
+		int start = start(idx);
+		int end   = end(idx);
+
+		if (isReplaced(idx)) {
+			splitter.split(replacements[idx]).forEach(token -> into.add(start, end, token));
+		} else {
+			splitter.splitSpans(source, start, end, into);
+		}
+	}
+
+	/**
+	 * Remove all of the tokens, so the list can be reused.
+	 */
+	public void clear() {
+		size = 0;
+
+		if (replacements != null) Arrays.fill(replacements, null);
+	}
+
+	private void checkIndex(int idx) {
+		if (idx < 0 || idx >= size) {
+			String msg = String.format("Token index %d is out of range (there are %d tokens)",
+					idx, size);
+
+			throw new IndexOutOfBoundsException(msg);
+		}
+	}
+
+	/**
+	 * Get the start of the span a token came from.
+	 *
+	 * @param idx
+	 *            The index of the token.
+	 *
+	 * @return The start of the span, inclusive.
+	 */
+	public int start(int idx) {
+		checkIndex(idx);
+
+		return bounds[idx * 2];
+	}
+
+	/**
+	 * Get the end of the span a token came from.
+	 *
+	 * @param idx
+	 *            The index of the token.
+	 *
+	 * @return The end of the span, exclusive.
+	 */
+	public int end(int idx) {
+		checkIndex(idx);
+
+		return bounds[idx * 2 + 1];
+	}
+
+	/**
+	 * Check if a token has been replaced by a string that isn't its span.
+	 *
+	 * @param idx
+	 *            The index of the token.
+	 *
+	 * @return Whether the token has been replaced.
+	 */
+	public boolean isReplaced(int idx) {
+		checkIndex(idx);
+
+		return replacements != null && replacements[idx] != null;
+	}
+
+	/**
+	 * Get the length of a token.
+	 *
+	 * @param idx
+	 *            The index of the token.
+	 *
+	 * @return The length of the token.
+	 */
+	public int length(int idx) {
+		if (isReplaced(idx)) return replacements[idx].length();
+
+		return bounds[idx * 2 + 1] - bounds[idx * 2];
+	}
+
+	/**
+	 * Check if a token is equal to a string, without making a string for the
+	 * token.
+	 *
+	 * @param idx
+	 *            The index of the token.
+	 * @param str
+	 *            The string to compare to.
+	 *
+	 * @return Whether the token is equal to the string.
+	 */
+	public boolean tokenEquals(int idx, CharSequence str) {
+		if (isReplaced(idx)) return replacements[idx].contentEquals(str);
+
+		int start = bounds[idx * 2];
+		int len   = bounds[idx * 2 + 1] - start;
+
+		if (len != str.length()) return false;
+
+		for (int i = 0; i < len; i++) {
+			if (source.charAt(start + i) != str.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get a token as a string.
+	 *
+	 * @param idx
+	 *            The index of the token.
+	 *
+	 * @return The token, as a string.
+	 */
+	public String get(int idx) {
+		if (isReplaced(idx)) return replacements[idx];
+
+		return source.subSequence(bounds[idx * 2], bounds[idx * 2 + 1]).toString();
+	}
+
+	/**
+	 * Get all of the tokens as strings.
+	 *
+	 * @return A list of the tokens, as strings.
+	 */
+	public ListEx<String> toList() {
+		ListEx<String> res = new FunctionalList<>();
+
+		for (int i = 0; i < size; i++) res.add(get(i));
+
+		return res;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TokenSpans [size=%s, tokens=%s]", size, toList());
+	}
+}
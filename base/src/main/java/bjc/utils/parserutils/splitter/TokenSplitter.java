@@ -5,6 +5,11 @@ import bjc.funcdata.ListEx;
 /**
  * Split a string into a list of pieces.
  *
+ * Splitters can also split a string into the spans of it that the pieces
+ * cover, with {@link #splitSpans(CharSequence)}. By default, this just splits
+ * the string into strings, but the splitters that can find spans without
+ * making strings for them do so.
+ *
  * @author EVE
  *
  */
@@ -18,4 +23,42 @@ public interface TokenSplitter {
 	 * @return The pieces of the string.
 	 */
 	public ListEx<String> split(String input);
+
+	/**
+	 * Split a string into the spans of it that its pieces cover.
+	 *
+	 * @param input
+	 *              The string to split.
+	 *
+	 * @return The spans of the pieces of the string.
+	 */
+	public default TokenSpans splitSpans(CharSequence input) {
+		TokenSpans spans = new TokenSpans(input);
+
+		splitSpans(input, 0, input.length(), spans);
+
+		return spans;
+	}
+
+	/**
+	 * Split part of a string into the spans of it that its pieces cover.
+	 *
+	 * The default implementation splits that part into strings, and adds them
+	 * as replacements for the whole part.
+	 *
+	 * @param input
+	 *              The string to split.
+	 * @param start
+	 *              The start of the part to split, inclusive.
+	 * @param end
+	 *              The end of the part to split, exclusive.
+	 * @param spans
+	 *              The list to add the spans of the pieces to.
+	 */
+	public default void splitSpans(CharSequence input, int start, int end,
+			TokenSpans spans) {
+		String part = input.subSequence(start, end).toString();
+
+		split(part).forEach(token -> spans.add(start, end, token));
+	}
 }
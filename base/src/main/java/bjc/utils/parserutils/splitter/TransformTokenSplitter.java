@@ -35,4 +35,23 @@ public class TransformTokenSplitter implements TokenSplitter {
 		return source.split(input).map(transform);
 	}
 
+	@Override
+	public void splitSpans(CharSequence input, int start, int end, TokenSpans spans) {
+		TokenSpans untransformed = new TokenSpans(input);
+
+		source.splitSpans(input, start, end, untransformed);
+
+		for (int i = 0; i < untransformed.size(); i++) {
+			String token = untransformed.get(i);
+			String res   = transform.apply(token);
+
+			// Tokens the transform didn't change can stay as just spans.
+			if (res.equals(token)) {
+				spans.add(untransformed, i);
+			} else {
+				spans.add(untransformed.start(i), untransformed.end(i), res);
+			}
+		}
+	}
+
 }
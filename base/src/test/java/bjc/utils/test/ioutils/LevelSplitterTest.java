@@ -2,6 +2,7 @@ package bjc.utils.test.ioutils;
 
 import static bjc.utils.funcutils.TestUtils.assertListEquals;
 import static bjc.utils.test.ioutils.LevelSplitterTest.RXPair.pair;
+import static org.junit.Assert.*;
 
 import java.util.*;
 
@@ -41,6 +42,68 @@ public class LevelSplitterTest {
 				pair("a  b", "a", "b"), pair("a\t \tb", "a", "b"));
 	}
 
+	/** Test splitting on literal delimiters. */
+	@Test
+	public void testLevelSplit() {
+		LevelSplitter splitter = LevelSplitter.def;
+
+		assertListEquals(splitter.levelSplit("", ","), "");
+		assertListEquals(splitter.levelSplit("a,b", ","), "a", "b");
+		assertListEquals(splitter.levelSplit("a,(b,c),[d,e]", ","), "a", "(b,c)", "[d,e]");
+		assertListEquals(splitter.levelSplit("'a,b',\"c,d\"", ","), "'a,b'", "\"c,d\"");
+
+		// Delimiters at the ends, and next to each other
+		assertListEquals(splitter.levelSplit(",a,,b,", ","), "", "a", "", "b", "");
+
+		// The first delimiter given wins
+		assertListEquals(splitter.levelSplit("a->b-c", true, "-", "->"),
+				"a", "-", ">b", "-", "c");
+		assertListEquals(splitter.levelSplit("a->b-c", true, "->", "-"),
+				"a", "->", "b", "-", "c");
+
+		LevelSplitter.Delimiters delims = LevelSplitter.compile(" and ", " or ");
+
+		assertListEquals(splitter.levelSplit("a and (b or c) or d", false, delims),
+				"a", "(b or c)", "d");
+		assertListEquals(splitter.levelSplit("<x and y>", false, delims), "<x and y>");
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) sb.append("x,");
+
+		assertEquals(100001, splitter.levelSplit(sb.toString(), ",").size());
+
+		LevelSplitter ignoring = new LevelSplitter();
+		ignoring.ignoreEmpty = true;
+
+		assertListEquals(ignoring.levelSplit(",a,,b,", true, ","),
+				",", "a", ",", ",", "b", ",");
+	}
+
+	/** Test checking for delimiters. */
+	@Test
+	public void testLevelContains() {
+		LevelSplitter splitter = LevelSplitter.def;
+
+		assertTrue(splitter.levelContains("a+b", "-", "+"));
+		assertFalse(splitter.levelContains("(a+b)", "+"));
+		assertFalse(splitter.levelContains("'a+b'", "+"));
+		assertTrue(splitter.levelContains("(a)+b", "+"));
+		assertFalse(splitter.levelContains("", "+"));
+
+		// Empty delimiters match at the start of any non-empty string
+		assertTrue(splitter.levelContains("(a)", ""));
+		assertTrue(splitter.levelContains("a", "+", ""));
+		assertFalse(splitter.levelContains("", ""));
+
+		try {
+			splitter.levelSplit("a+b", "+", "");
+
+			fail("Splitting on empty delimiters should be rejected");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+	}
+
 	private static void assertRXSplit(String pat, RXPair... pairs) {
 		for (RXPair pair : pairs) {
 			List<String> res = LevelSplitter.def.levelSplitRX(pair.inp, pat);
@@ -4,9 +4,16 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.junit.Test;
 
+import bjc.utils.ioutils.PageChannelWriter;
+import bjc.utils.ioutils.PageSink;
 import bjc.utils.ioutils.ReportWriter;
 
 /**
@@ -27,4 +34,138 @@ public class ReportWriterTest {
 			// Do nothing
 		}
 	}
+
+	@Test
+	public void testWriteSpecialChars() throws IOException {
+		try (ReportWriter rw = new ReportWriter(new StringWriter(), 1, ">")) {
+			rw.setTabEqv(2);
+
+			rw.write("a\tb\nc\n\nd");
+
+			assertEquals("a  b\n>c\n\n>d", rw.toString());
+			assertEquals("Line position counts indents", 2, rw.getLinePos());
+			assertEquals("Lines are counted", 3, rw.getLinesWritter());
+		}
+	}
+
+	@Test
+	public void testPagination() throws IOException {
+		StringWriter sw = new StringWriter();
+
+		try (ReportWriter rw = new ReportWriter(sw)) {
+			rw.setLinesPerPage(2);
+
+			rw.setPageHeader((out, page) -> out.write("[" + page + "]"));
+			rw.setPageFooter((out, page) -> out.write("(" + page + ")"));
+
+			rw.write("a\nb\nc\fd\n");
+
+			assertEquals("Pages are counted from zero", 2, rw.getPageNum());
+			assertEquals("Empty pages aren't decorated", "[1]a\nb\n(1)[2]c(2)\f[3]d\n",
+					sw.toString());
+		}
+
+		assertEquals("Closing finishes the last page", "[1]a\nb\n(1)[2]c(2)\f[3]d\n(3)",
+				sw.toString());
+	}
+
+	@Test
+	public void testPageLength() throws IOException {
+		StringWriter sw = new StringWriter();
+
+		try (ReportWriter rw = new ReportWriter(sw)) {
+			rw.setLinesPerPage(3);
+			rw.setPageFooter((out, page) -> out.write("(" + page + ")"));
+
+			rw.write("1\n2\n3\n4\n5\n6\n7\n");
+		}
+
+		// The first page used to get one line more than the rest
+		assertEquals("Every page has the same number of lines",
+				"1\n2\n3\n(1)4\n5\n6\n(2)7\n(3)", sw.toString());
+
+		sw = new StringWriter();
+
+		try (ReportWriter rw = new ReportWriter(sw)) {
+			rw.setLinesPerPage(5);
+			rw.setPageFooter((out, page) -> out.write("(" + page + ")"));
+
+			rw.write("a\nb\nc\n");
+
+			// This used to move on to the next page without a footer
+			rw.setLinesPerPage(2);
+			assertEquals("Shrinking a page doesn't end it", 0, rw.getPageNum());
+
+			rw.write("d\ne\nf\n");
+		}
+
+		assertEquals("An overfull page ends at the next newline",
+				"a\nb\nc\nd\n(1)e\nf\n(2)", sw.toString());
+	}
+
+	@Test
+	public void testPageSink() throws IOException {
+		StringBuilder pages = new StringBuilder();
+
+		// Marks where each page ended
+		class MarkingWriter extends StringWriter implements PageSink {
+			@Override
+			public void endPage() {
+				pages.append(toString()).append('|');
+			}
+		}
+
+		try (ReportWriter rw = new ReportWriter(new MarkingWriter())) {
+			rw.setLinesPerPage(2);
+			rw.setPageFooter((out, page) -> out.write("-" + page));
+
+			rw.write("a\nb\nc\fd");
+		}
+
+		assertEquals("a\nb\n-1|a\nb\n-1c-2|a\nb\n-1c-2\fd-3|", pages.toString());
+	}
+
+	@Test
+	public void testPageChannelWriter() throws IOException {
+		Path file = Files.createTempFile("report", ".txt");
+
+		try (FileChannel chan = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			PageChannelWriter pages = new PageChannelWriter(chan, StandardCharsets.UTF_8, 16, 8);
+
+			ReportWriter rw = new ReportWriter(pages);
+			rw.setLinesPerPage(1);
+			rw.setPageFooter((out, page) -> out.write("--" + page + "\n"));
+
+			rw.write("first line\n");
+			assertEquals("Writes are lined up with blocks", 8, chan.size());
+
+			rw.write("a longer second line\n");
+			assertEquals("Writes are lined up with blocks", 40, chan.size());
+
+			rw.write("end");
+			rw.close();
+
+			String expected = "first line\n--1\na longer second line\n--2\nend--3\n";
+
+			assertEquals(expected, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		} finally {
+			Files.delete(file);
+		}
+
+		file = Files.createTempFile("report", ".txt");
+
+		try (FileChannel chan = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			// A page only a block long, with a character straddling its end
+			PageChannelWriter pages = new PageChannelWriter(chan, StandardCharsets.UTF_8, 16, 16);
+
+			String text = "abcdefghijklm\uD83D\uDE00xyz";
+
+			pages.write(text);
+			pages.finish();
+
+			assertEquals(text, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		} finally {
+			Files.delete(file);
+		}
+	}
 }
@@ -2,8 +2,11 @@ package bjc.utils.test.math;
 
 import static org.junit.Assert.*;
 
+import java.util.*;
+
 import org.junit.Test;
 
+import bjc.utils.math.CardinalState;
 import bjc.utils.math.NumberUtils;
 
 @SuppressWarnings("javadoc")
@@ -32,6 +35,63 @@ public class NumberUtilsTest {
 		assertRomanEquals("IIII", 4, true);
 	}
 
+	@Test
+	public void testCardinals() {
+		assertEquals("zero", NumberUtils.toCardinal(0));
+		assertEquals("twenty", NumberUtils.toCardinal(20));
+		assertEquals("ninety", NumberUtils.toCardinal(90));
+		assertEquals("one hundred and twelve", NumberUtils.toCardinal(112));
+		assertEquals("one million, twelve", NumberUtils.toCardinal(1000012));
+		assertEquals("negative seventeen", NumberUtils.toCardinal(-17));
+
+		try {
+			NumberUtils.toCardinal(Long.MIN_VALUE);
+
+			fail("Converted a number larger than a trillion");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testCustomCardinals() {
+		Map<Long, String> numbers = new HashMap<>();
+		numbers.put(12L, "a dozen");
+
+		CardinalState custom = new CardinalState(numbers, new HashMap<>());
+
+		// Customizations apply to each part of a number, not just the whole
+		assertEquals("a dozen", NumberUtils.toCardinal(12, custom));
+		assertEquals("a dozen thousand, a dozen", NumberUtils.toCardinal(12012, custom));
+		assertEquals("twelve thousand, twelve", NumberUtils.toCardinal(12012));
+	}
+
+	@Test
+	public void testOrdinals() {
+		assertEquals("zeroth", NumberUtils.toOrdinal(0));
+		assertEquals("twelfth", NumberUtils.toOrdinal(12));
+		assertEquals("twenty-first", NumberUtils.toOrdinal(21));
+		assertEquals("fortieth", NumberUtils.toOrdinal(40));
+		assertEquals("111th", NumberUtils.toOrdinal(111));
+		assertEquals("1002nd", NumberUtils.toOrdinal(1002));
+		assertEquals("123453rd", NumberUtils.toOrdinal(123453));
+		assertEquals("negative third", NumberUtils.toOrdinal(-3));
+		assertEquals("negative twenty-first", NumberUtils.toOrdinal(-21));
+	}
+
+	@Test
+	public void testAppending() throws Exception {
+		StringBuilder sb = new StringBuilder();
+
+		NumberUtils.appendCardinal(5, null, sb);
+		sb.append(' ');
+		NumberUtils.appendOrdinal(22222, sb);
+		sb.append(' ');
+		NumberUtils.appendRoman(24601, false, sb);
+
+		assertEquals("five 22222nd " + NumberUtils.toRoman(24601, false), sb.toString());
+	}
+
 	private static void assertRomanEquals(String exp, long res) {
 		assertRomanEquals(exp, res, false);
 	}
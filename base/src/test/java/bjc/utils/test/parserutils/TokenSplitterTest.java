@@ -0,0 +1,276 @@
+package bjc.utils.test.parserutils;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import bjc.funcdata.ListEx;
+import bjc.utils.parserutils.TokenUtils;
+import bjc.utils.parserutils.splitter.*;
+
+/*
+ * Tests for the token splitters.
+ */
+@SuppressWarnings("javadoc")
+public class TokenSplitterTest {
+	private static final String[] INPUTS = {
+			"", "a", "a+b", "+a+", "a++b", "a + b - c", "(a+b)*c", "x = y += z",
+			"a  b\tc", "++", "abc", "a+-b"
+	};
+
+	/*
+	 * Check that splitting into spans gives the same tokens as splitting into
+	 * strings.
+	 */
+	@Test
+	public void testSpansMatchStrings() {
+		ConfigurableTokenSplitter ops = new ConfigurableTokenSplitter.Builder(true)
+				.simple("+=", "+", "-", "=").multiple("(", ")", "*").build();
+
+		ConfigurableTokenSplitter dropping = new ConfigurableTokenSplitter.Builder(false)
+				.simple("+").build();
+
+		SimpleTokenSplitter spaces = new SimpleTokenSplitter(Pattern.compile("\\s+"),
+				false);
+
+		ExcludingTokenSplitter excluding = new ExcludingTokenSplitter(ops);
+		excluding.addLiteralExclusions("a+b");
+		excluding.addPredicateExclusion(str -> str.startsWith("("));
+
+		TokenSplitter[] splitters = {
+				ops, dropping, spaces, excluding,
+				TokenSplitters.identitySplitter(),
+				TokenSplitters.chainSplitter(spaces, ops),
+				TokenSplitters.chainSplitter(
+						TokenSplitters.transformSplitter(spaces, String::toUpperCase), ops),
+				new FilteredTokenSplitter(ops, str -> !str.isEmpty())
+		};
+
+		for (TokenSplitter splitter : splitters) {
+			for (String input : INPUTS) {
+				ListEx<String> strings = splitter.split(input);
+				TokenSpans spans = splitter.splitSpans(input);
+
+				assertEquals(input, strings.getSize(), spans.size());
+
+				for (int i = 0; i < spans.size(); i++) {
+					assertEquals(input, strings.getByIndex(i), spans.get(i));
+					assertTrue(input, spans.tokenEquals(i, strings.getByIndex(i)));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Check that literal delimiters compiled into a trie split the same as
+	 * the regular expression.
+	 */
+	@Test
+	public void testLiteralDelimiters() {
+		Random rng = new Random(23);
+
+		for (int config = 0; config < 200; config++) {
+			boolean keepDelims = rng.nextBoolean();
+
+			ConfigurableTokenSplitter.Builder builder
+					= new ConfigurableTokenSplitter.Builder(keepDelims);
+
+			int numDelims = 1 + rng.nextInt(6);
+			for (int i = 0; i < numDelims; i++) {
+				if (rng.nextInt(3) == 0) builder.multiple(randomString(rng, 1, 3));
+				else                     builder.simple(randomString(rng, 1, 3));
+			}
+
+			ConfigurableTokenSplitter literal = builder.build();
+			assertTrue(literal.isLiteral());
+
+			SimpleTokenSplitter regex = new SimpleTokenSplitter(literal.getPattern(),
+					keepDelims);
+
+			for (int i = 0; i < 20; i++) {
+				String input = randomString(rng, 0, 30);
+
+				assertEquals(literal + " on " + input, regex.split(input).toString(),
+						literal.split(input).toString());
+			}
+		}
+
+		ConfigurableTokenSplitter raw = new ConfigurableTokenSplitter.Builder(true)
+				.simple("+").raw("\\d+").build();
+
+		assertFalse("Raw delimiters need a regular expression", raw.isLiteral());
+	}
+
+	/*
+	 * Check that splitting a stream gives the same tokens as splitting the
+	 * whole string, however the buffer lines up with the tokens.
+	 */
+	@Test
+	public void testStreamingTokenizer() {
+		Random rng = new Random(24);
+
+		for (int config = 0; config < 100; config++) {
+			ConfigurableTokenSplitter splitter
+					= new ConfigurableTokenSplitter.Builder(rng.nextBoolean())
+							.multiple(randomString(rng, 1, 2))
+							.simple(randomString(rng, 1, 3), randomString(rng, 1, 3))
+							.build();
+
+			for (int i = 0; i < 20; i++) {
+				String input = randomString(rng, 0, 40);
+
+				List<String> expected = new ArrayList<>();
+				splitter.split(input).forEach(expected::add);
+
+				assertEquals(input, expected, streamTokens(input, splitter, false,
+						1 + rng.nextInt(8)));
+
+				String quoted = randomQuoted(rng);
+
+				expected.clear();
+
+				boolean inString = false;
+				for (String piece : TokenUtils.removeDQuotedStrings(quoted)) {
+					if (inString) expected.add(piece);
+					else          splitter.split(piece).forEach(expected::add);
+
+					inString = !inString;
+				}
+
+				assertEquals(quoted, expected, streamTokens(quoted, splitter, true,
+						1 + rng.nextInt(8)));
+				assertEquals(quoted, TokenUtils.removeDQuotedStrings(quoted),
+						streamTokens(quoted, null, true, 1 + rng.nextInt(8)));
+			}
+		}
+
+		// A quote after an escaped backslash ends the string, which
+		// removeDQuotedStrings disagrees with.
+		String escapedBackslash = "a\"b\\\\\"c";
+
+		assertEquals(Arrays.asList("a", "\"b\\\\\"", "c"),
+				streamTokens(escapedBackslash, null, true, 1));
+
+		try {
+			TokenUtils.removeDQuotedStrings(escapedBackslash);
+
+			fail("removeDQuotedStrings doesn't count the closing quote");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+
+		try {
+			streamTokens("ab \"cd\\\" e", null, true, 2);
+
+			fail("Unclosed strings should be rejected");
+		} catch (IllegalArgumentException iaex) {
+			assertTrue(iaex.getMessage().contains("position 3"));
+		}
+
+		ConfigurableTokenSplitter raw = new ConfigurableTokenSplitter.Builder(true)
+				.raw("\\d+").build();
+
+		try {
+			new StreamingTokenizer(new StringReader(""), raw);
+
+			fail("Raw delimiters can't split streams");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+	}
+
+	private static List<String> streamTokens(String input,
+			ConfigurableTokenSplitter splitter, boolean quotedStrings, int bufferSize) {
+		StreamingTokenizer tokenizer = new StreamingTokenizer(new StringReader(input),
+				splitter, quotedStrings, bufferSize);
+
+		return tokenizer.stream().collect(Collectors.toList());
+	}
+
+	private static String randomQuoted(Random rng) {
+		StringBuilder sb = new StringBuilder();
+
+		int pieces = rng.nextInt(5);
+		for (int i = 0; i < pieces; i++) {
+			if (rng.nextBoolean()) {
+				sb.append(randomString(rng, 0, 6));
+			} else {
+				sb.append('"');
+
+				// Only quotes are escaped; escaped backslashes are where the
+				// two differ, which is checked separately.
+				int length = rng.nextInt(6);
+				for (int j = 0; j < length; j++) {
+					char chr = "ab+\"".charAt(rng.nextInt(4));
+
+					if (chr == '"') sb.append('\\');
+
+					sb.append(chr);
+				}
+
+				sb.append('"');
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static String randomString(Random rng, int minLength, int maxLength) {
+		StringBuilder sb = new StringBuilder();
+
+		int length = minLength + rng.nextInt(maxLength - minLength + 1);
+		for (int i = 0; i < length; i++) sb.append("ab+-=".charAt(rng.nextInt(5)));
+
+		return sb.toString();
+	}
+
+	/*
+	 * Check that spans point into the source.
+	 */
+	@Test
+	public void testSpanBounds() {
+		TokenSplitter ops = new ConfigurableTokenSplitter.Builder(true).simple("+")
+				.build();
+
+		TokenSpans spans = ops.splitSpans("ab+cd");
+
+		assertEquals(3, spans.size());
+
+		assertEquals(0, spans.start(0));
+		assertEquals(2, spans.end(0));
+		assertEquals(2, spans.start(1));
+		assertEquals(3, spans.end(1));
+		assertEquals(3, spans.start(2));
+		assertEquals(5, spans.end(2));
+
+		assertFalse(spans.isReplaced(2));
+		assertFalse(spans.tokenEquals(2, "cde"));
+
+		TokenSpans upper = TokenSplitters
+				.transformSplitter(ops, String::toUpperCase).splitSpans("ab+cd");
+
+		assertTrue(upper.isReplaced(0));
+		assertFalse("Unchanged tokens aren't replaced", upper.isReplaced(1));
+		assertEquals("CD", upper.get(2));
+		assertEquals(3, upper.start(2));
+
+		// Replacing an early token, then adding more tokens than the spans
+		// started out with room for
+		String many = "a" + String.join("", Collections.nCopies(40, ",x"));
+
+		TokenSpans replaced = TokenSplitters.transformSplitter(
+				new ConfigurableTokenSplitter.Builder(true).simple(",").build(),
+				str -> str.equals("a") ? "A" : str).splitSpans(many);
+
+		assertEquals(81, replaced.size());
+		assertTrue(replaced.isReplaced(0));
+		assertFalse(replaced.isReplaced(80));
+		assertEquals("x", replaced.get(80));
+		assertEquals(81, replaced.toList().getSize());
+	}
+}
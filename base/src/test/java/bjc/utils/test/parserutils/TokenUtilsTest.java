@@ -13,6 +13,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import bjc.utils.parserutils.StringDescaper;
+
 /*
  * Tests for TokenUtils
  */
@@ -156,4 +158,45 @@ public class TokenUtilsTest {
 
 		descapeString("\\x");
 	}
-}
\ No newline at end of file
+
+	/*
+	 * Check handling of escaped backslashes, next to other escapes.
+	 */
+	@Test
+	public void testDescapeString_BackslashEscapeString() {
+		final String onBackslashString = descapeString("a\\\\b\\\\\\n");
+
+		assertThat(onBackslashString, is("a\\b\\\n"));
+	}
+
+	/*
+	 * Check handling of octal and unicode escapes.
+	 */
+	@Test
+	public void testDescapeString_NumericEscapeString() {
+		assertThat(descapeString("\\101\\1010\\477"), is("AA0'7"));
+		assertThat(descapeString("\\u0041\\u00e9!"), is("A\u00e9!"));
+	}
+
+	/*
+	 * Check handling of custom escapes.
+	 */
+	@Test
+	public void testDescapeString_CustomEscapes() {
+		final StringDescaper descaper = new StringDescaper();
+
+		descaper.addLiteralEscape("e", "<e>");
+		descaper.addLiteralEscape("eq", "<eq>");
+		descaper.addSpecialEscape("x[0-9a-f]{2}",
+				(esc) -> Character.toString((char) Integer.parseInt(esc.substring(1), 16)));
+		descaper.compileEscapes();
+
+		assertThat(descaper.descapeString("\\e\\eq\\er"), is("<e><eq><e>r"));
+		assertThat(descaper.descapeString("\\x41\\t"), is("A\t"));
+
+		exp.expect(IllegalArgumentException.class);
+		exp.expectMessage(containsString("at position 2"));
+
+		descaper.descapeString("ab\\z");
+	}
+}
@@ -0,0 +1,384 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compares the results of a benchmark run against a baseline, and fails if
+ * any benchmark allocates noticeably more than it did in the baseline.
+ *
+ * Both files are in the JSON format JMH writes with <code>-rf json</code>, and
+ * the run needs to use <code>-prof gc</code> so that the allocation per
+ * operation is recorded.
+ *
+ * Allocation per operation barely changes from one machine to another, so it
+ * is what gets checked. Changes in time are only reported, since the baseline
+ * was probably recorded on a different machine.
+ *
+ * A baseline can also be an object, with the list of results under
+ * <code>results</code> and a note on how they were recorded under
+ * <code>recordedWith</code>. That is for baselines that didn't come from JMH,
+ * whose figures can't be compared like for like with a JMH run, so changes
+ * against them are only reported and never fail the check.
+ *
+ * Usage:
+ *
+ * <pre>
+ * BaselineCheck &lt;baseline.json&gt; &lt;results.json&gt; [tolerance-percent]
+ * </pre>
+ *
+ * @author Ben Culkin
+ */
+public class BaselineCheck {
+	// The name JMH gives the allocation per operation
+	private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+	// Allocation changes smaller than this many bytes are noise
+	private static final double ALLOC_SLACK = 16;
+
+	/**
+	 * Run the check.
+	 *
+	 * @param args
+	 *             The baseline file, the results file, and optionally the
+	 *             percentage allocation can grow by before it counts as a
+	 *             regression (10 by default).
+	 *
+	 * @throws IOException
+	 *                     If either file can't be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println(
+					"Usage: BaselineCheck <baseline.json> <results.json> [tolerance-percent]");
+			System.exit(2);
+		}
+
+		double tolerance = 10;
+		if (args.length == 3) tolerance = Double.parseDouble(args[2]);
+
+		Object baseDoc = readDocument(Paths.get(args[0]));
+		Object currDoc = readDocument(Paths.get(args[1]));
+
+		Map<String, Map<?, ?>> baseline = readResults(baseDoc, args[0]);
+		Map<String, Map<?, ?>> results  = readResults(currDoc, args[1]);
+
+		String recordedWith = recordedWith(baseDoc);
+		if (recordedWith != null) {
+			System.out.printf("The baseline wasn't recorded with JMH, so changes are only reported.%n");
+			System.out.printf("It was recorded with: %s%n", recordedWith);
+		}
+
+		int regressions = 0;
+
+		for (Map.Entry<String, Map<?, ?>> entry : results.entrySet()) {
+			String name = entry.getKey();
+
+			Map<?, ?> base = baseline.get(name);
+			Map<?, ?> curr = entry.getValue();
+
+			if (base == null) {
+				System.out.printf("NEW   %s%n", name);
+				continue;
+			}
+
+			double baseTime = score((Map<?, ?>) base.get("primaryMetric"));
+			double currTime = score((Map<?, ?>) curr.get("primaryMetric"));
+
+			Double baseAlloc = allocation(base);
+			Double currAlloc = allocation(curr);
+
+			String timeChange = String.format("time %+.1f%%", percentChange(baseTime, currTime));
+
+			if (baseAlloc == null || currAlloc == null) {
+				System.out.printf("OK    %s (%s, no allocation data)%n", name, timeChange);
+				continue;
+			}
+
+			double limit = Math.max(baseAlloc * (1 + tolerance / 100), baseAlloc + ALLOC_SLACK);
+
+			String status = "OK   ";
+			if (currAlloc > limit) {
+				status = "FAIL ";
+
+				regressions += 1;
+			}
+
+			System.out.printf("%s %s (%s, allocation %.0f -> %.0f B/op)%n", status, name,
+					timeChange, baseAlloc, currAlloc);
+		}
+
+		for (String name : baseline.keySet()) {
+			if (!results.containsKey(name)) System.out.printf("GONE  %s%n", name);
+		}
+
+		if (regressions > 0) {
+			System.out.printf("%d benchmark(s) allocate more than the baseline%n", regressions);
+
+			if (recordedWith == null) System.exit(1);
+		}
+	}
+
+	private static Object readDocument(Path path) throws IOException {
+		String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+
+		return new JsonReader(text).readDocument();
+	}
+
+	// Get how a baseline was recorded, if it wasn't a plain JMH run
+	private static String recordedWith(Object doc) {
+		if (!(doc instanceof Map<?, ?>)) return null;
+
+		Object note = ((Map<?, ?>) doc).get("recordedWith");
+
+		return note == null ? "(not given)" : note.toString();
+	}
+
+	// Get the results from a file, keyed by benchmark name and parameters
+	private static Map<String, Map<?, ?>> readResults(Object doc, String file)
+			throws IOException {
+		Object parsed = doc;
+		if (parsed instanceof Map<?, ?>) parsed = ((Map<?, ?>) parsed).get("results");
+
+		if (!(parsed instanceof List<?>)) {
+			throw new IOException(file + " is not a list of benchmark results");
+		}
+
+		Map<String, Map<?, ?>> results = new TreeMap<>();
+
+		for (Object obj : (List<?>) parsed) {
+			Map<?, ?> result = (Map<?, ?>) obj;
+
+			StringBuilder name = new StringBuilder((String) result.get("benchmark"));
+
+			Map<?, ?> params = (Map<?, ?>) result.get("params");
+			if (params != null) {
+				// Sort the parameters, so their order doesn't matter
+				for (Map.Entry<?, ?> param : new TreeMap<>(params).entrySet()) {
+					name.append(':').append(param.getKey()).append('=').append(param.getValue());
+				}
+			}
+
+			results.put(name.toString(), result);
+		}
+
+		return results;
+	}
+
+	private static double score(Map<?, ?> metric) {
+		return ((Number) metric.get("score")).doubleValue();
+	}
+
+	// Get the allocation per operation for a result, if it has one
+	private static Double allocation(Map<?, ?> result) {
+		Map<?, ?> secondary = (Map<?, ?>) result.get("secondaryMetrics");
+		if (secondary == null) return null;
+
+		// Older versions of JMH put a dot in front of profiler metrics
+		for (Map.Entry<?, ?> entry : secondary.entrySet()) {
+			if (((String) entry.getKey()).endsWith(ALLOC_METRIC)) {
+				return score((Map<?, ?>) entry.getValue());
+			}
+		}
+
+		return null;
+	}
+
+	private static double percentChange(double from, double to) {
+		if (from == 0) return 0;
+
+		return (to - from) / from * 100;
+	}
+
+	/*
+	 * Just enough of a JSON reader to read JMH's output.
+	 *
+	 * Objects become maps, arrays become lists, and numbers become doubles.
+	 */
+	private static final class JsonReader {
+		private final String text;
+
+		private int pos;
+
+		JsonReader(String text) {
+			this.text = text;
+		}
+
+		Object readDocument() throws IOException {
+			Object val = readValue();
+
+			skipSpace();
+			if (pos != text.length()) throw error("Trailing text");
+
+			return val;
+		}
+
+		private Object readValue() throws IOException {
+			skipSpace();
+
+			if (pos >= text.length()) throw error("Unexpected end of input");
+
+			char ch = text.charAt(pos);
+
+			switch (ch) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				expect("true");
+				return Boolean.TRUE;
+			case 'f':
+				expect("false");
+				return Boolean.FALSE;
+			case 'n':
+				expect("null");
+				return null;
+			default:
+				return readNumber();
+			}
+		}
+
+		private Map<String, Object> readObject() throws IOException {
+			Map<String, Object> obj = new LinkedHashMap<>();
+
+			pos += 1;
+			skipSpace();
+
+			if (peek() == '}') {
+				pos += 1;
+				return obj;
+			}
+
+			while (true) {
+				skipSpace();
+				if (peek() != '"') throw error("Expected a key");
+
+				String key = readString();
+
+				skipSpace();
+				if (peek() != ':') throw error("Expected ':'");
+				pos += 1;
+
+				obj.put(key, readValue());
+
+				skipSpace();
+				char ch = peek();
+				pos += 1;
+
+				if (ch == '}') return obj;
+				if (ch != ',') throw error("Expected ',' or '}'");
+			}
+		}
+
+		private List<Object> readArray() throws IOException {
+			List<Object> arr = new ArrayList<>();
+
+			pos += 1;
+			skipSpace();
+
+			if (peek() == ']') {
+				pos += 1;
+				return arr;
+			}
+
+			while (true) {
+				arr.add(readValue());
+
+				skipSpace();
+				char ch = peek();
+				pos += 1;
+
+				if (ch == ']') return arr;
+				if (ch != ',') throw error("Expected ',' or ']'");
+			}
+		}
+
+		private String readString() throws IOException {
+			StringBuilder sb = new StringBuilder();
+
+			pos += 1;
+
+			while (true) {
+				if (pos >= text.length()) throw error("Unterminated string");
+
+				char ch = text.charAt(pos++);
+
+				if (ch == '"') return sb.toString();
+
+				if (ch != '\\') {
+					sb.append(ch);
+					continue;
+				}
+
+				if (pos >= text.length()) throw error("Unterminated string");
+
+				char esc = text.charAt(pos++);
+
+				switch (esc) {
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u':
+					if (pos + 4 > text.length()) throw error("Bad unicode escape");
+
+					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+					pos += 4;
+					break;
+				default:
+					sb.append(esc);
+				}
+			}
+		}
+
+		private Double readNumber() throws IOException {
+			int start = pos;
+
+			while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) != -1) {
+				pos += 1;
+			}
+
+			// JMH writes these for results it couldn't compute
+			if (pos == start) {
+				if (text.startsWith("NaN", pos)) {
+					pos += 3;
+					return Double.NaN;
+				}
+
+				throw error("Unexpected character '" + text.charAt(pos) + "'");
+			}
+
+			try {
+				return Double.valueOf(text.substring(start, pos));
+			} catch (NumberFormatException nfex) {
+				throw error("Bad number");
+			}
+		}
+
+		private void expect(String word) throws IOException {
+			if (!text.startsWith(word, pos)) throw error("Expected " + word);
+
+			pos += word.length();
+		}
+
+		private char peek() throws IOException {
+			if (pos >= text.length()) throw error("Unexpected end of input");
+
+			return text.charAt(pos);
+		}
+
+		private void skipSpace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos += 1;
+		}
+
+		private IOException error(String msg) {
+			return new IOException(String.format("%s at offset %d of JSON", msg, pos));
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.esodata.*;
+import bjc.utils.ioutils.*;
+import bjc.utils.ioutils.format.*;
+import bjc.utils.ioutils.format.directives.*;
+import bjc.utils.math.*;
+
+/**
+ * Measures ~:D with padding and a comma interval, over ten million values.
+ *
+ * Each value is printed with the same context and writer, so the only
+ * allocation left is what the directive does itself. For comparison, there is
+ * also the same number printed by building a string with
+ * {@link NumberUtils#toCommaString(long, int, char, int, char, boolean, int)}
+ * and writing that, which is how ~D used to work.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommaNumberBenchmark {
+	private static final int VALUES = 10_000_000;
+
+	/*
+	 * A number that can be changed in place, so that printing a new value
+	 * doesn't have to box it.
+	 */
+	private static final class MutableLong extends Number {
+		private static final long serialVersionUID = 1L;
+
+		long value;
+
+		@Override
+		public int intValue() {
+			return (int) value;
+		}
+
+		@Override
+		public long longValue() {
+			return value;
+		}
+
+		@Override
+		public float floatValue() {
+			return value;
+		}
+
+		@Override
+		public double doubleValue() {
+			return value;
+		}
+	}
+
+	private CLString commaNumber;
+
+	private MutableLong number;
+	private Tape<Object> items;
+
+	private StringBuilderWriter buffer;
+	private ReportWriter writer;
+
+	private FormatContext formCTX;
+
+	/**
+	 * Compile the format string, and set up the context to print with.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		// Padded to 12 columns with zeros, with a comma every 3 digits
+		commaNumber = fmt.compile("~12,'0,',,3:D");
+
+		number = new MutableLong();
+		items  = new SingleTape<>(number);
+
+		buffer = new StringBuilderWriter();
+		writer = new ReportWriter(buffer);
+
+		formCTX = new FormatContext(writer, items);
+	}
+
+	/**
+	 * Print every value with ~:D.
+	 *
+	 * @return The total length of the output.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public long directive() throws IOException {
+		long total = 0;
+
+		for (int i = 0; i < VALUES; i++) {
+			number.value = i * 997L;
+
+			items.seekTo(0);
+			buffer.clear();
+
+			commaNumber.formatInto(formCTX);
+
+			total += buffer.length();
+		}
+
+		return total;
+	}
+
+	/**
+	 * Print every value by building a string, then writing it.
+	 *
+	 * @return The total length of the output.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public long viaString() throws IOException {
+		long total = 0;
+
+		for (int i = 0; i < VALUES; i++) {
+			buffer.clear();
+
+			writer.write(NumberUtils.toCommaString(i * 997L, 12, '0', 3, ',', false, 10));
+
+			total += buffer.length();
+		}
+
+		return total;
+	}
+}
@@ -0,0 +1,103 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures throughput of a single frozen format string shared between
+ * threads.
+ *
+ * Each benchmark runs the same format with a different number of threads. If
+ * formatting doesn't contend on anything, the throughput should grow in
+ * proportion to the thread count (up to the number of cores available).
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentBenchmark {
+	private CLString shared;
+
+	private List<Object> itrList;
+
+	/**
+	 * Compile the shared format string.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		shared = fmt.compileFrozen("~A: ~{~:(~A~)~^, ~} ~8,'0D ~@R");
+
+		itrList = Arrays.asList("foo", "bar", "baz");
+	}
+
+	private String doFormat() throws IOException {
+		return shared.format("items", itrList, 1234, 1999);
+	}
+
+	/**
+	 * Format with one thread.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	@Threads(1)
+	public String threads1() throws IOException {
+		return doFormat();
+	}
+
+	/**
+	 * Format with two threads.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	@Threads(2)
+	public String threads2() throws IOException {
+		return doFormat();
+	}
+
+	/**
+	 * Format with four threads.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	@Threads(4)
+	public String threads4() throws IOException {
+		return doFormat();
+	}
+
+	/**
+	 * Format with eight threads.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	@Threads(8)
+	public String threads8() throws IOException {
+		return doFormat();
+	}
+}
@@ -0,0 +1,80 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures the ~`D directive, with the default format, a literal pattern and
+ * a pattern supplied with V.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecimalBenchmark {
+	private CLString defaultFormat;
+	private CLString literalPattern;
+	private CLString dynamicPattern;
+
+	/**
+	 * Compile all of the format strings.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		fmt.setLocale(Locale.US);
+
+		defaultFormat  = fmt.compile("~`D");
+		literalPattern = fmt.compile("~\"#,##0.00\"`D");
+		dynamicPattern = fmt.compile("~V`D");
+	}
+
+	/**
+	 * Default number format.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String defaultFormat() throws IOException {
+		return defaultFormat.format(1234567.891);
+	}
+
+	/**
+	 * Pattern given as a literal parameter.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String literalPattern() throws IOException {
+		return literalPattern.format(1234567.891);
+	}
+
+	/**
+	 * Pattern given with V.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String dynamicPattern() throws IOException {
+		return dynamicPattern.format("#,##0.00", 1234567.891);
+	}
+}
@@ -0,0 +1,147 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures the directives that do the most work per use on their own: ~R,
+ * ~`D, ~{, ~( and ~`[.
+ *
+ * Run with -prof gc to see how much each one allocates.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectiveBenchmark {
+	private CLString cardinal;
+	private CLString ordinal;
+	private CLString roman;
+	private CLString decimal;
+	private CLString iteration;
+	private CLString caseConversion;
+	private CLString inflection;
+
+	private List<Object> items;
+
+	/**
+	 * Compile all of the format strings.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		fmt.setLocale(Locale.US);
+
+		cardinal       = fmt.compile("~R");
+		ordinal        = fmt.compile("~:R");
+		roman          = fmt.compile("~@R");
+		decimal        = fmt.compile("~\"#,##0.00\"`D");
+		iteration      = fmt.compile("~{~A~^, ~}");
+		caseConversion = fmt.compile("~:(~A~)");
+		inflection     = fmt.compile("~`[<#:~D> <N:cat> <V:was> found~`]");
+
+		items = Arrays.asList("alpha", "beta", "gamma", "delta", "epsilon", "zeta",
+				"eta", "theta");
+	}
+
+	/**
+	 * Cardinal number, in English.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String cardinal() throws IOException {
+		return cardinal.format(1234567);
+	}
+
+	/**
+	 * Ordinal number, in English.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String ordinal() throws IOException {
+		return ordinal.format(1234567);
+	}
+
+	/**
+	 * Roman numeral.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String roman() throws IOException {
+		return roman.format(1999);
+	}
+
+	/**
+	 * Decimal number, with a literal pattern.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String decimal() throws IOException {
+		return decimal.format(1234567.891);
+	}
+
+	/**
+	 * List with separators.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String iteration() throws IOException {
+		return iteration.format(items);
+	}
+
+	/**
+	 * Capitalizing every word.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String caseConversion() throws IOException {
+		return caseConversion.format("the quick brown fox jumps over the lazy dog");
+	}
+
+	/**
+	 * Inflecting a noun and verb to match a count.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String inflection() throws IOException {
+		return inflection.format(3);
+	}
+}
@@ -0,0 +1,98 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures the cost of the ~^ escape directive in iterations over large
+ * lists.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeBenchmark {
+	/**
+	 * The number of items in the list.
+	 */
+	@Param({ "10", "1000", "10000" })
+	public int size;
+
+	// Escapes once, after the last item
+	private CLString separated;
+	// Escapes once, with the body passed as a parameter
+	private CLString dynamic;
+	// Escapes on every item, since every sublist is too short for the body
+	private CLString everyItem;
+
+	private List<Object> items;
+	private List<Object> sublists;
+
+	/**
+	 * Compile the format strings, and build the lists.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		separated = fmt.compile("~{~A~^, ~}");
+		dynamic   = fmt.compile("~{~}");
+		everyItem = fmt.compile("~:{~A~^=~A~}");
+
+		items    = new ArrayList<>(size);
+		sublists = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			items.add(i);
+			sublists.add(Arrays.asList(i));
+		}
+	}
+
+	/**
+	 * List with separators.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String separated() throws IOException {
+		return separated.format(items);
+	}
+
+	/**
+	 * List with separators, where the body is a parameter.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String dynamic() throws IOException {
+		return dynamic.format("~A~^, ", items);
+	}
+
+	/**
+	 * List where the escape is taken on every item.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String everyItem() throws IOException {
+		return everyItem.format(sublists);
+	}
+}
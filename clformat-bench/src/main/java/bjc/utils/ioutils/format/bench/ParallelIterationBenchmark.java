@@ -0,0 +1,101 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures ~:{ over a large list of sublists, formatted in order and in
+ * parallel on pools of different sizes.
+ *
+ * The parallel runs should get faster as the pool grows, up to the number of
+ * cores available.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelIterationBenchmark {
+	private static final String BODY = "~:{~A: ~:D ~[none~;one~:;many~] ~@R~1%~}";
+
+	/**
+	 * The number of sublists.
+	 */
+	@Param({ "10000", "200000" })
+	public int rows;
+
+	/**
+	 * The number of threads in the pool for the parallel format.
+	 */
+	@Param({ "2", "4", "8" })
+	public int threads;
+
+	private ForkJoinPool pool;
+
+	private CLString sequential;
+	private CLString parallel;
+
+	private List<Object> sublists;
+
+	/**
+	 * Compile the format strings, and build the sublists.
+	 */
+	@Setup
+	public void setup() {
+		pool = new ForkJoinPool(threads);
+
+		CLFormatter parFmt = new CLFormatter();
+		parFmt.setParallelIteration(1000, pool);
+
+		sequential = new CLFormatter().compile(BODY);
+		parallel   = parFmt.compile(BODY);
+
+		sublists = new ArrayList<>(rows);
+
+		for (int i = 0; i < rows; i++) {
+			sublists.add(Arrays.asList("row " + i, i * 37, i % 3, 1 + (i % 3999)));
+		}
+	}
+
+	/**
+	 * Shut down the pool.
+	 */
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Format the sublists in order.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String sequential() throws IOException {
+		return sequential.format(sublists);
+	}
+
+	/**
+	 * Format the sublists in parallel.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String parallel() throws IOException {
+		return parallel.format(sublists);
+	}
+}
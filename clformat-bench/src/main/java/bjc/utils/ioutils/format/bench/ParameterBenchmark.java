@@ -0,0 +1,115 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures the per-directive cost of directives with literal prefix
+ * parameters.
+ *
+ * Running this against a build from before literal parameters were pre-parsed
+ * gives the before/after comparison for that change.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterBenchmark {
+	private CLString aesthetic;
+	private CLString decimal;
+	private CLString radix;
+	private CLString tabulate;
+	private CLString iteration;
+
+	private List<Object> itrList;
+
+	/**
+	 * Compile all of the format strings.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		aesthetic = fmt.compile("~10,2,1,'*A");
+		decimal   = fmt.compile("~8,'0D");
+		radix     = fmt.compile("~16,8,'0R");
+		tabulate  = fmt.compile("~20,1T|");
+		iteration = fmt.compile("~3{~A~}");
+
+		itrList = Arrays.asList(1, 2, 3, 4, 5);
+	}
+
+	/**
+	 * Padded A directive.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String aesthetic() throws IOException {
+		return aesthetic.format("foo");
+	}
+
+	/**
+	 * Padded D directive.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String decimal() throws IOException {
+		return decimal.format(1234);
+	}
+
+	/**
+	 * Padded R directive.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String radix() throws IOException {
+		return radix.format(0xBEEF);
+	}
+
+	/**
+	 * T directive.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String tabulate() throws IOException {
+		return tabulate.format();
+	}
+
+	/**
+	 * Bounded iteration.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String iteration() throws IOException {
+		return iteration.format(itrList);
+	}
+}
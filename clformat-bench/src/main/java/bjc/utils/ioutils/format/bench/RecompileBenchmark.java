@@ -0,0 +1,74 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures compiling a large (around 5KB) format string again after a one
+ * character edit, from scratch and with {@link CLFormatter#recompile}.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecompileBenchmark {
+	private static final String UNIT
+			= "Item ~A: ~8,'0D (~:D) ~{~A~^, ~} ~@R ~:(~A~) ~#[ none~; one~:; many~] costs ~`D~2%";
+
+	private CLFormatter fmt;
+
+	private String template;
+	private String edited;
+
+	private CLString compiled;
+
+	// Where the edit is
+	private int offset;
+
+	/**
+	 * Build and compile the template, and pick somewhere in the middle of it
+	 * to edit.
+	 */
+	@Setup
+	public void setup() {
+		fmt = new CLFormatter();
+
+		StringBuilder sb = new StringBuilder();
+
+		while (sb.length() < 5 * 1024) sb.append(UNIT);
+
+		template = sb.toString();
+		compiled = fmt.compile(template);
+
+		// Change the 'I' of an "Item" in the middle
+		offset = template.indexOf("Item", template.length() / 2);
+		edited = template.substring(0, offset) + "i" + template.substring(offset + 1);
+	}
+
+	/**
+	 * Compile the edited template from scratch.
+	 *
+	 * @return The compiled template.
+	 */
+	@Benchmark
+	public CLString compile() {
+		return fmt.compile(edited);
+	}
+
+	/**
+	 * Compile the edited template from the unedited one.
+	 *
+	 * @return The compiled template.
+	 */
+	@Benchmark
+	public CLString recompile() {
+		return fmt.recompile(compiled, template, offset, 1, "i");
+	}
+}
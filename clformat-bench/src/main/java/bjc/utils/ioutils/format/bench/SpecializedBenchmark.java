@@ -0,0 +1,108 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Compares interpreted format strings against ones specialized into generated
+ * code with {@link CLString#specialize()}.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpecializedBenchmark {
+	// Mostly literal text, with a few simple directives
+	private static final String LITERAL_HEAVY
+			= "Dear ~A,~2%Your order #~D has shipped.~&It contains ~D item(s),"
+			+ " and should arrive within ~D days.~2%Thanks,~&~A~&";
+
+	// A mix of most of the common directives
+	private static final String MIXED
+			= "~A: ~{~A~^, ~} ~8,'0D ~:D ~@R ~:@(~A~) ~[none~;one~:;many~]";
+
+	private CLString literalInterp;
+	private CLString literalSpec;
+
+	private CLString mixedInterp;
+	private CLString mixedSpec;
+
+	private List<Object> itrList;
+
+	/**
+	 * Compile all of the format strings.
+	 */
+	@Setup
+	public void setup() {
+		CLFormatter fmt = new CLFormatter();
+
+		literalInterp = fmt.compile(LITERAL_HEAVY);
+		literalSpec   = literalInterp.specialize();
+
+		mixedInterp = fmt.compile(MIXED);
+		mixedSpec   = mixedInterp.specialize();
+
+		itrList = Arrays.asList("foo", "bar", "baz");
+	}
+
+	/**
+	 * Literal-heavy string, interpreted.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String literalInterpreted() throws IOException {
+		return literalInterp.format("Customer", 12345, 3, 5, "The Shop");
+	}
+
+	/**
+	 * Literal-heavy string, specialized.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String literalSpecialized() throws IOException {
+		return literalSpec.format("Customer", 12345, 3, 5, "The Shop");
+	}
+
+	/**
+	 * Mixed string, interpreted.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String mixedInterpreted() throws IOException {
+		return mixedInterp.format("items", itrList, 1234, 1234567, 1999, "loud", 2);
+	}
+
+	/**
+	 * Mixed string, specialized.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String mixedSpecialized() throws IOException {
+		return mixedSpec.format("items", itrList, 1234, 1234567, 1999, "loud", 2);
+	}
+}
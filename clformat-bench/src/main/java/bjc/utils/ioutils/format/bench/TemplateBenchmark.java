@@ -0,0 +1,162 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bjc.utils.ioutils.SimpleProperties;
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures each stage of handling the templates from
+ * example-format-strings.sprop, from splitting them into decrees to
+ * formatting them.
+ *
+ * Run with -prof gc to see how much each stage allocates.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+	/**
+	 * The name of the template to use.
+	 */
+	@Param({ "dumpHexOutput", "englishList", "abbrevList" })
+	public String template;
+
+	private String format;
+
+	private Object[] args;
+
+	// Compiles the format every time it is used
+	private CLFormatter uncached;
+	// Compiles the format once, and keeps it in the cache
+	private CLFormatter cached;
+
+	private CLString compiled;
+
+	/**
+	 * Load the template, and build the arguments for it.
+	 *
+	 * @throws IOException
+	 *                     If the templates can't be loaded.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		SimpleProperties props = new SimpleProperties();
+
+		try (InputStream strim
+				= TemplateBenchmark.class.getResourceAsStream("/example-format-strings.sprop")) {
+			if (strim == null) throw new FileNotFoundException("example-format-strings.sprop");
+
+			props.loadFrom(strim, false);
+		}
+
+		format = props.get(template);
+		if (format == null) throw new IllegalArgumentException("No template named " + template);
+
+		if (template.equals("dumpHexOutput")) args = new Object[] { hexRows() };
+		else                                   args = new Object[] { "apple", "banana", "cherry", "damson", "elderberry" };
+
+		uncached = new CLFormatter();
+		uncached.getFormatCache().setEnabled(false);
+
+		cached = new CLFormatter();
+
+		compiled = cached.compile(format);
+	}
+
+	// Rows for dumpHexOutput: address, bytes, padding count and characters
+	private static List<Object> hexRows() {
+		byte[] data = ("The quick brown fox jumps over the lazy dog, "
+				+ "and then does it all over again.").getBytes();
+
+		List<Object> rows = new ArrayList<>();
+
+		for (int off = 0; off < data.length; off += 16) {
+			List<Object> bytes = new ArrayList<>();
+			List<Object> chars = new ArrayList<>();
+
+			int end = Math.min(off + 16, data.length);
+
+			for (int i = off; i < end; i++) {
+				bytes.add((int) data[i]);
+				chars.add((char) data[i]);
+			}
+
+			rows.add(Arrays.asList(off, bytes, 16 - (end - off), chars));
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Split the template into decrees.
+	 *
+	 * @param bh
+	 *           The blackhole to consume decrees with.
+	 */
+	@Benchmark
+	public void tokenize(Blackhole bh) {
+		CLTokenizer tokenzer = new CLTokenizer(format);
+
+		while (tokenzer.hasNext()) bh.consume(tokenzer.next());
+	}
+
+	/**
+	 * Compile the template.
+	 *
+	 * @return The compiled template.
+	 */
+	@Benchmark
+	public CLString compile() {
+		return uncached.compile(format);
+	}
+
+	/**
+	 * Format the template with formatString, compiling it every time.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String formatStringUncached() throws IOException {
+		return uncached.formatString(format, args);
+	}
+
+	/**
+	 * Format the template with formatString, which gets it from the cache.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String formatString() throws IOException {
+		return cached.formatString(format, args);
+	}
+
+	/**
+	 * Format the template after compiling it ahead of time.
+	 *
+	 * @return The formatted string.
+	 *
+	 * @throws IOException
+	 *                     Never.
+	 */
+	@Benchmark
+	public String precompiled() throws IOException {
+		return compiled.format(args);
+	}
+}
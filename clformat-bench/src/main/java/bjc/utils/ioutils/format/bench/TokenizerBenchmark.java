@@ -0,0 +1,66 @@
+package bjc.utils.ioutils.format.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * Measures splitting a large (around 5KB) format string into decrees, and
+ * compiling it.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+	private static final String UNIT
+			= "Item ~A: ~8,'0D (~:D) ~{~A~^, ~} ~@R ~:(~A~) ~#[ none~; one~:; many~] costs ~`D~2%";
+
+	private CLFormatter fmt;
+
+	private String template;
+
+	/**
+	 * Build the template.
+	 */
+	@Setup
+	public void setup() {
+		fmt = new CLFormatter();
+
+		StringBuilder sb = new StringBuilder();
+
+		while (sb.length() < 5 * 1024) sb.append(UNIT);
+
+		template = sb.toString();
+	}
+
+	/**
+	 * Split the template into decrees.
+	 *
+	 * @param bh
+	 *           The blackhole to consume decrees with.
+	 */
+	@Benchmark
+	public void tokenize(Blackhole bh) {
+		CLTokenizer tokenzer = new CLTokenizer(template);
+
+		while (tokenzer.hasNext()) bh.consume(tokenzer.next());
+	}
+
+	/**
+	 * Compile the template.
+	 *
+	 * @return The compiled template.
+	 */
+	@Benchmark
+	public CLString compile() {
+		return fmt.compile(template);
+	}
+}
@@ -0,0 +1,118 @@
+package bjc.utils.parserutils.splitter.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import bjc.funcdata.ListEx;
+import bjc.utils.parserutils.splitter.*;
+
+/**
+ * Measures splitting a large string with a configurable splitter that has 200
+ * literal delimiters, using the regular expression it compiles to and using
+ * the trie it compiles to.
+ *
+ * @author Ben Culkin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitterBenchmark {
+	private static final String[] OPERATORS = {
+			"+", "-", "*", "/", "%", "=", "==", "!=", "<", ">", "<=", ">=", "<<", ">>",
+			">>>", "+=", "-=", "*=", "/=", "%=", "<<=", ">>=", ">>>=", "&", "|", "^",
+			"&&", "||", "!", "~", "?", ":", "::", ";", ",", ".", "->", "=>", "(", ")",
+			"[", "]", "{", "}", "@", "#", "&=", "|=", "^=", "..."
+	};
+
+	/**
+	 * The length of the string to split, in characters.
+	 */
+	@Param({ "100000" })
+	public int length;
+
+	private ConfigurableTokenSplitter literal;
+	private SimpleTokenSplitter regex;
+
+	private String input;
+
+	/**
+	 * Build the splitters, and the string to split.
+	 */
+	@Setup
+	public void setup() {
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < 145; i++) words.add("kw" + i);
+
+		// 50 operators, 145 keywords and 5 kinds of whitespace
+		ConfigurableTokenSplitter.Builder builder
+				= new ConfigurableTokenSplitter.Builder(true);
+
+		builder.multiple(" ", "\t", "\n", "\r", "\f");
+		builder.simple(OPERATORS);
+		builder.simple(words.toArray(new String[0]));
+
+		literal = builder.build();
+		regex   = new SimpleTokenSplitter(literal.getPattern(), true);
+
+		if (!literal.isLiteral()) {
+			throw new IllegalStateException("Splitter didn't compile to a trie");
+		}
+
+		Random rng = new Random(200);
+
+		StringBuilder sb = new StringBuilder(length + 16);
+		while (sb.length() < length) {
+			switch (rng.nextInt(4)) {
+			case 0:
+				sb.append(OPERATORS[rng.nextInt(OPERATORS.length)]);
+				break;
+			case 1:
+				sb.append(words.get(rng.nextInt(words.size())));
+				break;
+			case 2:
+				sb.append(' ');
+				break;
+			default:
+				sb.append("ident").append(rng.nextInt(1000));
+				break;
+			}
+		}
+
+		input = sb.toString();
+	}
+
+	/**
+	 * Split with the regular expression.
+	 *
+	 * @return The tokens.
+	 */
+	@Benchmark
+	public ListEx<String> regexSplit() {
+		return regex.split(input);
+	}
+
+	/**
+	 * Split with the trie.
+	 *
+	 * @return The tokens.
+	 */
+	@Benchmark
+	public ListEx<String> trieSplit() {
+		return literal.split(input);
+	}
+
+	/**
+	 * Split into spans with the trie.
+	 *
+	 * @return The spans of the tokens.
+	 */
+	@Benchmark
+	public TokenSpans trieSpans() {
+		return literal.splitSpans(input);
+	}
+}
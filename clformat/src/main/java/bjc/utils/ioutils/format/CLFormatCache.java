@@ -0,0 +1,296 @@
+package bjc.utils.ioutils.format;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A bounded cache mapping format strings to their compiled {@link CLString}s.
+ *
+ * This is what lets {@link CLFormatter#formatString(String, Object...)} and
+ * friends skip tokenizing and compiling format strings they've already seen.
+ *
+ * All of the operations on this cache are thread-safe.
+ *
+ * @author Ben Culkin
+ */
+public class CLFormatCache {
+	/**
+	 * The default number of compiled strings to keep around.
+	 */
+	public static final int DEFAULT_SIZE = 256;
+
+	/**
+	 * The ways that entries can be picked for eviction once the cache is full.
+	 *
+	 * @author Ben Culkin
+	 */
+	public static enum Eviction {
+		/**
+		 * Evict the entry that was used least recently.
+		 */
+		LRU,
+		/**
+		 * Evict the entry that was added to the cache first, regardless of how
+		 * often it has been used since.
+		 */
+		SIZE
+	}
+
+	// The compiled strings, with the eviction order baked in.
+	private Map<String, CLString> entries;
+
+	private Eviction eviction;
+	private int      maxSize;
+
+	private boolean enabled;
+
+	// Statistics for the cache
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Create a new LRU cache of the default size.
+	 */
+	public CLFormatCache() {
+		this(DEFAULT_SIZE, Eviction.LRU);
+	}
+
+	/**
+	 * Create a new format cache.
+	 *
+	 * @param maxSize
+	 *                 The maximum number of compiled strings to keep.
+	 *
+	 * @param eviction
+	 *                 The policy to use for evicting entries once the cache is
+	 *                 full.
+	 */
+	public CLFormatCache(int maxSize, Eviction eviction) {
+		if (maxSize < 1) {
+			String msg = String.format("Cache size must be positive (was %d)", maxSize);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.maxSize  = maxSize;
+		this.eviction = eviction;
+
+		this.enabled = true;
+
+		this.entries = createEntries();
+	}
+
+	// Create the map that backs the cache
+	private Map<String, CLString> createEntries() {
+		boolean accessOrder = (eviction == Eviction.LRU);
+
+		return new LinkedHashMap<>(16, 0.75f, accessOrder) {
+			private static final long serialVersionUID = 6183541012716407536L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CLString> eldest) {
+				if (size() > maxSize) {
+					evictions += 1;
+
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the compiled form of a format string, compiling it if it isn't already
+	 * in the cache.
+	 *
+	 * If the cache is disabled, this always compiles the string.
+	 *
+	 * @param format
+	 *                 The format string to get the compiled version of.
+	 *
+	 * @param compiler
+	 *                 The function to use to compile the string.
+	 *
+	 * @return The compiled version of the format string.
+	 */
+	public CLString get(String format, Function<String, CLString> compiler) {
+		synchronized (this) {
+			if (!enabled) return compiler.apply(format);
+
+			CLString compiled = entries.get(format);
+
+			if (compiled != null) {
+				hits += 1;
+
+				return compiled;
+			}
+
+			misses += 1;
+		}
+
+		// Compile outside of the lock, so a big string doesn't stall everyone
+		// else; if two threads race to compile the same string, the first one
+		// to finish wins.
+		CLString compiled = compiler.apply(format);
+
+		synchronized (this) {
+			if (!enabled) return compiled;
+
+			CLString existing = entries.putIfAbsent(format, compiled);
+
+			if (existing != null) return existing;
+			else                  return compiled;
+		}
+	}
+
+	/**
+	 * Remove every entry from the cache.
+	 *
+	 * The statistics for the cache are left alone.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Reset the hit/miss/eviction counts for this cache.
+	 */
+	public synchronized void resetStats() {
+		hits      = 0;
+		misses    = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Check whether this cache is enabled.
+	 *
+	 * @return Whether this cache is enabled.
+	 */
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turn this cache on or off.
+	 *
+	 * Turning the cache off also empties it.
+	 *
+	 * @param enabled
+	 *                Whether or not the cache should be used.
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+
+		if (!enabled) entries.clear();
+	}
+
+	/**
+	 * Get the eviction policy for this cache.
+	 *
+	 * @return The eviction policy for this cache.
+	 */
+	public synchronized Eviction getEviction() {
+		return eviction;
+	}
+
+	/**
+	 * Set the eviction policy for this cache.
+	 *
+	 * Changing the policy keeps the current entries, but forgets how recently
+	 * they were used.
+	 *
+	 * @param eviction
+	 *                 The new eviction policy.
+	 */
+	public synchronized void setEviction(Eviction eviction) {
+		if (this.eviction == eviction) return;
+
+		this.eviction = eviction;
+
+		Map<String, CLString> oldEntries = entries;
+
+		entries = createEntries();
+		entries.putAll(oldEntries);
+	}
+
+	/**
+	 * Get the maximum number of entries for this cache.
+	 *
+	 * @return The maximum number of entries for this cache.
+	 */
+	public synchronized int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Set the maximum number of entries for this cache.
+	 *
+	 * If the cache currently has more entries than that, the extra ones are
+	 * evicted.
+	 *
+	 * @param maxSize
+	 *                The new maximum number of entries.
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			String msg = String.format("Cache size must be positive (was %d)", maxSize);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.maxSize = maxSize;
+
+		Iterator<String> keys = entries.keySet().iterator();
+		while (entries.size() > maxSize && keys.hasNext()) {
+			keys.next();
+			keys.remove();
+
+			evictions += 1;
+		}
+	}
+
+	/**
+	 * Get the number of entries currently in the cache.
+	 *
+	 * @return The number of entries in the cache.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get the number of lookups that found a compiled string.
+	 *
+	 * @return The number of cache hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of lookups that had to compile a string.
+	 *
+	 * @return The number of cache misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Get the number of entries that have been evicted from the cache.
+	 *
+	 * @return The number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"CLFormatCache [eviction=%s, maxSize=%d, size=%d, enabled=%s, hits=%d, misses=%d, evictions=%d]",
+				eviction, maxSize, entries.size(), enabled, hits, misses, evictions);
+	}
+}
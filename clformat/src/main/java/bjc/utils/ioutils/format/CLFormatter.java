@@ -1,7 +1,9 @@
 package bjc.utils.ioutils.format;
 
 import java.io.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import bjc.esodata.*;
 import bjc.utils.ioutils.ReportWriter;
@@ -21,16 +23,36 @@ import static bjc.utils.funcutils.IteratorUtils.I;
  * @author Ben Culkin
  */
 public class CLFormatter {
-	/**
-	 * Set this to true to enable additional debug output.
-	 */
-	public boolean DEBUG;
+	// Whether to enable additional debug output.
+	private volatile boolean debug;
 
 	// Built-in formatting directives
-	private static Map<String, Directive> builtinDirectives;
+	private static final Map<String, Directive> builtinDirectives;
 
 	// Extra directives specific to this formatter
-	private Map<String, Directive> extraDirectives;
+	private final Map<String, Directive> extraDirectives;
+
+	// All of the directives this formatter knows, built-in and extra
+	private volatile DirectiveTable directives;
+
+	// The most format strings taken from arguments that are kept compiled
+	private static final int BODY_CACHE_SIZE = 32;
+
+	// Compiled versions of strings passed to formatString
+	private final CLFormatCache formatCache;
+	// Compiled versions of format strings taken from arguments, for ~{ and ~?
+	private final CLFormatCache bodyCache;
+
+	// Whether this formatter can no longer be changed
+	private final boolean isFrozen;
+
+	// The locale to format things for, or null to use the default
+	private volatile Locale locale;
+
+	// The fewest sublists ~:{ formats in parallel, or 0 to never do so
+	private volatile int parallelThreshold;
+	// The pool to run parallel iterations on, or null to use the common pool
+	private volatile ForkJoinPool parallelPool;
 
 	static {
 		// Set up the built-in directives
@@ -78,6 +100,348 @@ public class CLFormatter {
 	 */
 	public CLFormatter() {
 		extraDirectives = new HashMap<>();
+		directives      = new DirectiveTable(builtinDirectives, extraDirectives);
+
+		formatCache = new CLFormatCache();
+		bodyCache   = new CLFormatCache(BODY_CACHE_SIZE, CLFormatCache.Eviction.LRU);
+
+		isFrozen = false;
+	}
+
+	// Create a frozen copy of a formatter
+	private CLFormatter(CLFormatter source) {
+		extraDirectives = Collections.unmodifiableMap(
+				new HashMap<>(source.extraDirectives));
+		directives      = source.directives;
+
+		CLFormatCache sourceCache = source.formatCache;
+
+		formatCache = new CLFormatCache(sourceCache.getMaxSize(),
+				sourceCache.getEviction());
+		formatCache.setEnabled(sourceCache.isEnabled());
+
+		CLFormatCache sourceBodies = source.bodyCache;
+
+		bodyCache = new CLFormatCache(sourceBodies.getMaxSize(),
+				sourceBodies.getEviction());
+		bodyCache.setEnabled(sourceBodies.isEnabled());
+
+		debug  = source.debug;
+		locale = source.locale;
+
+		parallelThreshold = source.parallelThreshold;
+		parallelPool      = source.parallelPool;
+
+		isFrozen = true;
+	}
+
+	/**
+	 * Get a frozen copy of this formatter.
+	 *
+	 * A frozen formatter has a fixed set of directives, and can't be changed
+	 * once it is created. Format strings compiled by a frozen formatter are
+	 * frozen themselves (see {@link CLString#isFrozen()}), and can be safely
+	 * shared between threads.
+	 *
+	 * @return A frozen copy of this formatter, or this formatter if it is
+	 *         already frozen.
+	 */
+	public CLFormatter freeze() {
+		if (isFrozen) return this;
+
+		return new CLFormatter(this);
+	}
+
+	/**
+	 * Check if this formatter is frozen.
+	 *
+	 * @return Whether or not this formatter is frozen.
+	 */
+	public boolean isFrozen() {
+		return isFrozen;
+	}
+
+	/**
+	 * Check if additional debug output is enabled.
+	 *
+	 * @return Whether additional debug output is enabled.
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Set whether additional debug output is enabled.
+	 *
+	 * @param debug
+	 *              Whether to enable additional debug output.
+	 *
+	 * @throws IllegalStateException
+	 *                               If this formatter is frozen.
+	 */
+	public void setDebug(boolean debug) {
+		checkNotFrozen();
+
+		this.debug = debug;
+	}
+
+	/**
+	 * Get the locale that locale-sensitive directives (such as ~`D) use.
+	 *
+	 * @return The locale for this formatter. Unless one has been set, this is
+	 *         the default locale for formatting.
+	 */
+	public Locale getLocale() {
+		Locale loc = locale;
+
+		if (loc == null) return Locale.getDefault(Locale.Category.FORMAT);
+		else             return loc;
+	}
+
+	/**
+	 * Set the locale that locale-sensitive directives (such as ~`D) use.
+	 *
+	 * The locale is picked when a string is compiled, so this clears the format
+	 * cache; strings that have already been compiled keep the locale they were
+	 * compiled with.
+	 *
+	 * @param locale
+	 *               The locale to use, or null to use the default locale for
+	 *               formatting.
+	 *
+	 * @throws IllegalStateException
+	 *                               If this formatter is frozen.
+	 */
+	public void setLocale(Locale locale) {
+		checkNotFrozen();
+
+		this.locale = locale;
+
+		formatCache.clear();
+		bodyCache.clear();
+	}
+
+	/**
+	 * Get the fewest sublists that ~:{ will format in parallel.
+	 *
+	 * @return The fewest sublists to format in parallel, or 0 if iterations
+	 *         are never formatted in parallel.
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Get the pool that parallel iterations run on.
+	 *
+	 * @return The pool for parallel iterations. Unless one has been set, this
+	 *         is the common pool.
+	 */
+	public ForkJoinPool getParallelPool() {
+		ForkJoinPool pool = parallelPool;
+
+		if (pool == null) return ForkJoinPool.commonPool();
+		else              return pool;
+	}
+
+	/**
+	 * Set when ~:{ formats its sublists in parallel, using the common pool.
+	 *
+	 * @param threshold
+	 *                  The fewest sublists to format in parallel, or 0 to
+	 *                  never format iterations in parallel.
+	 *
+	 * @throws IllegalArgumentException
+	 *                                  If the threshold is negative.
+	 *
+	 * @throws IllegalStateException
+	 *                                  If this formatter is frozen.
+	 *
+	 * @see #setParallelIteration(int, ForkJoinPool)
+	 */
+	public void setParallelIteration(int threshold) {
+		setParallelIteration(threshold, null);
+	}
+
+	/**
+	 * Set when ~:{ formats its sublists in parallel.
+	 *
+	 * Only iterations whose bodies are known not to depend on where they are in
+	 * the output are formatted in parallel; bodies that use ~T, ~&amp;, ~I or
+	 * ~?, or directives this formatter doesn't know about, are always
+	 * formatted in order. See {@link Edict#isPositionIndependent()}.
+	 *
+	 * The sublists are split up into chunks, and each chunk is formatted into
+	 * its own buffer. The buffers are then written out in order, so the output
+	 * is the same as it would be if the sublists were formatted one at a time.
+	 *
+	 * Whether an iteration runs in parallel is picked when a string is
+	 * compiled, so this clears the format cache; strings that have already been
+	 * compiled keep the setting they were compiled with.
+	 *
+	 * @param threshold
+	 *                  The fewest sublists to format in parallel, or 0 to
+	 *                  never format iterations in parallel.
+	 *
+	 * @param pool
+	 *                  The pool to run parallel iterations on, or null to use
+	 *                  the common pool.
+	 *
+	 * @throws IllegalArgumentException
+	 *                                  If the threshold is negative.
+	 *
+	 * @throws IllegalStateException
+	 *                                  If this formatter is frozen.
+	 */
+	public void setParallelIteration(int threshold, ForkJoinPool pool) {
+		checkNotFrozen();
+
+		if (threshold < 0) {
+			String msg = String.format("Parallel threshold must not be negative (was %d)",
+					threshold);
+			throw new IllegalArgumentException(msg);
+		}
+
+		parallelThreshold = threshold;
+		parallelPool      = pool;
+
+		formatCache.clear();
+		bodyCache.clear();
+	}
+
+	/**
+	 * Add a directive to this formatter, or replace one it already has.
+	 *
+	 * Directives added this way take the place of any built-in directive with
+	 * the same name. Format strings compiled before the change keep the
+	 * directives they were compiled with, but the format cache is cleared, so
+	 * that strings formatted from then on use the new directive.
+	 *
+	 * @param name
+	 *                  The name of the directive; what comes after the ~ and
+	 *                  any parameters and modifiers.
+	 * @param directive
+	 *                  The directive to use for that name.
+	 *
+	 * @throws IllegalArgumentException
+	 *                                  If the name is empty, or either argument
+	 *                                  is null.
+	 * @throws IllegalStateException
+	 *                                  If this formatter is frozen.
+	 */
+	public synchronized void registerDirective(String name, Directive directive) {
+		checkNotFrozen();
+
+		if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("Directive name must not be empty");
+		} else if (directive == null) {
+			throw new IllegalArgumentException("Directive must not be null");
+		}
+
+		extraDirectives.put(name, directive);
+
+		directivesChanged();
+	}
+
+	/**
+	 * Remove a directive added with
+	 * {@link #registerDirective(String, Directive)}.
+	 *
+	 * If the directive replaced a built-in one, the built-in one is used
+	 * again. The format cache is cleared if anything was removed.
+	 *
+	 * @param name
+	 *             The name of the directive to remove.
+	 *
+	 * @return Whether there was a directive to remove.
+	 *
+	 * @throws IllegalStateException
+	 *                               If this formatter is frozen.
+	 */
+	public synchronized boolean unregisterDirective(String name) {
+		checkNotFrozen();
+
+		if (extraDirectives.remove(name) == null) return false;
+
+		directivesChanged();
+
+		return true;
+	}
+
+	// Rebuild the directive table, and forget strings compiled with the old one
+	private void directivesChanged() {
+		directives = new DirectiveTable(builtinDirectives, extraDirectives);
+
+		formatCache.clear();
+		bodyCache.clear();
+	}
+
+	// Find the directive a decree names, or null if there isn't one
+	private Directive resolve(SimpleDecree decr, DirectiveTable table) {
+		// Use what the tokenizer found, if it used the same directives
+		if (decr.resolvedIn == table) return decr.directive;
+
+		return table.get(decr.name);
+	}
+
+	// Complain if someone tries to change a frozen formatter
+	private void checkNotFrozen() {
+		if (isFrozen) {
+			throw new IllegalStateException("Frozen formatters can't be changed");
+		}
+	}
+
+	/**
+	 * Get the cache this formatter uses for compiled format strings.
+	 *
+	 * This can be used to configure or disable the cache, as well as to check
+	 * how well it is doing.
+	 *
+	 * @return The format cache for this formatter.
+	 */
+	public CLFormatCache getFormatCache() {
+		return formatCache;
+	}
+
+	/**
+	 * Get the compiled form of a format string, using the format cache.
+	 *
+	 * @param format
+	 *               The format string to compile.
+	 *
+	 * @return The compiled form of the format string.
+	 */
+	public CLString compileCached(String format) {
+		return formatCache.get(format, this::compile);
+	}
+
+	/**
+	 * Get the cache this formatter uses for format strings taken from
+	 * arguments.
+	 *
+	 * See {@link #compileBody(String)}.
+	 *
+	 * @return The body cache for this formatter.
+	 */
+	public CLFormatCache getBodyCache() {
+		return bodyCache;
+	}
+
+	/**
+	 * Get the compiled form of a format string that was taken from an
+	 * argument, such as the body of a ~{ or ~? directive.
+	 *
+	 * These use their own small cache, instead of the format cache, so that
+	 * strings that come from arguments can't push the ones passed to
+	 * formatString out of it.
+	 *
+	 * @param format
+	 *               The format string to compile.
+	 *
+	 * @return The compiled form of the format string.
+	 */
+	public CLString compileBody(String format) {
+		return bodyCache.get(format, this::compile);
 	}
 
 	/*
@@ -130,6 +494,9 @@ public class CLFormatter {
 	/**
 	 * Format a string in the style of CL's FORMAT.
 	 *
+	 * The compiled form of the format string is kept in the format cache, so
+	 * formatting the same string again doesn't need to recompile it.
+	 *
 	 * @param format
 	 *               The format string to use.
 	 *
@@ -166,9 +533,7 @@ public class CLFormatter {
 		/* Put the parameters where we can easily handle them. */
 		Tape<Object> tParams = new SingleTape<>(params);
 
-		doFormatString(format, rw, tParams, true);
-
-		return rw.toString();
+		return compileCached(format).format(rw, tParams);
 	}
 
 	/**
@@ -194,7 +559,7 @@ public class CLFormatter {
 			 */
 			Tape<Object> tParams = new SingleTape<>(params);
 
-			doFormatString(format, rw, tParams, true);
+			compileCached(format).formatInto(new FormatContext(rw, tParams));
 		}
 	}
 
@@ -218,7 +583,7 @@ public class CLFormatter {
 		/* Put the parameters where we can easily handle them. */
 		Tape<Object> tParams = new SingleTape<>(params);
 
-		doFormatString(format, target, tParams, true);
+		compileCached(format).formatInto(new FormatContext(target, tParams));
 	}
 
 	/**
@@ -243,7 +608,31 @@ public class CLFormatter {
 		/* Put the parameters where we can easily handle them. */
 		Tape<Object> tParams = new SingleTape<>(params);
 
-		doFormatString(format, rw, tParams, true);
+		compileCached(format).formatInto(new FormatContext(rw, tParams));
+	}
+
+	/**
+	 * Format a string in the style of CL's FORMAT, sending the output to a
+	 * channel.
+	 *
+	 * The output is encoded as UTF-8 as it is produced, without ever being
+	 * turned into a string. The channel is not closed.
+	 *
+	 * @param target
+	 *               The channel to send output to.
+	 *
+	 * @param format
+	 *               The format string to use.
+	 *
+	 * @param params
+	 *               The parameters for the string.
+	 *
+	 * @throws IOException
+	 *                     If something I/O related goes wrong.
+	 */
+	public void formatString(WritableByteChannel target, String format,
+			Object... params) throws IOException {
+		compileCached(format).format(target, params);
 	}
 
 	/**
@@ -269,7 +658,7 @@ public class CLFormatter {
 	 */
 	public void doFormatString(String format, ReportWriter rw, Tape<Object> tParams,
 			boolean isToplevel) throws IOException {
-		CLTokenizer cltok = new CLTokenizer(format);
+		CLTokenizer cltok = new CLTokenizer(format, directives);
 
 		doFormatString(cltok, rw, tParams, isToplevel);
 	}
@@ -297,28 +686,26 @@ public class CLFormatter {
 	 */
 	public void doFormatString(CLTokenizer cltok, ReportWriter rw, Tape<Object> tParams,
 			boolean isToplevel) throws IOException {
+		DirectiveTable table = directives;
+
 		try {
 			while (cltok.hasNext()) {
 				SimpleDecree decr = cltok.next();
 
+				Directive dir;
+
 				if (decr.isLiteral) {
 					rw.write(decr.name);
 				} else if (decr.isUserCall) {
 					/*
 					 * @TODO implement user-called functions.
 					 */
-				} else if (extraDirectives.containsKey(decr.name)) {
+				} else if ((dir = resolve(decr, table)) != null) {
 					FormatParameters params
 							= new FormatParameters(rw, tParams.item(), decr,
 									tParams, cltok, this);
 
-					extraDirectives.get(decr.name).format(params);
-				} else if (builtinDirectives.containsKey(decr.name)) {
-					FormatParameters params
-							= new FormatParameters(rw, tParams.item(), decr,
-									tParams, cltok, this);
-
-					builtinDirectives.get(decr.name).format(params);
+					dir.format(params);
 				} else {
 					// All of these conditions are an error in some way
 					if (decr.name == null) decr.name = "<null>";
@@ -326,27 +713,27 @@ public class CLFormatter {
 					switch (decr.name) {
 					case "]":
 						throw new IllegalArgumentException(
-								"Found conditional-end outside of conditional.");
+								errorAt(decr, "Found conditional-end outside of conditional."));
 					case ";":
 						throw new IllegalArgumentException(
-								"Found seperator outside of block.");
+								errorAt(decr, "Found seperator outside of block."));
 					case "}":
 						throw new IllegalArgumentException(
-								"Found iteration-end outside of iteration");
+								errorAt(decr, "Found iteration-end outside of iteration"));
 					case ")":
 						throw new IllegalArgumentException(
-								"Case-conversion end outside of case conversion");
+								errorAt(decr, "Case-conversion end outside of case conversion"));
 					case "`]":
 						throw new IllegalArgumentException(
-								"Inflection-end outside of inflection");
+								errorAt(decr, "Inflection-end outside of inflection"));
 					case "<":
 					case ">":
 						throw new IllegalArgumentException(
-								"Inflection marker outside of inflection");
+								errorAt(decr, "Inflection marker outside of inflection"));
 					case "`<":
 					case "`>":
 						throw new IllegalArgumentException(
-								"Layout-control directives aren't implemented yet.");
+								errorAt(decr, "Layout-control directives aren't implemented yet."));
 					case "F":
 					case "E":
 					case "G":
@@ -357,7 +744,7 @@ public class CLFormatter {
 						 * implement floating point directives.
 						 */
 						throw new IllegalArgumentException(
-								"For now, floating point directives are implemented via the `D directive. Use that instead");
+								errorAt(decr, "For now, floating point directives are implemented via the `D directive. Use that instead"));
 					case "W":
 						/*
 						 * @TODO
@@ -366,10 +753,10 @@ public class CLFormatter {
 						 * instead of punting.
 						 */
 						throw new IllegalArgumentException(
-								"S and W aren't implemented. Use A instead");
+								errorAt(decr, "S and W aren't implemented. Use A instead"));
 					case "P":
 						throw new IllegalArgumentException(
-								"These directives aren't implemented yet");
+								errorAt(decr, "These directives aren't implemented yet"));
 					case "\n":
 						/*
 						 * Ignored newline.
@@ -378,7 +765,7 @@ public class CLFormatter {
 					default:
 						String msg
 								= String.format("Unknown format directive '%s'", decr.name);
-						throw new IllegalArgumentException(msg);
+						throw new IllegalArgumentException(errorAt(decr, msg));
 					}
 				}
 			}
@@ -390,17 +777,217 @@ public class CLFormatter {
 	/**
 	 * Compile a CLString from a string.
 	 *
+	 * If this formatter is frozen, so is the result.
+	 *
 	 * @param inp
 	 *            The string to compile.
 	 *
 	 * @return A CLString compiled from the input.
 	 */
 	public CLString compile(String inp) {
-		CLTokenizer tokenzer = new CLTokenizer(inp);
+		CLTokenizer tokenzer = new CLTokenizer(inp, directives);
+
+		List<Edict> edts = new ArrayList<>();
+		UnitList units   = new UnitList();
+
+		while (tokenzer.hasNext()) {
+			SimpleDecree decr = tokenzer.next();
+
+			units.add(decr.position.getLeft(), edts.size(), decr.isLiteral);
+
+			compileDecree(decr, tokenzer, edts);
+		}
+
+		return new CLString(edts, isFrozen, units.toMap(inp.length()));
+	}
+
+	/**
+	 * Compile a CLString from the text of one that has been edited.
+	 *
+	 * Only the top-level directives that the edit could have changed are
+	 * compiled again, along with the groups they start; everything else is
+	 * reused from the previous string. This gives the same result as
+	 * compiling the edited text from scratch.
+	 *
+	 * Tokenizing and compiling are only done for the part of the text the
+	 * edit touches, but this still takes time in proportion to the size of
+	 * the text: the edited text is built as a new string, and the reused
+	 * edicts and the map of where they came from are copied into the new
+	 * CLString. Those are plain copies, so this is still much cheaper than
+	 * compiling the whole text again.
+	 *
+	 * Edits to the inside of a group (such as the body of a ~{) compile the
+	 * whole group again, so this works best on strings with a lot of
+	 * top-level directives.
+	 *
+	 * @param previous
+	 *                 The string compiled from the text before the edit, by
+	 *                 this formatter. If it wasn't compiled from text, the
+	 *                 edited text is compiled from scratch.
+	 * @param oldText
+	 *                 The text before the edit.
+	 * @param offset
+	 *                 Where the edit starts in the old text.
+	 * @param removed
+	 *                 The number of characters the edit removed.
+	 * @param inserted
+	 *                 The text the edit inserted.
+	 *
+	 * @return The edited text, compiled. If this formatter is frozen, so is
+	 *         the result.
+	 *
+	 * @throws IllegalArgumentException
+	 *                                  If the edit is outside of the text, if
+	 *                                  the old text isn't the one the previous
+	 *                                  string was compiled from, or if the
+	 *                                  edited text doesn't compile.
+	 */
+	public CLString recompile(CLString previous, String oldText, int offset, int removed,
+			String inserted) {
+		if (offset < 0 || removed < 0 || offset + removed > oldText.length()) {
+			String msg = String.format(
+					"Edit removing %d characters at %d is outside of text of length %d",
+					removed, offset, oldText.length());
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		String newText = oldText.substring(0, offset) + inserted
+				+ oldText.substring(offset + removed);
+
+		CLString.SourceMap source = previous.getSource();
+
+		if (source == null) return compile(newText);
+
+		if (source.length != oldText.length()) {
+			String msg = String.format(
+					"Previous string was compiled from text of length %d, not %d",
+					source.length, oldText.length());
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		List<Edict> oldEdicts = previous.getEdicts();
+
+		int delta      = inserted.length() - removed;
+		int oldEditEnd = offset + removed;
+		int newEditEnd = offset + inserted.length();
+
+		/*
+		 * Start with the unit that holds the character before the edit, since
+		 * the edit could extend it. If that is a directive found at the end of
+		 * a literal, start at the literal, since the edit could stop the
+		 * directive from matching and leave its text in the literal.
+		 */
+		int first = unitAt(source, Math.max(offset - 1, 0));
+		if (first > 0 && !source.isLiteral[first] && source.isLiteral[first - 1]) {
+			first -= 1;
+		}
+
+		// The first unit that the edit can't have changed the text of
+		int after = unitAt(source, oldEditEnd);
+		if (after < source.size() && source.starts[after] < oldEditEnd) after += 1;
+
+		List<Edict> edts = new ArrayList<>(oldEdicts.subList(0, source.firstEdict[first]));
+		UnitList units   = new UnitList();
+
+		for (int i = 0; i < first; i++) {
+			units.add(source.starts[i], source.firstEdict[i], source.isLiteral[i]);
+		}
+
+		CLTokenizer tokenzer = new CLTokenizer(newText, source.starts[first], directives);
+
+		while (tokenzer.hasNext()) {
+			SimpleDecree decr = tokenzer.next();
+
+			int start = decr.position.getLeft();
+
+			/*
+			 * Once a top-level decree starts past the edit, where an old one
+			 * started, the text from there on is the same as before, and so are
+			 * the decrees and edicts it turns into.
+			 */
+			if (start >= newEditEnd) {
+				int reuse = Arrays.binarySearch(source.starts, after, source.size(),
+						start - delta);
+
+				if (reuse >= 0) {
+					int edictShift = edts.size() - source.firstEdict[reuse];
+
+					for (int i = reuse; i < source.size(); i++) {
+						units.add(source.starts[i] + delta, source.firstEdict[i] + edictShift,
+								source.isLiteral[i]);
+					}
+
+					edts.addAll(oldEdicts.subList(source.firstEdict[reuse], oldEdicts.size()));
 
-		List<Edict> edts = compile(tokenzer);
+					break;
+				}
+			}
 
-		return new CLString(edts);
+			units.add(start, edts.size(), decr.isLiteral);
+
+			compileDecree(decr, tokenzer, edts);
+		}
+
+		return new CLString(edts, isFrozen, units.toMap(newText.length()));
+	}
+
+	// Find the last unit that starts at or before a position
+	private static int unitAt(CLString.SourceMap source, int pos) {
+		int idx = Arrays.binarySearch(source.starts, pos);
+
+		if (idx >= 0) return idx;
+
+		// The unit before where the position would be inserted
+		return Math.max(-idx - 2, 0);
+	}
+
+	/*
+	 * Collects the units of a string as it is compiled.
+	 */
+	private static final class UnitList {
+		private int[] starts       = new int[16];
+		private int[] firstEdict   = new int[16];
+		private boolean[] isLiteral = new boolean[16];
+
+		private int size;
+
+		void add(int start, int edict, boolean literal) {
+			if (size == starts.length) {
+				int cap = size * 2;
+
+				starts     = Arrays.copyOf(starts, cap);
+				firstEdict = Arrays.copyOf(firstEdict, cap);
+				isLiteral  = Arrays.copyOf(isLiteral, cap);
+			}
+
+			starts[size]     = start;
+			firstEdict[size] = edict;
+			isLiteral[size]  = literal;
+
+			size += 1;
+		}
+
+		CLString.SourceMap toMap(int length) {
+			return new CLString.SourceMap(length, Arrays.copyOf(starts, size),
+					Arrays.copyOf(firstEdict, size), Arrays.copyOf(isLiteral, size));
+		}
+	}
+
+	/**
+	 * Compile a frozen CLString from a string.
+	 *
+	 * The result can be shared between threads, and formatted by all of them
+	 * at once.
+	 *
+	 * @param inp
+	 *            The string to compile.
+	 *
+	 * @return A frozen CLString compiled from the input.
+	 */
+	public CLString compileFrozen(String inp) {
+		return freeze().compile(inp);
 	}
 
 	/**
@@ -444,89 +1031,100 @@ public class CLFormatter {
 		List<Edict> result = new ArrayList<>();
 
 		while (cltok.hasNext()) {
-			SimpleDecree decr = cltok.next();
-			String nam = decr.name;
+			compileDecree(cltok.next(), cltok, result);
+		}
 
+		return result;
+	}
+
+	/*
+	 * Compile a single top-level decree, along with the rest of the group it
+	 * starts if it starts one, adding its edicts to a list.
+	 */
+	private void compileDecree(SimpleDecree decr, CLTokenizer cltok, List<Edict> result) {
+		String nam = decr.name;
+
+		Directive dir;
+
+		if (decr.isLiteral) {
+			result.add(new StringEdict(decr.name));
+		} else if (decr.isUserCall) {
+			/*
+			 * @TODO implement user-called functions.
+			 */
+			throw new IllegalArgumentException(
+					errorAt(decr, "User-called functions have not yet been implemented"));
+		} else if ((dir = resolve(decr, directives)) != null) {
 			CompileContext compCTX = new CompileContext(cltok, this, decr);
 
-			if (decr.isLiteral) {
-				result.add(new StringEdict(decr.name));
-			} else if (decr.isUserCall) {
+			result.add(dir.compile(compCTX));
+		} else {
+			// All of these conditions are an error in some way
+			if (nam == null) nam = "<null>";
+
+			switch (nam) {
+			case "]":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Found conditional-end outside of conditional."));
+			case ";":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Found seperator outside of block."));
+			case "}":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Found iteration-end outside of iteration"));
+			case ")":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Case-conversion end outside of case conversion"));
+			case "`]":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Inflection-end outside of inflection"));
+			case "<":
+			case ">":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Inflection marker outside of inflection"));
+			case "`<":
+			case "`>":
+				throw new IllegalArgumentException(
+						errorAt(decr, "Layout-control directives aren't implemented yet."));
+			case "F":
+			case "E":
+			case "G":
+			case "$":
 				/*
-				 * @TODO implement user-called functions.
+				 * @TODO
+				 *
+				 * implement floating point directives.
 				 */
 				throw new IllegalArgumentException(
-						"User-called functions have not yet been implemented");
-			} else if (extraDirectives.containsKey(nam)) {
-				Edict edt = extraDirectives.get(nam).compile(compCTX);
-
-				result.add(edt);
-			} else if (builtinDirectives.containsKey(nam)) {
-				Edict edt = builtinDirectives.get(nam).compile(compCTX);
-
-				result.add(edt);
-			} else {
-				// All of these conditions are an error in some way
-				if (nam == null) nam = "<null>";
-	
-				switch (nam) {
-				case "]":
-					throw new IllegalArgumentException(
-							"Found conditional-end outside of conditional.");
-				case ";":
-					throw new IllegalArgumentException("Found seperator outside of block.");
-				case "}":
-					throw new IllegalArgumentException(
-							"Found iteration-end outside of iteration");
-				case ")":
-					throw new IllegalArgumentException(
-							"Case-conversion end outside of case conversion");
-				case "`]":
-					throw new IllegalArgumentException(
-							"Inflection-end outside of inflection");
-				case "<":
-				case ">":
-					throw new IllegalArgumentException(
-							"Inflection marker outside of inflection");
-				case "`<":
-				case "`>":
-					throw new IllegalArgumentException(
-							"Layout-control directives aren't implemented yet.");
-				case "F":
-				case "E":
-				case "G":
-				case "$":
-					/*
-					 * @TODO
-					 *
-					 * implement floating point directives.
-					 */
-					throw new IllegalArgumentException(
-							"Floating-point directives aren't implemented yet.");
-				case "W":
-					/*
-					 * @TODO
-					 *
-					 * figure out if we want to implement someting for these directives
-					 * instead of punting.
-					 */
-					throw new IllegalArgumentException(
-							"S and W aren't implemented. Use A instead");
-				case "P":
-					throw new IllegalArgumentException(
-							"These directives aren't implemented yet");
-				case "\n":
-					/*
-					 * Ignored newline.
-					 */
-					break;
-				default:
-					String msg = String.format("Unknown format directive '%s'", nam);
-					throw new IllegalArgumentException(msg);
-				}
+						errorAt(decr, "Floating-point directives aren't implemented yet."));
+			case "W":
+				/*
+				 * @TODO
+				 *
+				 * figure out if we want to implement someting for these directives
+				 * instead of punting.
+				 */
+				throw new IllegalArgumentException(
+						errorAt(decr, "S and W aren't implemented. Use A instead"));
+			case "P":
+				throw new IllegalArgumentException(
+						errorAt(decr, "These directives aren't implemented yet"));
+			case "\n":
+				/*
+				 * Ignored newline.
+				 */
+				break;
+			default:
+				String msg = String.format("Unknown format directive '%s'", nam);
+				throw new IllegalArgumentException(errorAt(decr, msg));
 			}
 		}
+	}
 
-		return result;
+	// Add where a decree came from to an error message about it
+	private static String errorAt(SimpleDecree decr, String msg) {
+		if (decr.position == null) return msg;
+
+		return String.format("%s (at position %d)", msg, decr.position.getLeft());
 	}
 }
@@ -12,6 +12,10 @@ import bjc.utils.parserutils.TokenUtils;
 /**
  * Represents a set of parameters to a CL format directive.
  *
+ * Directives map names onto the parameters while they are being compiled, so
+ * the methods that do that and look the names up are synchronized; that way,
+ * the same decrees can be compiled from more than one thread.
+ *
  * @author Benjamin Culkin
  */
 public class CLParameters {
@@ -22,6 +26,8 @@ public class CLParameters {
 
 	private CLValue[] params;
 
+	// These are only built once a parameter is looked up by name, since most
+	// parameters never are.
 	private Set<String> abbrevWords;
 	private AbbrevMap2  nameAbbrevs;
 
@@ -69,15 +75,12 @@ public class CLParameters {
 
 		this.namedParams = namedParams;
 		this.nameIndices = new HashMap<>();
-
-		abbrevWords = new HashSet<>();
-		nameAbbrevs = new AbbrevMap2();
-
-		refreshAbbrevs();
 	}
 
 	// Refresh the mappings that track abbreviations
 	private void refreshAbbrevs() {
+		if (nameAbbrevs == null) return;
+
 		// @NOTE 9/19/18 @Cleanup @Leak Ben Culkin
 		//
 		// This never clears abbrevWords or nameAbbrevs, which I'm fine
@@ -104,7 +107,7 @@ public class CLParameters {
 	 *             bound to index 0, and so forth. Pass an empty string to not bind
 	 *             a name to a particular index.
 	 */
-	public void mapIndices(String... opts) {
+	public synchronized void mapIndices(String... opts) {
 		for (int i = 0; i < opts.length; i++) {
 			String opt = opts[i];
 
@@ -123,7 +126,7 @@ public class CLParameters {
 	 * @param idx
 	 *            The index to map it to.
 	 */
-	public void mapIndex(String opt, int idx) {
+	public synchronized void mapIndex(String opt, int idx) {
 		mapIndex(opt, idx, true);
 	}
 
@@ -288,9 +291,16 @@ public class CLParameters {
 	 *
 	 * @return The value for that key, or null if none exists.
 	 */
-	public CLValue resolveKey(String key) {
+	public synchronized CLValue resolveKey(String key) {
 		String ucKey = key.toUpperCase();
 
+		if (nameAbbrevs == null) {
+			abbrevWords = new HashSet<>();
+			nameAbbrevs = new AbbrevMap2();
+
+			refreshAbbrevs();
+		}
+
 		Set<String> keys = nameAbbrevs.deabbrevAll(ucKey);
 
 		// We didn't find a parameter that could have been that. Create an appropriate
@@ -1,9 +1,12 @@
 package bjc.utils.ioutils.format;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 
 import bjc.esodata.*;
+import bjc.utils.ioutils.PageDecoration;
 import bjc.utils.ioutils.ReportWriter;
 import bjc.utils.ioutils.format.directives.*;
 
@@ -13,7 +16,46 @@ import bjc.utils.ioutils.format.directives.*;
  * @author Ben Culkin
  */
 public class CLString {
-	private List<Edict> edicts;
+	/*
+	 * Where the top-level decrees of a string compiled from text came from.
+	 *
+	 * Each top-level decree (along with the body of the group it opens, if
+	 * any) is a unit, which compiles to a run of edicts. Unit i starts at
+	 * starts[i] in the text, and runs up to where the next one starts; its
+	 * edicts start at firstEdict[i]. This lets CLFormatter.recompile find the
+	 * edicts that an edit to the text could have changed.
+	 */
+	static final class SourceMap {
+		// How long the text was
+		final int length;
+
+		final int[] starts;
+		final int[] firstEdict;
+		// Is the unit a literal, instead of a directive?
+		final boolean[] isLiteral;
+
+		SourceMap(int length, int[] starts, int[] firstEdict, boolean[] isLiteral) {
+			this.length = length;
+
+			this.starts     = starts;
+			this.firstEdict = firstEdict;
+			this.isLiteral  = isLiteral;
+		}
+
+		int size() {
+			return starts.length;
+		}
+	}
+
+	private final List<Edict> edicts;
+
+	private final boolean isFrozen;
+
+	// Generated code that does the same thing as the edicts, if any
+	private final Edict specialized;
+
+	// Where the edicts came from, if they were compiled from text
+	private final SourceMap source;
 
 	/**
 	 * Create a new compiled format string.
@@ -22,7 +64,92 @@ public class CLString {
 	 *             The compiled directives that make up the format.
 	 */
 	public CLString(List<Edict> edts) {
-		edicts = edts;
+		this(edts, false);
+	}
+
+	/**
+	 * Create a new compiled format string.
+	 *
+	 * @param edts
+	 *                 The compiled directives that make up the format.
+	 *
+	 * @param isFrozen
+	 *                 Whether the edicts were compiled by a frozen formatter.
+	 */
+	public CLString(List<Edict> edts, boolean isFrozen) {
+		this(new ArrayList<>(edts), isFrozen, null);
+	}
+
+	// Create a format string compiled from text. This takes the list of edicts
+	// over instead of copying it, so it must not be changed afterwards.
+	CLString(List<Edict> edts, boolean isFrozen, SourceMap source) {
+		edicts = Collections.unmodifiableList(edts);
+
+		this.isFrozen = isFrozen;
+
+		this.source = source;
+
+		specialized = null;
+	}
+
+	// Create a specialized version of a format string
+	private CLString(CLString source, Edict specialized) {
+		edicts   = source.edicts;
+		isFrozen = source.isFrozen;
+
+		this.source = source.source;
+
+		this.specialized = specialized;
+	}
+
+	/**
+	 * Get a version of this format string which runs as generated code,
+	 * instead of being interpreted.
+	 *
+	 * Literal text in the string is merged into as few writes as possible, and
+	 * the directives are strung together with method handles, which lets the
+	 * JIT compile the whole string into straight-line code. Directives in
+	 * nested bodies (such as those of ~{ or ~[) are still interpreted.
+	 *
+	 * Generating the code costs a fair bit, so this is only worth it for
+	 * strings that are formatted a lot.
+	 *
+	 * @return A specialized version of this string. If code couldn't be
+	 *         generated for whatever reason, the result just uses the
+	 *         interpreter.
+	 */
+	public CLString specialize() {
+		if (specialized != null) return this;
+
+		Edict generated = CLStringSpecializer.specialize(edicts);
+
+		if (generated == null) return this;
+
+		return new CLString(this, generated);
+	}
+
+	/**
+	 * Check if this format string runs as generated code.
+	 *
+	 * @return Whether or not this format string runs as generated code.
+	 */
+	public boolean isSpecialized() {
+		return specialized != null;
+	}
+
+	/**
+	 * Check if this format string is frozen.
+	 *
+	 * Frozen format strings are compiled by a frozen formatter (see
+	 * {@link CLFormatter#freeze()}), and never change after they are created.
+	 * All of the state used while formatting one lives in the
+	 * {@link FormatContext} for that call, so one frozen string can be
+	 * formatted by any number of threads at once.
+	 *
+	 * @return Whether or not this format string is frozen.
+	 */
+	public boolean isFrozen() {
+		return isFrozen;
 	}
 
 	/**
@@ -85,6 +212,71 @@ public class CLString {
 		return format(formCTX);
 	}
 
+	/**
+	 * Execute this string with the given parameters, sending the output to a
+	 * channel.
+	 *
+	 * The output is encoded as UTF-8 as it is produced, so the output is never
+	 * held in memory as a string. The channel is not closed.
+	 *
+	 * @param chan
+	 *              The channel to write the output to.
+	 *
+	 * @param parms
+	 *              The format parameters to use.
+	 *
+	 * @throws IOException
+	 *                     If something I/O related goes wrong.
+	 */
+	public void format(WritableByteChannel chan, Object... parms) throws IOException {
+		ChannelOutput out = ChannelOutput.acquire();
+
+		try {
+			out.channelWriter.reset(chan);
+			out.reportWriter.reset(out.channelWriter);
+
+			formatInto(new FormatContext(out.reportWriter, new SingleTape<>(parms)));
+
+			out.channelWriter.finish();
+		} finally {
+			out.release();
+		}
+	}
+
+	/**
+	 * Execute this string with the given parameters, writing the output into a
+	 * byte buffer.
+	 *
+	 * The output is encoded as UTF-8, starting at the current position of the
+	 * buffer; the position is left after the last byte written.
+	 *
+	 * @param buf
+	 *              The buffer to write the output into.
+	 *
+	 * @param parms
+	 *              The format parameters to use.
+	 *
+	 * @throws IOException
+	 *                     If something I/O related goes wrong.
+	 *
+	 * @throws BufferOverflowException
+	 *                                 If the output doesn't fit in the buffer.
+	 */
+	public void format(ByteBuffer buf, Object... parms) throws IOException {
+		ChannelOutput out = ChannelOutput.acquire();
+
+		try {
+			out.channelWriter.reset(buf);
+			out.reportWriter.reset(out.channelWriter);
+
+			formatInto(new FormatContext(out.reportWriter, new SingleTape<>(parms)));
+
+			out.channelWriter.finish();
+		} finally {
+			out.release();
+		}
+	}
+
 	/**
 	 * Execute a format string in a given context.
 	 *
@@ -97,13 +289,162 @@ public class CLString {
 	 *                     If something I/O related goes wrong.
 	 */
 	public String format(FormatContext formCTX) throws IOException {
+		formatInto(formCTX);
+
+		return formCTX.writer.toString();
+	}
+
+	/**
+	 * Execute a format string in a given context, without converting the output
+	 * to a string.
+	 *
+	 * Use this when the output is going somewhere other than a string, to avoid
+	 * copying the output into a string that nobody wants.
+	 *
+	 * @param formCTX
+	 *                The context to use for formatting.
+	 *
+	 * @throws IOException
+	 *                     If something I/O related goes wrong.
+	 */
+	public void formatInto(FormatContext formCTX) throws IOException {
+		formatInto(formCTX, true);
+	}
+
+	/**
+	 * Execute a format string in a given context, without converting the output
+	 * to a string.
+	 *
+	 * @param formCTX
+	 *                   The context to use for formatting.
+	 *
+	 * @param isToplevel
+	 *                   Whether or not this is a top-level format. Escapes from
+	 *                   non top-level formats are left set in the context (see
+	 *                   {@link FormatContext#isEscaping()}), so that enclosing
+	 *                   directives can handle them.
+	 *
+	 * @throws IOException
+	 *                     If something I/O related goes wrong.
+	 */
+	public void formatInto(FormatContext formCTX, boolean isToplevel)
+			throws IOException {
 		try {
-			for (Edict edt : edicts) edt.format(formCTX);
+			if (specialized != null) {
+				specialized.format(formCTX);
+
+				formCTX.checkOutput();
+			} else {
+				// Index the edicts, instead of making an iterator every time
+				for (int i = 0; i < edicts.size(); i++) {
+					edicts.get(i).format(formCTX);
+
+					formCTX.checkOutput();
+
+					if (formCTX.isEscaping()) break;
+				}
+			}
 		} catch (DirectiveEscape eex) {
-			// General escape exception, so stop formatting.
+			// Edicts from outside of this library may still signal escapes by
+			// throwing.
+			formCTX.escape(eex.endIteration);
 		}
 
-		return formCTX.writer.toString();
+		// General escape, so stop formatting.
+		if (isToplevel) formCTX.clearEscape();
+	}
+
+	/**
+	 * Use this format string as the header or footer for the pages of a
+	 * {@link ReportWriter}.
+	 *
+	 * The string is formatted with the page number as its only parameter, so
+	 * a header could be something like <code>"Page ~D~%"</code>.
+	 *
+	 * @return A page decoration that prints this string.
+	 */
+	public PageDecoration asPageDecoration() {
+		return (out, page) -> {
+			ReportWriter rw = new ReportWriter(out);
+
+			formatInto(new FormatContext(rw, new SingleTape<Object>(page)));
+		};
+	}
+
+	/**
+	 * Work out what this format string could do when it is formatted, without
+	 * running it, assuming that each format argument prints as at most
+	 * {@link FormatAnalysis#DEFAULT_ITEM_WIDTH} characters.
+	 *
+	 * @return What this format string could do.
+	 */
+	public FormatAnalysis analyze() {
+		return analyze(FormatAnalysis.DEFAULT_ITEM_WIDTH);
+	}
+
+	/**
+	 * Work out what this format string could do when it is formatted, without
+	 * running it.
+	 *
+	 * This is meant for checking format strings that come from somewhere
+	 * untrusted before using them; see {@link FormatAnalysis} for what it
+	 * finds.
+	 *
+	 * @param itemWidth
+	 *                  The most characters any one format argument is assumed
+	 *                  to print as.
+	 *
+	 * @return What this format string could do.
+	 */
+	public FormatAnalysis analyze(int itemWidth) {
+		FormatAnalysis res = FormatAnalysis.empty();
+
+		for (Edict edt : edicts) res = res.then(edt.analyze(itemWidth));
+
+		return res;
+	}
+
+	/**
+	 * Check if the output of this format string doesn't depend on where it is
+	 * written.
+	 *
+	 * @return Whether or not every edict in this string is position-independent
+	 *         (see {@link Edict#isPositionIndependent()}).
+	 */
+	public boolean isPositionIndependent() {
+		for (Edict edt : edicts) {
+			if (!edt.isPositionIndependent()) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if this format string formats any of its iterations in parallel.
+	 *
+	 * See {@link CLFormatter#setParallelIteration(int, java.util.concurrent.ForkJoinPool)}
+	 * for when that happens.
+	 *
+	 * @return Whether or not any edict in this string formats things in
+	 *         parallel.
+	 */
+	public boolean isParallel() {
+		for (Edict edt : edicts) {
+			if (edt.isParallel()) return true;
+		}
+
+		return false;
+	}
+
+	// Get the edicts this string runs
+	List<Edict> getEdicts() {
+		return edicts;
+	}
+
+	// Get where the edicts of this string came from, or null if it wasn't
+	// compiled from text
+	SourceMap getSource() {
+		return source;
 	}
 
 	/**
@@ -118,6 +459,7 @@ public class CLString {
 
 	@Override
 	public String toString() {
-		return String.format("CLString [edicts=%s]", edicts);
+		return String.format("CLString [edicts=%s, isSpecialized=%s, isParallel=%s]",
+				edicts, isSpecialized(), isParallel());
 	}
 }
@@ -0,0 +1,165 @@
+package bjc.utils.ioutils.format;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+import bjc.utils.ioutils.format.directives.*;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/*
+ * Turns the edicts of a format string into a generated class.
+ *
+ * The edicts are turned into a tree of method handles, which runs them in
+ * order:
+ *
+ * - Runs of edicts that always print the same text (see
+ *   Edict.getConstantText) become a single write of that text.
+ * - Every other edict becomes a call to its format method, bound to that
+ *   edict. These calls go to the same code the interpreter runs, but since
+ *   each one is bound to a constant edict, the JIT can inline them.
+ *
+ * The tree is then installed into a hidden copy of SpecializedFormat, so that
+ * it is a constant as far as the JIT is concerned.
+ */
+final class CLStringSpecializer {
+	private static final MethodType EDICT_TYPE
+			= methodType(void.class, FormatContext.class);
+
+	// Edict.format, with the edict as the first argument
+	private static final MethodHandle FORMAT;
+	// writeText, with the text as the second argument
+	private static final MethodHandle WRITE_TEXT;
+	// FormatContext.isEscaping
+	private static final MethodHandle IS_ESCAPING;
+	// Does nothing with a context
+	private static final MethodHandle NOTHING;
+
+	// The class file for SpecializedFormat, which is what we copy
+	private static byte[] templateBytes;
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		try {
+			FORMAT = lookup.findVirtual(Edict.class, "format", EDICT_TYPE);
+
+			WRITE_TEXT = lookup.findStatic(CLStringSpecializer.class, "writeText",
+					methodType(void.class, FormatContext.class, String.class));
+
+			IS_ESCAPING = lookup.findVirtual(FormatContext.class, "isEscaping",
+					methodType(boolean.class));
+		} catch (ReflectiveOperationException roex) {
+			throw new ExceptionInInitializerError(roex);
+		}
+
+		NOTHING = MethodHandles.empty(EDICT_TYPE);
+	}
+
+	private CLStringSpecializer() {
+		throw new AssertionError("CLStringSpecializer is a utility class");
+	}
+
+	/**
+	 * Generate an edict that does the same thing as a list of edicts.
+	 *
+	 * @param edicts
+	 *               The edicts to combine.
+	 *
+	 * @return The generated edict, or null if we couldn't generate one.
+	 */
+	static Edict specialize(List<Edict> edicts) {
+		try {
+			MethodHandle body = toHandle(edicts);
+
+			MethodHandles.Lookup hidden = MethodHandles.lookup()
+					.defineHiddenClassWithClassData(getTemplate(), body, true);
+
+			MethodHandle ctor = hidden.findConstructor(hidden.lookupClass(),
+					methodType(void.class));
+
+			return (Edict) ctor.invoke();
+		} catch (Throwable thr) {
+			// Not being able to generate the class isn't fatal; the string
+			// just keeps using the interpreter.
+			return null;
+		}
+	}
+
+	// Convert a list of edicts into a single handle
+	private static MethodHandle toHandle(List<Edict> edicts) {
+		List<MethodHandle> steps = new ArrayList<>();
+
+		StringBuilder pendingText = new StringBuilder();
+
+		for (Edict edt : edicts) {
+			String text = edt.getConstantText();
+
+			if (text != null) {
+				pendingText.append(text);
+			} else {
+				addText(steps, pendingText);
+
+				steps.add(FORMAT.bindTo(edt));
+			}
+		}
+
+		addText(steps, pendingText);
+
+		return sequence(steps, 0, steps.size());
+	}
+
+	// Add a step which writes any text that has built up
+	private static void addText(List<MethodHandle> steps, StringBuilder text) {
+		if (text.length() == 0) return;
+
+		steps.add(MethodHandles.insertArguments(WRITE_TEXT, 1, text.toString()));
+
+		text.setLength(0);
+	}
+
+	/*
+	 * Combine a range of steps into one handle that runs them in order,
+	 * stopping if one of them escapes.
+	 *
+	 * This builds a balanced tree, instead of a chain, so that the nesting
+	 * stays shallow enough for the JIT to inline all of it.
+	 */
+	private static MethodHandle sequence(List<MethodHandle> steps, int start, int end) {
+		int count = end - start;
+
+		if (count == 0) return NOTHING;
+		if (count == 1) return steps.get(start);
+
+		int mid = start + (count / 2);
+
+		MethodHandle first  = sequence(steps, start, mid);
+		MethodHandle second = sequence(steps, mid, end);
+
+		// Run first, then second if first didn't escape, on the same context
+		MethodHandle guarded = MethodHandles.guardWithTest(IS_ESCAPING, NOTHING,
+				second);
+
+		return MethodHandles.foldArguments(guarded, first);
+	}
+
+	private static void writeText(FormatContext formCTX, String text)
+			throws IOException {
+		formCTX.writer.write(text);
+	}
+
+	private static synchronized byte[] getTemplate() throws IOException {
+		if (templateBytes == null) {
+			String name = SpecializedFormat.class.getSimpleName() + ".class";
+
+			try (InputStream strim = SpecializedFormat.class.getResourceAsStream(name)) {
+				if (strim == null) throw new FileNotFoundException(name);
+
+				templateBytes = strim.readAllBytes();
+			}
+		}
+
+		return templateBytes;
+	}
+}
@@ -1,7 +1,6 @@
 package bjc.utils.ioutils.format;
 
 import java.util.*;
-import java.util.regex.*;
 
 /**
  * Tokenizer for creating @{link Decree}s from strings.
@@ -40,10 +39,46 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 		}
 	}
 
-	private Matcher mat;
+	// Names for directives with a one-character ASCII name, so that reading
+	// one doesn't need a new string
+	private static final String[] CHAR_NAMES = new String[128];
 
+	static {
+		for (char ch = 0; ch < CHAR_NAMES.length; ch++) {
+			CHAR_NAMES[ch] = String.valueOf(ch);
+		}
+	}
+
+	// The string being tokenized
+	private String str;
+	// The length of that string
+	private int len;
+
+	// Where the next decree starts
+	private int pos;
+
+	// Have we produced the last decree from the string?
+	private boolean done;
+
+	// A directive found after a run of literal text, to be returned next
 	private SimpleDecree dir;
 
+	// The directives to look up decrees in, if any
+	private DirectiveTable directives;
+
+	/*
+	 * Where the parts of the directive last matched by matchDirective are.
+	 *
+	 * The parameters are from right after the ~ up to paramEnd, the modifiers
+	 * from paramEnd up to modEnd, and the name from nameStart up to nameEnd.
+	 */
+	private int paramEnd;
+	private int modEnd;
+	private int nameStart;
+	private int nameEnd;
+	// Was the directive a user function call?
+	private boolean isFunction;
+
 	/**
 	 * Empty constructor that should only be invoked if you are a subclass who
 	 * overrides hasNext()/next().
@@ -59,7 +94,30 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 	 *               The string to tokenize from.
 	 */
 	public CLTokenizer(String strang) {
-		this.mat = CLPattern.getDirectiveMatcher(strang);
+		this.str = strang;
+		this.len = strang.length();
+	}
+
+	/*
+	 * Create a tokenizer that starts part of the way through a string.
+	 *
+	 * The start has to be somewhere that a tokenizer for the whole string
+	 * would start a decree with nothing left over from before it: the start
+	 * of the string, or right after a directive.
+	 */
+	CLTokenizer(String strang, int start, DirectiveTable directives) {
+		this(strang, directives);
+
+		this.pos = start;
+		// A directive that ends the string isn't followed by an empty literal
+		this.done = start > 0 && start == len;
+	}
+
+	// Create a tokenizer which looks up the directive for each decree
+	CLTokenizer(String strang, DirectiveTable directives) {
+		this(strang);
+
+		this.directives = directives;
 	}
 
 	/**
@@ -88,7 +146,7 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 
 	@Override
 	public boolean hasNext() {
-		return !mat.hitEnd();
+		return dir != null || !done;
 	}
 
 	@Override
@@ -96,6 +154,15 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 		return getNext();
 	}
 
+	/*
+	 * This is a hand-written version of the directive pattern from CLPattern,
+	 * which does a single pass over the string instead of going through a
+	 * regex and then re-scanning the text between matches.
+	 *
+	 * Where the pattern has a choice of how to match something, the choices
+	 * are tried in the same order the regex engine would try them, so the
+	 * same directives come out.
+	 */
 	private SimpleDecree getNext() {
 		if (!hasNext()) throw new NoSuchElementException("No possible decrees remaining");
 
@@ -107,45 +174,265 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 			return tmp;
 		}
 
-		StringBuffer sb = new StringBuffer();
+		int litStart = pos;
+
+		int idx = str.indexOf('~', pos);
+
+		while (idx != -1) {
+			SimpleDecree dcr = matchDirective(idx);
+
+			if (dcr != null) {
+				if (idx == litStart) return dcr;
+
+				dir = dcr;
+
+				return new SimpleDecree(str.substring(litStart, idx), litStart, idx);
+			}
+
+			idx = str.indexOf('~', idx + 1);
+		}
+
+		done = true;
+		pos  = len;
+
+		return new SimpleDecree(str.substring(litStart), litStart, len);
+	}
+
+	// Try to read a directive from the ~ at start
+	private SimpleDecree matchDirective(int start) {
+		int end = matchParam(start + 1);
+
+		if (end == -1) return null;
+
+		CLParameters params;
+		// Most directives don't have parameters
+		if (paramEnd == start + 1) {
+			params = new CLParameters();
+		} else {
+			params = CLParameters.fromDirective(str.substring(start + 1, paramEnd));
+		}
+
+		boolean atMod = false, colonMod = false, dollarMod = false, starMod = false;
+
+		for (int i = paramEnd; i < modEnd; i++) {
+			switch (str.charAt(i)) {
+			case '@': atMod     = true; break;
+			case ':': colonMod  = true; break;
+			case '$': dollarMod = true; break;
+			default:  starMod   = true;
+			}
+		}
+
+		String name;
+		if (isFunction) {
+			name = null;
+		} else if (nameEnd - nameStart == 1 && str.charAt(nameStart) < CHAR_NAMES.length) {
+			name = CHAR_NAMES[str.charAt(nameStart)];
+		} else {
+			name = str.substring(nameStart, nameEnd);
+		}
+
+		SimpleDecree dcr = new SimpleDecree(name, isFunction, params,
+				new CLModifiers(atMod, colonMod, dollarMod, starMod));
+
+		if (directives != null) {
+			dcr.directive  = directives.get(name);
+			dcr.resolvedIn = directives;
+		}
+
+		dcr.setPosition(start, end);
+
+		pos = end;
+		// Don't yield an empty literal for the end of the string
+		if (pos == len) done = true;
+
+		return dcr;
+	}
+
+	/*
+	 * Match a prefix parameter, and everything after it.
+	 *
+	 * Each of the match methods returns where the directive ends, or -1 if
+	 * it couldn't be matched that way.
+	 */
+	private int matchParam(int p) {
+		// Named parameter
+		if (p < len && str.charAt(p) == '#') {
+			int q = p + 1;
+
+			while (q < len && isParamNameChar(str.charAt(q))) q += 1;
+
+			if (q > p + 1 && q < len && (str.charAt(q) == ':' || str.charAt(q) == ';')) {
+				int end = matchValue(q + 1);
+
+				if (end != -1) return end;
+			}
+		}
+
+		return matchValue(p);
+	}
+
+	// Match the value of a prefix parameter, and everything after it
+	private int matchValue(int p) {
+		if (p < len) {
+			char ch = str.charAt(p);
 
-		while (mat.find()) {
-			mat.appendReplacement(sb, "");
+			int end;
 
-			String tmp = sb.toString();
+			switch (ch) {
+			case '\'':
+				if (p + 1 < len && !isLineTerminator(str.charAt(p + 1))) {
+					end = afterParam(p + 1 + Character.charCount(str.codePointAt(p + 1)));
 
-			{
-				String directiveName = mat.group("name");
-				String directiveFunction = mat.group("funcname");
-				String directiveModifierString = mat.group("modifiers");
-				String directiveParameterString = mat.group("params");
+					if (end != -1) return end;
+				}
+				break;
+			case 'V':
+			case 'v':
+			case '#':
+			case '%':
+				end = afterParam(p + 1);
+
+				if (end != -1) return end;
+				break;
+			case '"':
+				// Strings end at the first unescaped quote that works
+				for (int q = p + 1; q < len && !isLineTerminator(str.charAt(q)); q++) {
+					if (str.charAt(q) == '"' && str.charAt(q - 1) != '\\') {
+						end = afterParam(q + 1);
+
+						if (end != -1) return end;
+					}
+				}
+				break;
+			default:
+				int digStart = (ch == '-' || ch == '+') ? p + 1 : p;
 
-				if (directiveModifierString  == null)  directiveModifierString  = "";
-				if (directiveParameterString == null)  directiveParameterString = "";
+				int digEnd = digStart;
+				while (digEnd < len && isDigit(str.charAt(digEnd))) digEnd += 1;
 
-				boolean isUser = directiveName == null && directiveFunction != null;
+				// Try the longest number first
+				for (int q = digEnd; q > digStart; q--) {
+					end = afterParam(q);
 
-				dir = new SimpleDecree(directiveName, isUser,
-						CLParameters.fromDirective(directiveParameterString),
-						CLModifiers.fromString(directiveModifierString));
-				
-				dir.setPosition(mat.start(), mat.end());
+					if (end != -1) return end;
+				}
 			}
+		}
+
+		// Empty parameter
+		return afterParam(p);
+	}
+
+	// Match either another parameter, or the rest of the directive
+	private int afterParam(int p) {
+		if (p < len && str.charAt(p) == ',') {
+			int end = matchParam(p + 1);
+
+			if (end != -1) return end;
+		}
+
+		paramEnd = p;
+
+		return matchTail(p);
+	}
 
-			if (tmp.equals("")) {
-				SimpleDecree dcr = dir;
+	// Match the modifiers and name of a directive
+	private int matchTail(int p) {
+		int q = p;
 
-				dir = null;
+		while (q < len && isModifier(str.charAt(q))) q += 1;
+
+		int end = matchName(q);
+
+		if (end != -1) {
+			modEnd = q;
+
+			return end;
+		}
+
+		// The last modifier can serve as the name
+		if (q > p) {
+			modEnd     = q - 1;
+			nameStart  = q - 1;
+			nameEnd    = q;
+			isFunction = false;
+
+			return q;
+		}
 
-				return dcr;
+		return -1;
+	}
+
+	// Match the name of a directive
+	private int matchName(int p) {
+		if (p >= len) return -1;
+
+		if (str.charAt(p) == '/') {
+			// User function call
+			int q = p + 1;
+
+			while (q < len && isNameChar(str.charAt(q))) q += 1;
+
+			if (q > p + 1 && q < len && str.charAt(q) == '/') {
+				nameStart  = p + 1;
+				nameEnd    = q;
+				isFunction = true;
+
+				return q + 1;
 			}
 
-			return new SimpleDecree(sb.toString(), mat.start(), mat.end());
+			return -1;
+		}
+
+		int q = p;
+
+		while (q < len && str.charAt(q) == '`') q += 1;
+
+		int end;
+
+		if (q < len && isNameChar(str.charAt(q))) {
+			end = q + Character.charCount(str.codePointAt(q));
+		} else if (q > p) {
+			// The last grave is the name
+			end = q;
+		} else {
+			return -1;
 		}
 
-		mat.appendTail(sb);
+		nameStart  = p;
+		nameEnd    = end;
+		isFunction = false;
 
-		return new SimpleDecree(sb.toString());
+		return end;
+	}
+
+	private static boolean isModifier(char ch) {
+		return ch == '@' || ch == '$' || ch == ':' || ch == '*';
+	}
+
+	private static boolean isNameChar(char ch) {
+		return ch != '/' && !isSpace(ch);
+	}
+
+	private static boolean isParamNameChar(char ch) {
+		return ch != ',' && ch != ':' && ch != ';' && !isSpace(ch);
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	// The characters that \s matches in a regex
+	private static boolean isSpace(char ch) {
+		return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f'
+				|| ch == '\r';
+	}
+
+	// The characters that . doesn't match in a regex
+	private static boolean isLineTerminator(char ch) {
+		return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028'
+				|| ch == '\u2029';
 	}
 
 	/**
@@ -185,8 +472,9 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 		newGroup.opening = openedWith;
 
 		if (!hasNext()) {
-			String fmt = "No decrees available for group starting with %s at %#s";
-			throw new NoSuchElementException(String.format(fmt, openedWith.name, openedWith.position));
+			String fmt = "No decrees available for group starting with %s at %s";
+			throw new NoSuchElementException(
+					String.format(fmt, openedWith.name, describePosition(openedWith)));
 		}
 
 		ClauseDecree curClause = new ClauseDecree();
@@ -219,6 +507,9 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 
 					curClause = new ClauseDecree();
 				} else {
+					// Nested groups of the same kind need to be closed first
+					if (curDecree.isNamed(openedWith.name)) nestingLevel += 1;
+
 					curClause.addChild(curDecree);
 				}
 			} else if (curDecree.isNamed(openedWith.name)) {
@@ -238,12 +529,19 @@ public class CLTokenizer implements Iterator<SimpleDecree> {
 
 		if (newGroup.closing == null) {
 			String msg = String.format(
-					"Did not find closing directive for group (wanted \"%s\", last decree was \"%s\" at %#s)",
-					desiredClosing, curDecree.name, curDecree.position);
+					"Did not find closing directive for group (wanted \"%s\", last decree was \"%s\" at %s)",
+					desiredClosing, curDecree.name, describePosition(curDecree));
 
 			throw new NoSuchElementException(msg);
 		}
 
 		return newGroup;
 	}
+
+	// Describe where a decree is, for error messages
+	private static String describePosition(SimpleDecree decr) {
+		if (decr.position == null) return "unknown position";
+
+		return "position " + decr.position.getLeft();
+	}
 }
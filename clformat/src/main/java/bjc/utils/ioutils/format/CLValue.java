@@ -101,6 +101,28 @@ public interface CLValue {
 		return def;
 	}
 
+	/**
+	 * Check if this value is the same no matter what the format parameters are.
+	 *
+	 * Constant values can be evaluated once when the format is compiled,
+	 * passing null for the format parameters.
+	 *
+	 * @return Whether or not this value is constant.
+	 */
+	public default boolean isConstant() {
+		return false;
+	}
+
+	/**
+	 * Check if this value is taken from the format parameters, using one of
+	 * them up.
+	 *
+	 * @return Whether or not getting this value uses up a format parameter.
+	 */
+	public default boolean usesItem() {
+		return false;
+	}
+
 	/**
 	 * Get a CLValue that represent 'nothing'.
 	 *
@@ -153,13 +175,18 @@ public interface CLValue {
 }
 
 class NullValue implements CLValue {
-	public static CLValue nullVal = new NullValue();
+	public static final CLValue nullVal = new NullValue();
 
 	@Override
 	public String getValue(Tape<Object> params) {
 		return null;
 	}
 
+	@Override
+	public boolean isConstant() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("NullValue []");
@@ -221,6 +248,11 @@ class VValue implements CLValue {
 		}
 	}
 
+	@Override
+	public boolean usesItem() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("VValue []");
@@ -228,7 +260,18 @@ class VValue implements CLValue {
 }
 
 class LiteralValue implements CLValue {
-	private String val;
+	private final String val;
+
+	// The value, pre-parsed as a number and as a character. Literals never
+	// change, so doing this once when the format is compiled saves us from
+	// parsing them every time the edict they belong to is executed.
+	private final boolean isEmpty;
+
+	private final boolean isInt;
+	private final int     intVal;
+
+	private final boolean isChar;
+	private final char    charVal;
 
 	/**
 	 * Create a new CLValue.
@@ -238,6 +281,38 @@ class LiteralValue implements CLValue {
 	 */
 	public LiteralValue(String vul) {
 		val = vul;
+
+		isEmpty = (vul == null || vul.equals(""));
+
+		boolean parsedInt = false;
+		int     parsedVal = 0;
+
+		if (!isEmpty) {
+			try {
+				parsedVal = Integer.parseInt(vul);
+				parsedInt = true;
+			} catch (NumberFormatException nfex) {
+				// Not a number; asInt will complain if it is used as one.
+			}
+		}
+
+		isInt  = parsedInt;
+		intVal = parsedVal;
+
+		if (isEmpty) {
+			isChar  = false;
+			charVal = '\0';
+		} else if (vul.length() == 1) {
+			// Punt in the case we have a slightly malformed character
+			isChar  = true;
+			charVal = vul.charAt(0);
+		} else if (vul.startsWith("'")) {
+			isChar  = true;
+			charVal = vul.charAt(1);
+		} else {
+			isChar  = false;
+			charVal = '\0';
+		}
 	}
 
 	/**
@@ -251,6 +326,30 @@ class LiteralValue implements CLValue {
 		return val;
 	}
 
+	@Override
+	public boolean isConstant() {
+		return true;
+	}
+
+	@Override
+	public int asInt(Tape<Object> params, String paramName, String directive, int def) {
+		if (isEmpty) return def;
+		if (isInt)   return intVal;
+
+		// Let the general version produce the error message.
+		return CLValue.super.asInt(params, paramName, directive, def);
+	}
+
+	@Override
+	public char asChar(Tape<Object> params, String paramName, String directive,
+			char def) {
+		if (isEmpty) return def;
+		if (isChar)  return charVal;
+
+		// Let the general version produce the error message.
+		return CLValue.super.asChar(params, paramName, directive, def);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("LiteralValue [val=%s]", val);
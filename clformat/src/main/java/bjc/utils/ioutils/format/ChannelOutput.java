@@ -0,0 +1,64 @@
+package bjc.utils.ioutils.format;
+
+import java.nio.charset.*;
+
+import bjc.utils.ioutils.ChannelWriter;
+import bjc.utils.ioutils.ReportWriter;
+
+/**
+ * The per-thread writers used to send formatted output to channels and byte
+ * buffers.
+ *
+ * Keeping these around means that formatting to a channel doesn't allocate
+ * any writers or buffers once a thread has done it once.
+ *
+ * @author Ben Culkin
+ */
+final class ChannelOutput {
+	private static final ThreadLocal<ChannelOutput> POOL
+			= ThreadLocal.withInitial(ChannelOutput::new);
+
+	/**
+	 * The writer that encodes output and sends it to its destination.
+	 */
+	final ChannelWriter channelWriter;
+
+	/**
+	 * The writer that formatting writes to.
+	 */
+	final ReportWriter reportWriter;
+
+	// Whether or not this is currently being used for formatting
+	private boolean inUse;
+
+	private ChannelOutput() {
+		channelWriter = new ChannelWriter(StandardCharsets.UTF_8,
+				ChannelWriter.DEFAULT_BUFFER_SIZE);
+		reportWriter = new ReportWriter(channelWriter);
+	}
+
+	/**
+	 * Get the writers for the current thread.
+	 *
+	 * If they are already in use (because something being formatted formats to
+	 * a channel itself), a fresh set is returned instead.
+	 *
+	 * @return A set of writers that aren't being used by anything else.
+	 */
+	static ChannelOutput acquire() {
+		ChannelOutput out = POOL.get();
+
+		if (out.inUse) out = new ChannelOutput();
+
+		out.inUse = true;
+
+		return out;
+	}
+
+	/**
+	 * Mark these writers as no longer being used.
+	 */
+	void release() {
+		inUse = false;
+	}
+}
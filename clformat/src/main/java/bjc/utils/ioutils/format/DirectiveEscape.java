@@ -3,6 +3,11 @@ package bjc.utils.ioutils.format;
 /**
  * An exception thrown to escape CL iteration directives.
  *
+ * Compiled format strings signal escapes through
+ * {@link bjc.utils.ioutils.format.directives.FormatContext#escape(boolean)}
+ * instead; this is only thrown by the uncompiled formatter, and is still
+ * accepted from edicts that throw it.
+ *
  * @author EVE
  *
  */
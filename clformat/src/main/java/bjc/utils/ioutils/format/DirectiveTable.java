@@ -0,0 +1,60 @@
+package bjc.utils.ioutils.format;
+
+import java.util.*;
+
+import bjc.utils.ioutils.format.directives.*;
+
+/*
+ * The directives a formatter knows about, looked up by name.
+ *
+ * Almost every directive has a one-character ASCII name, so those are kept in
+ * an array indexed by that character, and looking them up doesn't need to
+ * hash anything. The rest are kept in a map.
+ *
+ * Tables never change once they are made; a formatter makes a new one
+ * whenever its directives change. Decrees remember which table they were
+ * resolved with, so a formatter can tell whether that is still good.
+ */
+final class DirectiveTable {
+	private final Directive[] byChar = new Directive[128];
+
+	private final Map<String, Directive> byName = new HashMap<>();
+
+	/*
+	 * Create a table of directives.
+	 *
+	 * Extra directives take the place of built-in ones with the same name.
+	 */
+	DirectiveTable(Map<String, Directive> builtins, Map<String, Directive> extras) {
+		for (Map.Entry<String, Directive> entry : builtins.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+
+		for (Map.Entry<String, Directive> entry : extras.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void put(String name, Directive directive) {
+		if (name.length() == 1 && name.charAt(0) < byChar.length) {
+			byChar[name.charAt(0)] = directive;
+		} else {
+			byName.put(name, directive);
+		}
+	}
+
+	/*
+	 * Get the directive with a given name, or null if there isn't one.
+	 */
+	Directive get(String name) {
+		if (name == null) return null;
+
+		if (name.length() == 1) {
+			char ch = name.charAt(0);
+
+			if (ch < byChar.length) return byChar[ch];
+		}
+
+		return byName.get(name);
+	}
+}
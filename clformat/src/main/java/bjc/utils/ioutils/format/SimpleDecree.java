@@ -2,6 +2,7 @@ package bjc.utils.ioutils.format;
 
 import bjc.data.Pair;
 import bjc.data.SimplePair;
+import bjc.utils.ioutils.format.directives.Directive;
 
 /**
  * A decree is the building blocks of what we need to pick and call a directive.
@@ -41,6 +42,19 @@ public class SimpleDecree implements Decree {
 	 * The position in the input this decree had
 	 */
 	public Pair<Integer, Integer> position;
+
+	/**
+	 * The directive this decree names, if it was looked up when the decree was
+	 * tokenized.
+	 *
+	 * This is only used if the formatter the decree is compiled with still has
+	 * the same directives it was looked up with; otherwise, the name is looked
+	 * up again.
+	 */
+	public Directive directive;
+
+	// The directives the directive was looked up in
+	DirectiveTable resolvedIn;
 	
 	/**
 	 * Create a new blank decree.
@@ -0,0 +1,40 @@
+package bjc.utils.ioutils.format;
+
+import java.io.*;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.*;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import bjc.utils.ioutils.format.directives.*;
+
+/*
+ * Template for the classes generated by CLStringSpecializer.
+ *
+ * This class is never used directly. Instead, a hidden copy of it is defined
+ * for every specialized format string, with the method handle that does the
+ * formatting passed in as class data. Since the handle ends up in a static
+ * final field, the JIT treats it as a constant and can inline the whole thing.
+ */
+final class SpecializedFormat implements Edict {
+	private static final MethodHandle BODY = loadBody();
+
+	private static MethodHandle loadBody() {
+		try {
+			return MethodHandles.classData(MethodHandles.lookup(),
+					ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+		} catch (IllegalAccessException iaex) {
+			throw new IllegalStateException("Couldn't load specialized format", iaex);
+		}
+	}
+
+	@Override
+	public void format(FormatContext formCTX) throws IOException {
+		try {
+			BODY.invokeExact(formCTX);
+		} catch (IOException | RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable thr) {
+			throw new UndeclaredThrowableException(thr);
+		}
+	}
+}
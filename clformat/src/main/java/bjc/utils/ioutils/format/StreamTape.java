@@ -0,0 +1,228 @@
+package bjc.utils.ioutils.format;
+
+import java.util.*;
+
+import bjc.esodata.*;
+
+/**
+ * A tape of format arguments that are pulled from an iterator as they are
+ * needed, instead of all being read up front.
+ *
+ * Only the current item, and a fixed number of the items before it, are kept
+ * around. That is as far back as a format string can move with
+ * <code>~:*</code> or <code>~n@*</code>; moving back any further throws an
+ * {@link IllegalStateException}, since those items are gone.
+ *
+ * Since the number of items isn't known until they've all been read,
+ * {@link #size()} only works once the end of the items has been reached, so
+ * format strings that use <code>#</code> as a parameter can't be used with
+ * one of these.
+ *
+ * @author Ben Culkin
+ *
+ * @param <T>
+ *            The type of item on the tape.
+ */
+public class StreamTape<T> implements Tape<T> {
+	/**
+	 * The default number of items before the current one that are kept.
+	 */
+	public static final int DEFAULT_WINDOW = 16;
+
+	private final Iterator<? extends T> source;
+
+	private final int window;
+
+	// The items that have been read, and are still kept. Item i is at
+	// i % buffer.length.
+	private final Object[] buffer;
+
+	// How many items have been read; this is always at least pos
+	private int read;
+	// The current position
+	private int pos;
+
+	/**
+	 * Create a new tape that keeps the default number of items.
+	 *
+	 * @param source
+	 *               The place to get items from.
+	 */
+	public StreamTape(Iterator<? extends T> source) {
+		this(source, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Create a new tape.
+	 *
+	 * @param source
+	 *               The place to get items from.
+	 * @param window
+	 *               The number of items before the current one to keep.
+	 */
+	public StreamTape(Iterator<? extends T> source, int window) {
+		if (window < 0) {
+			String msg = String.format("Window must not be negative (was %d)", window);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.source = source;
+		this.window = window;
+
+		buffer = new Object[window + 1];
+	}
+
+	/**
+	 * Create a new tape.
+	 *
+	 * @param source
+	 *               The place to get items from.
+	 * @param window
+	 *               The number of items before the current one to keep.
+	 */
+	public StreamTape(Spliterator<? extends T> source, int window) {
+		this(Spliterators.iterator(source), window);
+	}
+
+	/**
+	 * Get the number of items before the current one that are kept.
+	 *
+	 * @return The number of items before the current one that are kept.
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	// Read items until there are at least count of them, or there aren't any
+	// more. Returns whether there are enough.
+	private boolean readTo(int count) {
+		while (read < count) {
+			if (!source.hasNext()) return false;
+
+			buffer[read % buffer.length] = source.next();
+			read += 1;
+		}
+
+		return true;
+	}
+
+	// Check that the item at a position is still kept
+	private void checkKept(int tgtPos) {
+		if (tgtPos < read - buffer.length) {
+			String msg = String.format(
+					"Can't move back to argument %d; only the %d arguments before the current one are kept, and %d arguments have been read",
+					tgtPos, window, read);
+
+			throw new IllegalStateException(msg);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T item() {
+		if (!readTo(pos + 1)) return null;
+
+		return (T) buffer[pos % buffer.length];
+	}
+
+	@Override
+	public void item(T itm) {
+		if (!readTo(pos + 1)) {
+			throw new NoSuchElementException("Can't set the item at the end of a tape");
+		}
+
+		buffer[pos % buffer.length] = itm;
+	}
+
+	/**
+	 * Get the number of items on this tape.
+	 *
+	 * @return The number of items on this tape.
+	 *
+	 * @throws IllegalStateException
+	 *                               If there are still items that haven't been
+	 *                               read, and so the number of them isn't known.
+	 */
+	@Override
+	public int size() {
+		if (source.hasNext()) {
+			String msg = String.format(
+					"The number of arguments isn't known until they have all been read (%d have been so far)",
+					read);
+
+			throw new IllegalStateException(msg);
+		}
+
+		return read;
+	}
+
+	@Override
+	public int position() {
+		return pos;
+	}
+
+	@Override
+	public boolean atEnd() {
+		return !readTo(pos + 1);
+	}
+
+	@Override
+	public boolean left() {
+		return left(1);
+	}
+
+	/**
+	 * Move some number of items to the left.
+	 *
+	 * @param amt
+	 *            The number of items to move.
+	 *
+	 * @return Whether the tape could be moved that far.
+	 *
+	 * @throws IllegalStateException
+	 *                               If the item moved to isn't kept anymore.
+	 */
+	@Override
+	public boolean left(int amt) {
+		if (amt < 0) return right(-amt);
+
+		if (pos - amt < 0) return false;
+
+		checkKept(pos - amt);
+
+		pos -= amt;
+
+		return true;
+	}
+
+	@Override
+	public boolean right() {
+		return right(1);
+	}
+
+	@Override
+	public boolean right(int amt) {
+		if (amt < 0) return left(-amt);
+
+		// Read everything that gets skipped over, so that positions line up
+		// with what has been read.
+		if (!readTo(pos + amt)) return false;
+
+		pos += amt;
+
+		return true;
+	}
+
+	@Override
+	public boolean seekTo(int tgtPos) {
+		if (tgtPos < pos) return left(pos - tgtPos);
+		else              return right(tgtPos - pos);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StreamTape [position=%s, read=%s, window=%s]", pos,
+				read, window);
+	}
+}
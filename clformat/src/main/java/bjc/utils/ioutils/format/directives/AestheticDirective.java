@@ -55,12 +55,12 @@ public class AestheticDirective implements Directive {
 }
 
 class AestheticEdict implements Edict {
-	private boolean padBefore;
+	private final boolean padBefore;
 
-	private CLValue padcharPar;
-	private CLValue mincolPar;
-	private CLValue colincPar;
-	private CLValue minpadPar;
+	private final CLValue padcharPar;
+	private final CLValue mincolPar;
+	private final CLValue colincPar;
+	private final CLValue minpadPar;
 
 	public AestheticEdict(boolean padBefore, CLValue padPar, CLValue minPar,
 			CLValue colPar, CLValue mpadPar) {
@@ -95,6 +95,11 @@ class AestheticEdict implements Edict {
 
 		work.append(itemString);
 
+		// Check the padding will fit before building it
+		long padLength = Math.max(0, minpad)
+				+ (long) Math.max(0, mincol - work.length()) * Math.max(0, colinc);
+		formCTX.checkOutput(work.length() + padLength);
+
 		String padding = createPadding(work, padchar, mincol, colinc, minpad);
 		if (padBefore) work.insert(0, padding);
 		else           work.append(padding);
@@ -122,4 +127,23 @@ class AestheticEdict implements Edict {
 
 		return padding.toString();
 	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		int args = 1 + FormatAnalysis.argumentsFor(padcharPar, mincolPar, colincPar,
+				minpadPar);
+
+		// The padding is minpad characters, and colinc more for every column
+		// short of mincol.
+		long padding = FormatAnalysis.addOutput(FormatAnalysis.valueOf(minpadPar, 0),
+				FormatAnalysis.mulOutput(FormatAnalysis.valueOf(mincolPar, 0),
+						FormatAnalysis.valueOf(colincPar, 1)));
+
+		return FormatAnalysis.of(args, FormatAnalysis.addOutput(itemWidth, padding));
+	}
 }
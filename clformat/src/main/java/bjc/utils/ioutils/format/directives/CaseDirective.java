@@ -1,9 +1,7 @@
 package bjc.utils.ioutils.format.directives;
 
 import java.io.*;
-import java.util.regex.*;
 
-import bjc.utils.ioutils.ReportWriter;
 import bjc.utils.ioutils.format.*;
 
 /**
@@ -47,84 +45,119 @@ class CaseEdict implements Edict {
 		UPPERCASE, WORD_UPPERCASE, FIRST_UPPERCASE, LOWERCASE
 	}
 
-	private static final Pattern wordPattern = Pattern.compile("(\\w+)(\\b*)");
+	private final CLString body;
 
-	private CLString body;
-
-	private Mode caseMode;
+	private final Mode caseMode;
 
 	public CaseEdict(GroupDecree body, Mode caseMode, CLFormatter fmt) {
-		this.body = new CLString(fmt.compile(body.unwrap()));
+		this.body = new CLString(fmt.compile(body.unwrap()), fmt.isFrozen());
 
 		this.caseMode = caseMode;
 	}
 
 	@Override
 	public void format(FormatContext formCTX) throws IOException {
-		try (ReportWriter nrw = formCTX.getScratchWriter()) {
-			String strang = body.format(nrw, formCTX.items);
+		try (FormatContext.Scratch scratch = formCTX.getScratch()) {
+			body.formatInto(formCTX.withWriter(scratch.writer));
+
+			StringBuilder work = scratch.contents();
 
 			switch (caseMode) {
 			case UPPERCASE:
-				strang = strang.toUpperCase();
+				if (isASCII(work)) {
+					for (int i = 0; i < work.length(); i++) {
+						work.setCharAt(i, Character.toUpperCase(work.charAt(i)));
+					}
+				} else {
+					// Non-ASCII case mappings can change the length of the
+					// string, so they can't be done in place.
+					replaceContents(work, work.toString().toUpperCase());
+				}
+				break;
+			case WORD_UPPERCASE:
+				capitalizeWords(work, false);
+				break;
+			case FIRST_UPPERCASE:
+				capitalizeWords(work, true);
 				break;
-			case WORD_UPPERCASE: {
-				Matcher mat = wordPattern.matcher(strang);
+			case LOWERCASE:
+				if (isASCII(work)) {
+					for (int i = 0; i < work.length(); i++) {
+						work.setCharAt(i, Character.toLowerCase(work.charAt(i)));
+					}
+				} else {
+					// Non-ASCII case mappings can change the length of the
+					// string, so they can't be done in place.
+					replaceContents(work, work.toString().toLowerCase());
+				}
+				break;
+			default:
+				String msg = String.format(
+						"INTERNAL ERROR: CaseEdict mode %s is not supported. This is a bug.",
+						caseMode);
+				throw new IllegalArgumentException(msg);
+			}
 
-				StringBuffer sb = new StringBuffer();
-				while (mat.find()) {
-					mat.appendReplacement(sb, "");
+			scratch.writeTo(formCTX.writer);
+		}
+	}
 
-					String word      = mat.group(1);
-					String upperWord = word.substring(0, 1).toUpperCase()
-							           + word.substring(1);
+	// Capitalize the first letter of every word (or only the first word), where
+	// a word is a run of \w characters.
+	private static void capitalizeWords(StringBuilder work, boolean onlyFirst) {
+		boolean inWord = false;
 
-					sb.append(upperWord);
-					sb.append(mat.group(2));
-				}
+		for (int i = 0; i < work.length(); i++) {
+			char ch = work.charAt(i);
+
+			if (!isWordChar(ch)) {
+				inWord = false;
+			} else if (!inWord) {
+				inWord = true;
 
-				mat.appendTail(sb);
+				work.setCharAt(i, Character.toUpperCase(ch));
 
-				strang = sb.toString();
+				if (onlyFirst) return;
 			}
-				break;
-			case FIRST_UPPERCASE: {
-				Matcher mat = wordPattern.matcher(strang);
+		}
+	}
 
-				StringBuffer sb = new StringBuffer();
-				boolean doCap = true;
-				while (mat.find()) {
-					mat.appendReplacement(sb, "");
+	// Matches the \w character class
+	private static boolean isWordChar(char ch) {
+		return (ch >= 'a' && ch <= 'z')
+				|| (ch >= 'A' && ch <= 'Z')
+				|| (ch >= '0' && ch <= '9')
+				|| ch == '_';
+	}
 
-					String word = mat.group(1);
+	private static boolean isASCII(StringBuilder work) {
+		for (int i = 0; i < work.length(); i++) {
+			if (work.charAt(i) > 127) return false;
+		}
 
-					if (doCap) {
-						doCap = false;
+		return true;
+	}
 
-						word = word.substring(0, 1).toUpperCase()
-							   + word.substring(1);
-					}
+	private static void replaceContents(StringBuilder work, String contents) {
+		work.setLength(0);
+		work.append(contents);
+	}
 
-					sb.append(word);
-					sb.append(mat.group(2));
-				}
+	@Override
+	public boolean isPositionIndependent() {
+		return body.isPositionIndependent();
+	}
 
-				mat.appendTail(sb);
+	@Override
+	public boolean isParallel() {
+		return body.isParallel();
+	}
 
-				strang = sb.toString();
-			}
-				break;
-			case LOWERCASE:
-				strang = strang.toLowerCase();
-				break;
-			default:
-				String msg = String.format(
-						"INTERNAL ERROR: CaseEdict mode %s is not supported. This is a bug.",
-						caseMode);
-				throw new IllegalArgumentException(msg);
-			}
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		// Changing the case of a character can turn it into as many as three
+		FormatAnalysis bod = body.analyze(itemWidth).contained();
 
-			formCTX.writer.write(strang);
-		}
+		return bod.withOutput(FormatAnalysis.mulOutput(bod.getMaxOutput(), 3));
 	}
 }
@@ -22,7 +22,7 @@ public class CharacterDirective implements Directive {
 }
 
 class CharacterEdict implements Edict {
-	private boolean printCharName;
+	private final boolean printCharName;
 
 	public CharacterEdict(boolean printCharName) {
 		this.printCharName = printCharName;
@@ -48,4 +48,15 @@ class CharacterEdict implements Edict {
 
 		formCTX.items.right();
 	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		// No character has a name anywhere near this long
+		return FormatAnalysis.of(1, printCharName ? 128 : 1);
+	}
 }
@@ -65,17 +65,13 @@ class ConditionalEdict implements Edict {
 		FIRST_SECOND, OUTPUT_TRUE, INDEX_CLAUSE
 	}
 
-	private Mode condMode;
+	private final Mode condMode;
 
-	private boolean decrementIndex;
-	private CLValue index;
+	private final boolean decrementIndex;
+	private final CLValue index;
 
-	private List<CLString> clauses;
-	private CLString defClause;
-
-	// Think I might need this for something...
-	@SuppressWarnings("unused")
-	private CLFormatter formatter;
+	private final List<CLString> clauses;
+	private final CLString defClause;
 
 	public ConditionalEdict(Mode condMode, boolean decrementIndex, CLValue index,
 			GroupDecree clauses, ClauseDecree defClause, CLFormatter fmt) {
@@ -88,107 +84,145 @@ class ConditionalEdict implements Edict {
 		for (ClauseDecree clause : clauses) {
 			List<Edict> compiled = fmt.compile(clause);
 			
-			this.clauses.add(new CLString(compiled));
+			this.clauses.add(new CLString(compiled, fmt.isFrozen()));
 		}
-		this.defClause = new CLString(fmt.compile(defClause));
-
-		this.formatter = fmt;
+		this.defClause = new CLString(fmt.compile(defClause), fmt.isFrozen());
 	}
 
 	@Override
 	public void format(FormatContext formCTX) throws IOException {
 		Tape<Object> items = formCTX.items;
 
-		try {
-			switch (condMode) {
-			case FIRST_SECOND: {
-				Object item = items.item();
-				items.right();
+		// Clauses are formatted as top-level strings, so an escape in a clause
+		// only ends that clause.
+		switch (condMode) {
+		case FIRST_SECOND: {
+			Object item = items.item();
+			items.right();
+
+			boolean conditionResult = false;
+			if (item == null) {
+				// throw new IllegalArgumentException("No parameter provided for [
+				// directive.");
+			} else if (!(item instanceof Boolean)) {
+				throw new IllegalFormatConversionException('[', item.getClass());
+			} else {
+				conditionResult = (Boolean) item;
+			}
 
-				boolean conditionResult = false;
-				if (item == null) {
-					// throw new IllegalArgumentException("No parameter provided for [
-					// directive.");
-				} else if (!(item instanceof Boolean)) {
-					throw new IllegalFormatConversionException('[', item.getClass());
-				} else {
-					conditionResult = (Boolean) item;
-				}
+			CLString pickedFormat;
+			if (conditionResult) {
+				pickedFormat = clauses.get(1);
+			} else {
+				pickedFormat = clauses.get(0);
+			}
 
-				CLString pickedFormat;
-				if (conditionResult) {
-					pickedFormat = clauses.get(1);
-				} else {
-					pickedFormat = clauses.get(0);
+			pickedFormat.formatInto(formCTX);
+		}
+			break;
+		case OUTPUT_TRUE: {
+			boolean conditionResult = false;
+			Object item = items.item();
+
+			if (item == null) {
+				// throw new IllegalArgumentException("No parameter provided for [
+				// directive.");
+			} else if (item instanceof Integer) {
+				if ((Integer) item != 0) {
+					conditionResult = true;
 				}
+			} else if (item instanceof Boolean) {
+				conditionResult = (Boolean) item;
+			} else {
+				throw new IllegalFormatConversionException('[', item.getClass());
+			}
 
-				pickedFormat.format(formCTX);
+			if (conditionResult) {
+				clauses.get(0).formatInto(formCTX);
+			} else {
+				items.right();
 			}
-				break;
-			case OUTPUT_TRUE: {
-				boolean conditionResult = false;
+		}
+			break;
+		case INDEX_CLAUSE: {
+			int clauseIndex;
+
+			if (index != null) {
+				clauseIndex = index.asInt(items, "conditional choice", "[", 0);
+			} else {
 				Object item = items.item();
 
 				if (item == null) {
-					// throw new IllegalArgumentException("No parameter provided for [
-					// directive.");
-				} else if (item instanceof Integer) {
-					if ((Integer) item != 0) {
-						conditionResult = true;
-					}
-				} else if (item instanceof Boolean) {
-					conditionResult = (Boolean) item;
-				} else {
+					throw new IllegalArgumentException(
+							"No parameter provided for [ directive.");
+				} else if (!(item instanceof Number)) {
 					throw new IllegalFormatConversionException('[', item.getClass());
 				}
 
-				if (conditionResult) {
-					clauses.get(0).format(formCTX);
-				} else {
-					items.right();
-				}
+				clauseIndex = ((Number) item).intValue();
+
+				items.right();
+			}
+
+			if (decrementIndex)
+				clauseIndex -= 1;
+
+			if (clauses.size() == 0 || clauseIndex < 0 || clauseIndex >= clauses.size()) {
+				if (defClause != null) defClause.formatInto(formCTX);
+			} else {
+				CLString frmt = clauses.get(clauseIndex);
+
+				frmt.formatInto(formCTX);
 			}
-				break;
-			case INDEX_CLAUSE: {
-				int clauseIndex;
+		}
+			break;
+		default:
+			// IMPROVE Should probably handle this
+			// -- Ben Culkin, 4/14/2020
+			break;
+		}
+	}
 
-				if (index != null) {
-					clauseIndex = index.asInt(items, "conditional choice", "[", 0);
-				} else {
-					Object item = items.item();
+	@Override
+	public boolean isPositionIndependent() {
+		for (CLString clause : clauses) {
+			if (!clause.isPositionIndependent()) return false;
+		}
 
-					if (item == null) {
-						throw new IllegalArgumentException(
-								"No parameter provided for [ directive.");
-					} else if (!(item instanceof Number)) {
-						throw new IllegalFormatConversionException('[', item.getClass());
-					}
+		return defClause.isPositionIndependent();
+	}
 
-					clauseIndex = ((Number) item).intValue();
+	@Override
+	public boolean isParallel() {
+		for (CLString clause : clauses) {
+			if (clause.isParallel()) return true;
+		}
 
-					items.right();
-				}
+		return defClause.isParallel();
+	}
 
-				if (decrementIndex)
-					clauseIndex -= 1;
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		// Any one of the clauses could be picked
+		FormatAnalysis picked = FormatAnalysis.empty();
+		for (int i = 0; i < clauses.size(); i++) {
+			FormatAnalysis clause = clauses.get(i).analyze(itemWidth).contained();
 
-				if (clauses.size() == 0 || clauseIndex < 0 || clauseIndex >= clauses.size()) {
-					if (defClause != null) defClause.format(formCTX.writer, items);
-				} else {
-					CLString frmt = clauses.get(clauseIndex);
+			picked = (i == 0) ? clause : picked.or(clause);
+		}
 
-					frmt.format(formCTX.writer, items);
-				}
-			}
-				break;
-			default:
-				// IMPROVE Should probably handle this
-				// -- Ben Culkin, 4/14/2020
-				break;
-			}
-		} catch (DirectiveEscape dex) {
-			// Conditionals are transparent to iteration-escapes
-			throw dex;
+		switch (condMode) {
+		case FIRST_SECOND:
+			return FormatAnalysis.of(1, 0).then(picked);
+		case OUTPUT_TRUE:
+			// The clause uses the condition itself, if it is run at all
+			return picked.or(FormatAnalysis.of(1, 0));
+		default:
+			int args = (index != null) ? FormatAnalysis.argumentsFor(index) : 1;
+
+			picked = picked.or(defClause.analyze(itemWidth).contained());
+
+			return FormatAnalysis.of(args, 0).then(picked);
 		}
 	}
 }
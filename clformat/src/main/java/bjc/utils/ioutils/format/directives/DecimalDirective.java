@@ -2,6 +2,7 @@ package bjc.utils.ioutils.format.directives;
 
 import java.io.*;
 import java.text.*;
+import java.util.*;
 
 import bjc.esodata.*;
 import bjc.utils.ioutils.format.*;
@@ -43,26 +44,75 @@ public class DecimalDirective implements Directive {
 			throw new IllegalArgumentException("Must provide 0 or 1 arguments to `D directive");
 		}
 
-		return new DecimalEdict(decForm);
+		return new DecimalEdict(decForm, compCTX.formatter.getLocale());
 	}
 }
 
 class DecimalEdict implements Edict {
-	private CLValue decFormat;
+	// Number of V-supplied patterns each thread keeps formats for
+	private static final int MAX_CACHED_PATTERNS = 16;
 
-	public DecimalEdict(CLValue decForm) {
-		this.decFormat = decForm;
+	/*
+	 * The per-thread state for formatting numbers.
+	 *
+	 * NumberFormat isn't thread-safe, so every thread gets its own.
+	 */
+	private static final class NumberState {
+		final NumberFormat numForm;
+
+		final StringBuffer  work = new StringBuffer();
+		final FieldPosition pos  = new FieldPosition(0);
+
+		char[] chars = new char[32];
+
+		NumberState(NumberFormat numForm) {
+			this.numForm = numForm;
+		}
 	}
 
-	@Override
-	public void format(FormatContext formCTX) throws IOException {
-		Tape<Object> itemTape = formCTX.items;
+	private final CLValue decFormat;
 
-		CLFormatter.checkItem(itemTape.item(), "`D");
+	private final Locale locale;
 
-		NumberFormat numForm = NumberFormat.getInstance();
+	// The format for a literal pattern, built once at compile time. Threads
+	// clone it instead of parsing the pattern again.
+	private final NumberFormat literalFormat;
 
-		String decFormString = decFormat.getValue(itemTape);
+	// Per-thread copies of the literal format
+	private final ThreadLocal<NumberState> literalState;
+
+	// Per-thread formats for V-supplied patterns, most recently used last
+	private final ThreadLocal<Map<String, NumberState>> patternStates;
+
+	public DecimalEdict(CLValue decForm, Locale locale) {
+		this.decFormat = decForm;
+		this.locale    = locale;
+
+		if (decForm.isConstant()) {
+			literalFormat = buildFormat(decForm.getValue(null));
+
+			literalState  = ThreadLocal.withInitial(
+					() -> new NumberState((NumberFormat) literalFormat.clone()));
+			patternStates = null;
+		} else {
+			literalFormat = null;
+
+			literalState  = null;
+			patternStates = ThreadLocal.withInitial(() -> new LinkedHashMap<>(
+					MAX_CACHED_PATTERNS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, NumberState> eldest) {
+					return size() > MAX_CACHED_PATTERNS;
+				}
+			});
+		}
+	}
+
+	// Create a number format for a pattern
+	private NumberFormat buildFormat(String decFormString) {
+		NumberFormat numForm = NumberFormat.getInstance(locale);
 
 		if (decFormString == null || decFormString.equals("")) {
 			// Use the default if not provided.
@@ -78,12 +128,55 @@ class DecimalEdict implements Edict {
 			}
 		}
 
-		//StringBuffer work = new StringBuffer();
+		return numForm;
+	}
+
+	@Override
+	public void format(FormatContext formCTX) throws IOException {
+		Tape<Object> itemTape = formCTX.items;
+
+		CLFormatter.checkItem(itemTape.item(), "`D");
+
+		NumberState state;
+
+		if (literalState != null) {
+			state = literalState.get();
+		} else {
+			String decFormString = decFormat.getValue(itemTape);
+
+			// Patterns can be null for V parameters; NumberFormat treats
+			// that the same as no pattern.
+			String key = decFormString == null ? "" : decFormString;
+
+			Map<String, NumberState> states = patternStates.get();
+
+			state = states.get(key);
+			if (state == null) {
+				state = new NumberState(buildFormat(key));
+
+				states.put(key, state);
+			}
+		}
+
+		state.work.setLength(0);
+		state.numForm.format(itemTape.item(), state.work, state.pos);
 
-		//numForm.format(itemTape.item(), work, ZERO_FIELD);
+		int len = state.work.length();
+		if (state.chars.length < len) state.chars = new char[len];
+
+		state.work.getChars(0, len, state.chars, 0);
+		formCTX.writer.write(state.chars, 0, len);
 
-		// formCTX.writer.write(work.toString());
-		formCTX.writer.write(numForm.format(itemTape.item()));
 		itemTape.right();
 	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		return FormatAnalysis.of(1 + FormatAnalysis.argumentsFor(decFormat), itemWidth);
+	}
 }
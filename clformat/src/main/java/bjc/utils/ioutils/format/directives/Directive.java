@@ -2,6 +2,8 @@ package bjc.utils.ioutils.format.directives;
 
 import java.io.IOException;
 
+import bjc.utils.ioutils.format.DirectiveEscape;
+
 /**
  * A CL format directive.
  *
@@ -19,7 +21,12 @@ public interface Directive {
 	public default void format(FormatParameters dirParams) throws IOException {
 		Edict edt = compile(dirParams.toCompileCTX());
 
-		edt.format(dirParams.toFormatCTX());
+		FormatContext formCTX = dirParams.toFormatCTX();
+
+		edt.format(formCTX);
+
+		// The uncompiled formatter still uses exceptions to handle escapes
+		if (formCTX.isEscaping()) throw new DirectiveEscape(formCTX.isEndingIteration());
 	}
 
 	/**
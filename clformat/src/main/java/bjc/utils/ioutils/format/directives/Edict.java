@@ -18,4 +18,67 @@ public interface Edict {
 	 * @throws IOException Thrown if an I/O error happens.
 	 */
 	public void format(FormatContext formCTX) throws IOException;
+
+	/**
+	 * Get the text this edict prints, if it always prints the same thing and
+	 * doesn't use any of the format parameters.
+	 *
+	 * Compiled format strings use this to turn runs of constant edicts into a
+	 * single write.
+	 *
+	 * @return The text this edict always prints, or null if it doesn't always
+	 *         print the same thing.
+	 */
+	public default String getConstantText() {
+		return null;
+	}
+
+	/**
+	 * Check if the output of this edict doesn't depend on where it is written.
+	 *
+	 * Position-independent edicts don't look at or change the state of the
+	 * writer (such as the line position, the indentation, or whether the last
+	 * thing written was a newline), and are safe to run on any thread. Runs of
+	 * them can be formatted into separate buffers, which are then written out
+	 * one after another, without changing the output.
+	 *
+	 * This is false by default, since an edict that doesn't say otherwise
+	 * might do any of those things.
+	 *
+	 * @return Whether or not this edict is position-independent.
+	 */
+	public default boolean isPositionIndependent() {
+		return false;
+	}
+
+	/**
+	 * Check if this edict, or any edict nested in it, formats things in
+	 * parallel.
+	 *
+	 * @return Whether or not this edict formats things in parallel.
+	 */
+	public default boolean isParallel() {
+		return false;
+	}
+
+	/**
+	 * Work out what this edict could do when it is formatted, without running
+	 * it. See {@link FormatAnalysis}.
+	 *
+	 * By default, edicts that always print the same text are known to do just
+	 * that, and anything else could do anything.
+	 *
+	 * @param itemWidth
+	 *                  The most characters any one format argument is assumed
+	 *                  to print as.
+	 *
+	 * @return What this edict could do.
+	 */
+	public default FormatAnalysis analyze(int itemWidth) {
+		String text = getConstantText();
+
+		if (text != null) return FormatAnalysis.of(0, text.length());
+
+		return FormatAnalysis.unknown(FormatAnalysis.Hazard.UNKNOWN_EDICT);
+	}
 }
@@ -60,16 +60,16 @@ class EscapeEdict implements Edict {
 		END, COUNT, EQUALITY, RANGE
 	}
 
-	private Mode mode;
+	private final Mode mode;
 
-	private boolean isNegated;
-	private boolean terminateIteration;
+	private final boolean isNegated;
+	private final boolean terminateIteration;
 
-	private CLValue param1;
-	private CLValue param2;
-	private CLValue param3;
+	private final CLValue param1;
+	private final CLValue param2;
+	private final CLValue param3;
 
-	private boolean advance;
+	private final boolean advance;
 
 	public EscapeEdict(boolean isNegated, Mode mode, boolean terminateIteration,
 			CLValue param1, CLValue param2, CLValue param3, boolean advance) {
@@ -126,6 +126,25 @@ class EscapeEdict implements Edict {
 		if (advance)   items.left();
 		if (isNegated) shouldExit = !shouldExit;
 
-		if (shouldExit) throw new DirectiveEscape(terminateIteration);
+		if (shouldExit) formCTX.escape(terminateIteration);
+	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		int args;
+
+		switch (mode) {
+		case COUNT:    args = FormatAnalysis.argumentsFor(param1);                 break;
+		case EQUALITY: args = FormatAnalysis.argumentsFor(param1, param2);         break;
+		case RANGE:    args = FormatAnalysis.argumentsFor(param1, param2, param3); break;
+		default:       args = 0;
+		}
+
+		return FormatAnalysis.of(args, 0).escaping();
 	}
 }
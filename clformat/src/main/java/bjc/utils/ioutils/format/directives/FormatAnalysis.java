@@ -0,0 +1,422 @@
+package bjc.utils.ioutils.format.directives;
+
+import java.util.*;
+
+import bjc.utils.ioutils.format.*;
+
+/**
+ * What a compiled format string (or part of one) could do when it is
+ * formatted, worked out without running it.
+ *
+ * This covers how far through the format arguments it moves, the most
+ * characters it could print, and anything in it that could make formatting
+ * run away, like iterations with no maximum. Use
+ * {@link CLString#analyze(int)} to get one for a whole string.
+ *
+ * The number of arguments is how far the argument tape moves, so moving back
+ * with ~:* counts against it. Output sizes assume that each argument prints as
+ * at most a given number of characters, since there is no way to know how
+ * long the text for an argument is ahead of time; padding and other things
+ * set by the format string are counted exactly.
+ *
+ * Analyses never change once they are made.
+ *
+ * @author Ben Culkin
+ */
+public final class FormatAnalysis {
+	/**
+	 * Things in a format string that can make it run away when it is given
+	 * the wrong arguments.
+	 *
+	 * @author Ben Culkin
+	 */
+	public static enum Hazard {
+		/**
+		 * An iteration with no maximum number of iterations, which runs as
+		 * many times as its arguments say to.
+		 */
+		UNBOUNDED_ITERATION,
+		/**
+		 * A ~? directive, which formats a string taken from the arguments, and
+		 * so can nest as deeply as they say to.
+		 */
+		UNBOUNDED_RECURSION,
+		/**
+		 * A ~:* or ~@* directive, which can move back to arguments that have
+		 * already been used. Inside of ~@{, this can keep it from ever ending.
+		 */
+		BACKWARD_JUMP,
+		/**
+		 * A format string taken from the arguments, which could do anything.
+		 */
+		DYNAMIC_FORMAT,
+		/**
+		 * An edict that doesn't say what it does, which could do anything.
+		 */
+		UNKNOWN_EDICT
+	}
+
+	/**
+	 * The default number of characters each argument is assumed to print as.
+	 */
+	public static final int DEFAULT_ITEM_WIDTH = 64;
+
+	/**
+	 * The bound on the number of arguments used when there isn't one.
+	 */
+	public static final int UNBOUNDED_ARGUMENTS = Integer.MAX_VALUE;
+
+	/**
+	 * The bound on the output when there isn't one.
+	 */
+	public static final long UNBOUNDED_OUTPUT = Long.MAX_VALUE;
+
+	private static final FormatAnalysis EMPTY = of(0, 0);
+
+	// Fewest and most arguments moved past; the fewest is negative if things
+	// can move backwards.
+	private final int minArgs;
+	private final int maxArgs;
+
+	private final long maxOutput;
+
+	// Could a ~^ stop things part of the way through?
+	private final boolean mayEscape;
+
+	private final Set<Hazard> hazards;
+
+	private FormatAnalysis(int minArgs, int maxArgs, long maxOutput, boolean mayEscape,
+			Set<Hazard> hazards) {
+		this.minArgs = minArgs;
+		this.maxArgs = maxArgs;
+
+		this.maxOutput = maxOutput;
+
+		this.mayEscape = mayEscape;
+
+		this.hazards = hazards;
+	}
+
+	/**
+	 * Get the analysis of something that does nothing.
+	 *
+	 * @return The analysis of something that does nothing.
+	 */
+	public static FormatAnalysis empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Get the analysis of something that always uses the same number of
+	 * arguments.
+	 *
+	 * @param args
+	 *                  The number of arguments used.
+	 * @param maxOutput
+	 *                  The most characters printed.
+	 *
+	 * @return The analysis of something that does that.
+	 */
+	public static FormatAnalysis of(int args, long maxOutput) {
+		return new FormatAnalysis(args, args, maxOutput, false,
+				Collections.unmodifiableSet(EnumSet.noneOf(Hazard.class)));
+	}
+
+	/**
+	 * Get the analysis of something that could do anything.
+	 *
+	 * @param hazard
+	 *               Why it could do anything.
+	 *
+	 * @return The analysis of something that could do anything.
+	 */
+	public static FormatAnalysis unknown(Hazard hazard) {
+		return new FormatAnalysis(-UNBOUNDED_ARGUMENTS, UNBOUNDED_ARGUMENTS,
+				UNBOUNDED_OUTPUT, true, Collections.unmodifiableSet(EnumSet.of(hazard)));
+	}
+
+	/**
+	 * Get the analysis of doing this, then something else.
+	 *
+	 * @param next
+	 *             What is done next.
+	 *
+	 * @return The analysis of doing both things.
+	 */
+	public FormatAnalysis then(FormatAnalysis next) {
+		// If this could escape, the next thing might not happen at all
+		int nextMin = mayEscape ? Math.min(0, next.minArgs) : next.minArgs;
+
+		return new FormatAnalysis(addArgs(minArgs, nextMin), addArgs(maxArgs, next.maxArgs),
+				addOutput(maxOutput, next.maxOutput), mayEscape || next.mayEscape,
+				union(hazards, next.hazards));
+	}
+
+	/**
+	 * Get the analysis of doing either this or something else.
+	 *
+	 * @param other
+	 *              The other thing that could be done.
+	 *
+	 * @return The analysis of doing one of the two things.
+	 */
+	public FormatAnalysis or(FormatAnalysis other) {
+		return new FormatAnalysis(Math.min(minArgs, other.minArgs),
+				Math.max(maxArgs, other.maxArgs), Math.max(maxOutput, other.maxOutput),
+				mayEscape || other.mayEscape, union(hazards, other.hazards));
+	}
+
+	/**
+	 * Get the analysis of doing this any number of times, up to a maximum.
+	 *
+	 * @param times
+	 *              The most times this is done, or {@link #UNBOUNDED_OUTPUT}
+	 *              if there is no maximum.
+	 *
+	 * @return The analysis of doing this that many times.
+	 */
+	public FormatAnalysis repeated(long times) {
+		// Doing something no times doesn't move anywhere
+		int min = minArgs >= 0 ? 0 : mulArgs(minArgs, times);
+		int max = maxArgs <= 0 ? 0 : mulArgs(maxArgs, times);
+
+		return new FormatAnalysis(min, max, mulOutput(maxOutput, times), mayEscape,
+				hazards);
+	}
+
+	/**
+	 * Get the analysis of this, using a different number of arguments.
+	 *
+	 * This is for things that run their body on arguments of their own, like
+	 * ~{ does.
+	 *
+	 * @param min
+	 *            The fewest arguments used.
+	 * @param max
+	 *            The most arguments used.
+	 *
+	 * @return The analysis of this, using that many arguments.
+	 */
+	public FormatAnalysis withArguments(int min, int max) {
+		return new FormatAnalysis(min, max, maxOutput, mayEscape, hazards);
+	}
+
+	/**
+	 * Get the analysis of this, with a different bound on the output.
+	 *
+	 * @param output
+	 *               The most characters printed.
+	 *
+	 * @return The analysis of this, with that bound on the output.
+	 */
+	public FormatAnalysis withOutput(long output) {
+		return new FormatAnalysis(minArgs, maxArgs, output, mayEscape, hazards);
+	}
+
+	/**
+	 * Get the analysis of this, with another hazard in it.
+	 *
+	 * @param hazard
+	 *               The hazard to add.
+	 *
+	 * @return The analysis of this, with the hazard.
+	 */
+	public FormatAnalysis withHazard(Hazard hazard) {
+		return new FormatAnalysis(minArgs, maxArgs, maxOutput, mayEscape,
+				union(hazards, Collections.unmodifiableSet(EnumSet.of(hazard))));
+	}
+
+	/**
+	 * Get the analysis of something that may stop formatting part of the way
+	 * through, like ~^ does.
+	 *
+	 * @return The analysis of this, which may stop formatting.
+	 */
+	public FormatAnalysis escaping() {
+		return new FormatAnalysis(minArgs, maxArgs, maxOutput, true, hazards);
+	}
+
+	/**
+	 * Get the analysis of this as the body of a directive that stops any
+	 * escapes from it going further, like the clauses of ~[.
+	 *
+	 * @return The analysis of this, which doesn't stop anything around it.
+	 */
+	public FormatAnalysis contained() {
+		if (!mayEscape) return this;
+
+		return new FormatAnalysis(minArgs, maxArgs, maxOutput, false, hazards);
+	}
+
+	/**
+	 * Get the fewest arguments moved past.
+	 *
+	 * This can be negative if things can move backwards, and is
+	 * <code>-UNBOUNDED_ARGUMENTS</code> if there is no telling how far back
+	 * they can move.
+	 *
+	 * @return The fewest arguments moved past.
+	 */
+	public int getMinArguments() {
+		return minArgs;
+	}
+
+	/**
+	 * Get the most arguments moved past.
+	 *
+	 * @return The most arguments moved past, or {@link #UNBOUNDED_ARGUMENTS}
+	 *         if there is no limit.
+	 */
+	public int getMaxArguments() {
+		return maxArgs;
+	}
+
+	/**
+	 * Check if the number of arguments used is always the same.
+	 *
+	 * @return Whether the number of arguments used is always the same.
+	 */
+	public boolean hasFixedArguments() {
+		return minArgs == maxArgs;
+	}
+
+	/**
+	 * Get the most characters that could be printed.
+	 *
+	 * @return The most characters that could be printed, or
+	 *         {@link #UNBOUNDED_OUTPUT} if there is no limit.
+	 */
+	public long getMaxOutput() {
+		return maxOutput;
+	}
+
+	/**
+	 * Check if there is a limit on how much could be printed.
+	 *
+	 * @return Whether there is a limit on how much could be printed.
+	 */
+	public boolean isOutputBounded() {
+		return maxOutput != UNBOUNDED_OUTPUT;
+	}
+
+	/**
+	 * Get the hazards found.
+	 *
+	 * @return The hazards found.
+	 */
+	public Set<Hazard> getHazards() {
+		return hazards;
+	}
+
+	/**
+	 * Check if a hazard was found.
+	 *
+	 * @param hazard
+	 *               The hazard to check for.
+	 *
+	 * @return Whether the hazard was found.
+	 */
+	public boolean hasHazard(Hazard hazard) {
+		return hazards.contains(hazard);
+	}
+
+	/**
+	 * Check if formatting can't run away, no matter what the arguments are.
+	 *
+	 * @return Whether there are no hazards, and the output is bounded.
+	 */
+	public boolean isSafe() {
+		return hazards.isEmpty() && isOutputBounded();
+	}
+
+	/*
+	 * Helpers for edicts working out their analysis.
+	 */
+
+	// Count how many of some parameters take their value from the arguments
+	static int argumentsFor(CLValue... vals) {
+		int count = 0;
+
+		for (CLValue val : vals) {
+			if (val != null && val.usesItem()) count += 1;
+		}
+
+		return count;
+	}
+
+	// Get the value of a number parameter, or UNBOUNDED_OUTPUT if it isn't known
+	static long valueOf(CLValue val, int def) {
+		if (val == null) return def;
+		if (!val.isConstant()) return UNBOUNDED_OUTPUT;
+
+		try {
+			return Math.max(0, val.asInt(null, "parameter", "analysis", def));
+		} catch (IllegalArgumentException iaex) {
+			// Leave the error for when the edict is actually used
+			return UNBOUNDED_OUTPUT;
+		}
+	}
+
+	static long addOutput(long left, long right) {
+		if (left == UNBOUNDED_OUTPUT || right == UNBOUNDED_OUTPUT) return UNBOUNDED_OUTPUT;
+
+		long sum = left + right;
+
+		return sum < 0 ? UNBOUNDED_OUTPUT : sum;
+	}
+
+	static long mulOutput(long left, long right) {
+		if (left == 0 || right == 0) return 0;
+		if (left == UNBOUNDED_OUTPUT || right == UNBOUNDED_OUTPUT) return UNBOUNDED_OUTPUT;
+
+		if (left > UNBOUNDED_OUTPUT / right) return UNBOUNDED_OUTPUT;
+
+		return left * right;
+	}
+
+	private static int addArgs(int left, int right) {
+		if (left == UNBOUNDED_ARGUMENTS || right == UNBOUNDED_ARGUMENTS) {
+			return UNBOUNDED_ARGUMENTS;
+		} else if (left == -UNBOUNDED_ARGUMENTS || right == -UNBOUNDED_ARGUMENTS) {
+			return -UNBOUNDED_ARGUMENTS;
+		}
+
+		return clampArgs((long) left + right);
+	}
+
+	private static int mulArgs(int args, long times) {
+		if (args == 0) return 0;
+
+		if (times == UNBOUNDED_OUTPUT || Math.abs(args) == UNBOUNDED_ARGUMENTS) {
+			return args > 0 ? UNBOUNDED_ARGUMENTS : -UNBOUNDED_ARGUMENTS;
+		}
+
+		long product = args * Math.min(times, UNBOUNDED_ARGUMENTS);
+
+		return clampArgs(product);
+	}
+
+	private static int clampArgs(long args) {
+		if (args >= UNBOUNDED_ARGUMENTS)  return UNBOUNDED_ARGUMENTS;
+		if (args <= -UNBOUNDED_ARGUMENTS) return -UNBOUNDED_ARGUMENTS;
+
+		return (int) args;
+	}
+
+	private static Set<Hazard> union(Set<Hazard> left, Set<Hazard> right) {
+		if (right.isEmpty() || left.containsAll(right)) return left;
+		if (left.isEmpty()) return right;
+
+		Set<Hazard> res = EnumSet.copyOf(left);
+		res.addAll(right);
+
+		return Collections.unmodifiableSet(res);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"FormatAnalysis [minArgs=%s, maxArgs=%s, maxOutput=%s, hazards=%s]",
+				minArgs, maxArgs, maxOutput, hazards);
+	}
+}
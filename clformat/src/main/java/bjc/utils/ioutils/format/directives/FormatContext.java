@@ -1,9 +1,13 @@
 package bjc.utils.ioutils.format.directives;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import bjc.esodata.*;
 import bjc.utils.ioutils.ReportWriter;
+import bjc.utils.ioutils.StringBuilderWriter;
+import bjc.utils.ioutils.format.exceptions.*;
 
 /**
  * Encapsulates all of the state that is provided to edicts when they are
@@ -12,6 +16,168 @@ import bjc.utils.ioutils.ReportWriter;
  * @author Ben Culkin
  */
 public class FormatContext {
+	/**
+	 * A reusable scratch buffer, along with a writer that writes into it.
+	 *
+	 * These are handed out by {@link FormatContext#getScratch()}, and must be
+	 * closed in the reverse order they were gotten in; using them with
+	 * try-with-resources takes care of that.
+	 *
+	 * @author Ben Culkin
+	 */
+	public static class Scratch implements AutoCloseable {
+		/**
+		 * The writer that writes into the scratch buffer.
+		 */
+		public final ReportWriter writer;
+
+		/**
+		 * The buffer the scratch writer writes into.
+		 */
+		public final StringBuilderWriter buffer;
+
+		private ScratchStack owner;
+
+		private Scratch(ScratchStack owner) {
+			this.owner = owner;
+
+			buffer = new StringBuilderWriter();
+			writer = new ReportWriter(buffer);
+		}
+
+		/**
+		 * Get the contents of the scratch buffer, for editing in place.
+		 *
+		 * @return The contents of the scratch buffer.
+		 */
+		public StringBuilder contents() {
+			return buffer.getBuilder();
+		}
+
+		/**
+		 * Write the contents of the scratch buffer to another writer.
+		 *
+		 * @param target
+		 *               The writer to write to.
+		 *
+		 * @throws IOException
+		 *                     If something goes wrong writing.
+		 */
+		public void writeTo(Writer target) throws IOException {
+			buffer.writeTo(target);
+		}
+
+		/**
+		 * Give this scratch buffer back, so it can be used again.
+		 */
+		@Override
+		public void close() {
+			owner.release(this);
+		}
+	}
+
+	/*
+	 * The scratch buffers for a single thread.
+	 */
+	private static class ScratchStack {
+		// Scratch buffers bigger than this get shrunk when they are released,
+		// so one big format doesn't pin a lot of memory forever.
+		private static final int MAX_RETAINED = 64 * 1024;
+
+		private List<Scratch> scratches = new ArrayList<>();
+
+		// Number of scratch buffers currently handed out
+		private int depth;
+
+		// The scratch array handed out by getChars
+		private char[] chars = new char[256];
+
+		public char[] chars(int minLength) {
+			if (chars.length < minLength) {
+				chars = new char[Math.max(minLength, chars.length * 2)];
+			} else if (minLength <= MAX_RETAINED && chars.length > MAX_RETAINED) {
+				chars = new char[Math.max(minLength, 256)];
+			}
+
+			return chars;
+		}
+
+		public Scratch acquire(ReportWriter parent) {
+			if (depth == scratches.size()) scratches.add(new Scratch(this));
+
+			Scratch scratch = scratches.get(depth);
+			depth += 1;
+
+			scratch.buffer.clear();
+			scratch.writer.reset(scratch.buffer);
+
+			parent.duplicateOnto(scratch.writer);
+
+			return scratch;
+		}
+
+		public void release(Scratch scratch) {
+			if (depth == 0 || scratches.get(depth - 1) != scratch) {
+				throw new IllegalStateException(
+						"Scratch buffers must be released in the reverse order they were acquired");
+			}
+
+			depth -= 1;
+
+			scratch.buffer.clear(MAX_RETAINED);
+		}
+	}
+
+	private static final ThreadLocal<ScratchStack> SCRATCHES
+			= ThreadLocal.withInitial(ScratchStack::new);
+
+	/*
+	 * The limits for a single call to format, and what has been used of them.
+	 *
+	 * This is shared by every thread formatting part of the call, so the
+	 * counters are atomic, and each thread checks the total as it goes.
+	 */
+	private static final class Budget {
+		final FormatLimits limits;
+
+		// Iterations done so far, on every thread
+		final AtomicLong iterations = new AtomicLong();
+
+		// Output written so far, on every thread
+		final AtomicLong output = new AtomicLong();
+
+		Budget(FormatLimits limits) {
+			this.limits = limits;
+		}
+	}
+
+	/*
+	 * State that belongs to a single call to format, which is shared by all of
+	 * the contexts created for nested formats during that call.
+	 */
+	private static final class CallState {
+		// Has a ~^ directive said to stop formatting?
+		boolean escaping;
+		// Did it say to stop the enclosing iteration as well?
+		boolean endIteration;
+
+		// The limits for this call, or null if there aren't any
+		final Budget budget;
+
+		// How many characters the writer had written when the call (or fork)
+		// started, and how many it has written since that are in the budget
+		final long outputStart;
+		long reported;
+
+		// How many ~? are running
+		int depth;
+
+		CallState(Budget budget, long outputStart) {
+			this.budget      = budget;
+			this.outputStart = outputStart;
+		}
+	}
+
 	/**
 	 * The place where we write all of out outputs to.
 	 */
@@ -22,6 +188,8 @@ public class FormatContext {
 	 */
 	public Tape<Object> items;
 
+	private final CallState state;
+
 	/**
 	 * Create a new format context.
 	 *
@@ -31,18 +199,313 @@ public class FormatContext {
 	 *             The items that shall serve as format parameters.
 	 */
 	public FormatContext(ReportWriter rw, Tape<Object> itms) {
+		this(rw, itms, new CallState(null, 0));
+	}
+
+	/**
+	 * Create a new format context, which stops formatting if it goes over a
+	 * set of limits.
+	 *
+	 * @param rw
+	 *               The writer to store output into.
+	 * @param itms
+	 *               The items that shall serve as format parameters.
+	 * @param limits
+	 *               The limits on formatting.
+	 */
+	public FormatContext(ReportWriter rw, Tape<Object> itms, FormatLimits limits) {
+		this(rw, itms, new CallState(limits == null ? null : new Budget(limits),
+				rw.getCharsWritten()));
+	}
+
+	private FormatContext(ReportWriter rw, Tape<Object> itms, CallState state) {
 		writer = rw;
 
 		items = itms;
+
+		this.state = state;
+	}
+
+	/**
+	 * Create a context for a nested format, which writes to the same place as
+	 * this one, but uses a different set of items.
+	 *
+	 * The new context shares the escape state of this one.
+	 *
+	 * @param itms
+	 *             The items that shall serve as format parameters.
+	 *
+	 * @return A context for formatting the given items.
+	 */
+	public FormatContext withItems(Tape<Object> itms) {
+		return new FormatContext(writer, itms, state);
+	}
+
+	/**
+	 * Create a context for a nested format, which uses the same items as this
+	 * one, but writes to a different place.
+	 *
+	 * The new context shares the escape state of this one.
+	 *
+	 * @param rw
+	 *           The writer to store output into.
+	 *
+	 * @return A context for formatting to the given writer.
+	 */
+	public FormatContext withWriter(ReportWriter rw) {
+		return new FormatContext(rw, items, state);
+	}
+
+	/*
+	 * Create a context for formatting part of an iteration on another thread.
+	 *
+	 * The new context has its own escape state, so that escapes on one thread
+	 * don't affect the others, but shares the limits with this one. Whatever a
+	 * fork prints counts against the limit as soon as it is checked, not just
+	 * once its buffer is joined.
+	 */
+	FormatContext fork(ReportWriter rw) {
+		CallState forked = new CallState(state.budget, rw.getCharsWritten());
+
+		forked.depth = state.depth;
+
+		return new FormatContext(rw, items, forked);
+	}
+
+	/*
+	 * Write out the buffer a fork wrote into, once the fork is done.
+	 *
+	 * The fork has already counted that output, so it isn't counted again
+	 * when it is copied to this context's writer.
+	 */
+	void joinFork(FormatContext fork, StringBuilderWriter buffer) throws IOException {
+		long before = writer.getCharsWritten();
+
+		buffer.writeTo(writer);
+
+		if (state.budget == null) return;
+
+		fork.usedOutput();
+
+		state.reported += writer.getCharsWritten() - before;
+
+		checkOutput();
+	}
+
+	/**
+	 * Get the limits on formatting.
+	 *
+	 * @return The limits on formatting, or null if there aren't any.
+	 */
+	public FormatLimits getLimits() {
+		return state.budget == null ? null : state.budget.limits;
+	}
+
+	/**
+	 * Get the number of iterations done so far.
+	 *
+	 * These are only counted if there are limits.
+	 *
+	 * @return The number of iterations done so far.
+	 */
+	public long getIterations() {
+		return state.budget == null ? 0 : state.budget.iterations.get();
+	}
+
+	/**
+	 * Count iterations done by an iteration directive, and check that they
+	 * don't go over the limit.
+	 *
+	 * @param count
+	 *              The number of iterations done.
+	 *
+	 * @throws FormatLimitExceeded
+	 *                             If there have been too many iterations.
+	 */
+	public void countIterations(long count) {
+		if (state.budget == null) return;
+
+		FormatLimits limits = state.budget.limits;
+
+		if (state.budget.iterations.addAndGet(count) > limits.getMaxIterations()) {
+			String msg = String.format("Format went over the limit of %d iterations",
+					limits.getMaxIterations());
+
+			throw new FormatLimitExceeded(msg);
+		}
+	}
+
+	/**
+	 * Note that a nested format string is starting, and check that the
+	 * nesting doesn't go too deep.
+	 *
+	 * Every call to this needs a matching call to {@link #exitRecursion()}
+	 * once the nested string is done.
+	 *
+	 * @throws FormatLimitExceeded
+	 *                             If the nesting is too deep.
+	 */
+	public void enterRecursion() {
+		state.depth += 1;
+
+		if (state.budget != null && state.depth > state.budget.limits.getMaxDepth()) {
+			state.depth -= 1;
+
+			String msg = String.format("Format recursed deeper than the limit of %d",
+					state.budget.limits.getMaxDepth());
+
+			throw new FormatLimitExceeded(msg);
+		}
+	}
+
+	/**
+	 * Note that a nested format string started with {@link #enterRecursion()}
+	 * is done.
+	 */
+	public void exitRecursion() {
+		state.depth -= 1;
+	}
+
+	/**
+	 * Check that the output hasn't gone over the limit.
+	 *
+	 * Output that is being collected in a scratch buffer counts as well, since
+	 * scratch writers carry on the count of the writer they were made from, as
+	 * does output from parallel iterations that hasn't been written out yet.
+	 *
+	 * @throws FormatLimitExceeded
+	 *                             If too much has been printed.
+	 */
+	public void checkOutput() {
+		checkOutput(0);
+	}
+
+	/**
+	 * Check that printing some more characters won't take the output over the
+	 * limit.
+	 *
+	 * Directives whose output grows with their parameters (repeat counts,
+	 * padding and the like) call this before they print anything, so that a
+	 * single directive can't print (or build up) far more than the limit
+	 * before it is checked.
+	 *
+	 * @param more
+	 *             The number of characters that are about to be printed.
+	 *
+	 * @throws FormatLimitExceeded
+	 *                             If printing them would go over the limit.
+	 */
+	public void checkOutput(long more) {
+		if (state.budget == null) return;
+
+		FormatLimits limits = state.budget.limits;
+
+		if (usedOutput() + more > limits.getMaxOutput()) {
+			String msg = String.format("Format output went over the limit of %d characters",
+					limits.getMaxOutput());
+
+			throw new FormatLimitExceeded(msg);
+		}
+	}
+
+	/*
+	 * Add what this context has printed to the budget, and get the total that
+	 * has been printed so far.
+	 */
+	private long usedOutput() {
+		long printed = writer.getCharsWritten() - state.outputStart;
+		long added   = printed - state.reported;
+
+		state.reported = printed;
+
+		return state.budget.output.addAndGet(added);
+	}
+
+	/**
+	 * Signal that formatting should stop, as the ~^ directive does.
+	 *
+	 * Format strings stop running edicts once this is set, and edicts which run
+	 * nested bodies check for it once the body is done. This replaces throwing
+	 * a {@link bjc.utils.ioutils.format.DirectiveEscape}, which is costly to do
+	 * in a loop.
+	 *
+	 * @param endIteration
+	 *                     Whether the enclosing iteration should stop as well,
+	 *                     instead of just the current format.
+	 */
+	public void escape(boolean endIteration) {
+		state.escaping     = true;
+		state.endIteration = endIteration;
+	}
+
+	/**
+	 * Check if formatting has been told to stop.
+	 *
+	 * @return Whether or not formatting should stop.
+	 */
+	public boolean isEscaping() {
+		return state.escaping;
+	}
+
+	/**
+	 * Check if the enclosing iteration has been told to stop.
+	 *
+	 * @return Whether the escape in progress should end the enclosing
+	 *         iteration.
+	 */
+	public boolean isEndingIteration() {
+		return state.escaping && state.endIteration;
+	}
+
+	/**
+	 * Mark an escape as handled, so that formatting carries on.
+	 */
+	public void clearEscape() {
+		state.escaping     = false;
+		state.endIteration = false;
 	}
 
 	/**
 	 * Get a new scratch writer, with the same format settings as the current
 	 * writer.
 	 *
+	 * Prefer {@link #getScratch()}, which reuses its buffers instead of
+	 * creating new ones every time.
+	 *
 	 * @return A new writer, as described above.
 	 */
 	public ReportWriter getScratchWriter() {
 		return writer.duplicate(new StringWriter());
 	}
+
+	/**
+	 * Get a scratch buffer, with a writer that has the same format settings as
+	 * the current writer.
+	 *
+	 * Scratch buffers are kept per-thread, and reused once they are closed, so
+	 * this doesn't allocate anything once a thread has formatted something
+	 * with the same amount of nesting.
+	 *
+	 * @return An empty scratch buffer, as described above.
+	 */
+	public Scratch getScratch() {
+		return SCRATCHES.get().acquire(writer);
+	}
+
+	/**
+	 * Get a scratch array of characters, for building up short pieces of
+	 * output in place.
+	 *
+	 * There is only one of these per thread, so it must be written out before
+	 * anything else gets formatted.
+	 *
+	 * @param minLength
+	 *                  The smallest size the array can be.
+	 *
+	 * @return A scratch array, with at least the given length. Its contents
+	 *         are left over from whatever used it last.
+	 */
+	public char[] getChars(int minLength) {
+		return SCRATCHES.get().chars(minLength);
+	}
 }
@@ -0,0 +1,84 @@
+package bjc.utils.ioutils.format.directives;
+
+/**
+ * Limits on how much work a single call to format can do.
+ *
+ * These protect against format strings (or format arguments) that would
+ * otherwise print forever, or recurse until the stack runs out. Going over any
+ * of them throws a
+ * {@link bjc.utils.ioutils.format.exceptions.FormatLimitExceeded}.
+ *
+ * @author Ben Culkin
+ */
+public final class FormatLimits {
+	/**
+	 * Limits that don't limit anything.
+	 */
+	public static final FormatLimits NONE
+			= new FormatLimits(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+
+	private final long maxOutput;
+	private final long maxIterations;
+	private final int  maxDepth;
+
+	/**
+	 * Create a new set of limits.
+	 *
+	 * @param maxOutput
+	 *                      The most characters that can be printed.
+	 * @param maxIterations
+	 *                      The most iterations that can be done, counting the
+	 *                      iterations of every iteration directive together.
+	 * @param maxDepth
+	 *                      The deepest that ~? directives can be nested.
+	 */
+	public FormatLimits(long maxOutput, long maxIterations, int maxDepth) {
+		if (maxOutput < 0 || maxIterations < 0 || maxDepth < 0) {
+			String msg = String.format(
+					"Format limits must not be negative (were %d output characters, %d iterations and %d depth)",
+					maxOutput, maxIterations, maxDepth);
+
+			throw new IllegalArgumentException(msg);
+		}
+
+		this.maxOutput     = maxOutput;
+		this.maxIterations = maxIterations;
+		this.maxDepth      = maxDepth;
+	}
+
+	/**
+	 * Get the most characters that can be printed.
+	 *
+	 * This is checked after each directive runs, so the output can go over
+	 * the limit by however much the last directive printed.
+	 *
+	 * @return The most characters that can be printed.
+	 */
+	public long getMaxOutput() {
+		return maxOutput;
+	}
+
+	/**
+	 * Get the most iterations that can be done.
+	 *
+	 * @return The most iterations that can be done.
+	 */
+	public long getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Get the deepest that ~? directives can be nested.
+	 *
+	 * @return The deepest that ~? directives can be nested.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("FormatLimits [maxOutput=%s, maxIterations=%s, maxDepth=%s]",
+				maxOutput, maxIterations, maxDepth);
+	}
+}
@@ -28,7 +28,7 @@ public class FreshlineDirective implements Directive {
 }
 
 class FreshlineEdict implements Edict {
-	private CLValue times;
+	private final CLValue times;
 
 	public FreshlineEdict(CLValue times) {
 		this.times = times;
@@ -40,6 +40,14 @@ class FreshlineEdict implements Edict {
 
 		if (formCTX.writer.isLastCharNL()) nTimes -= 1;
 
+		formCTX.checkOutput(Math.max(0, nTimes));
+
 		for (int i = 0; i < nTimes; i++) formCTX.writer.write("\n");
 	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		return FormatAnalysis.of(FormatAnalysis.argumentsFor(times),
+				FormatAnalysis.valueOf(times, 1));
+	}
 }
@@ -19,30 +19,70 @@ public abstract class GeneralNumberDirective implements Directive {
 		/**
 		 * Minimum # of printed columns
 		 */
-		public CLValue mincol = CLValue.nil();
+		public final CLValue mincol;
 		/**
 		 * Character to use for padding if needed.
 		 */
-		public CLValue padchar = CLValue.nil();
+		public final CLValue padchar;
 
 		/**
 		 * Should the sign always be printed?
 		 */
-		public boolean signed;
+		public final boolean signed;
 
 		/**
 		 * Should there be commas inserted into the numbers?
 		 */
-		public boolean commaMode;
+		public final boolean commaMode;
 
 		/**
 		 * Number of places to go before inserting a comma.
 		 */
-		public CLValue commaInterval = CLValue.nil();
+		public final CLValue commaInterval;
 		/**
 		 * Character to use as a comma.
 		 */
-		public CLValue commaChar = CLValue.nil();
+		public final CLValue commaChar;
+
+		/**
+		 * Create a new set of number parameters.
+		 *
+		 * @param mincol
+		 *                      Minimum # of printed columns.
+		 * @param padchar
+		 *                      Character to use for padding.
+		 * @param signed
+		 *                      Should the sign always be printed?
+		 * @param commaMode
+		 *                      Should commas be inserted into the number?
+		 * @param commaInterval
+		 *                      Number of places to go before inserting a comma.
+		 * @param commaChar
+		 *                      Character to use as a comma.
+		 */
+		public NumberParams(CLValue mincol, CLValue padchar, boolean signed,
+				boolean commaMode, CLValue commaInterval, CLValue commaChar) {
+			this.mincol  = mincol;
+			this.padchar = padchar;
+
+			this.signed = signed;
+
+			this.commaMode     = commaMode;
+			this.commaInterval = commaInterval;
+			this.commaChar     = commaChar;
+		}
+
+		/*
+		 * Get the analysis of printing a number with these parameters.
+		 *
+		 * The number itself is at most width characters, before it is
+		 * padded out to mincol.
+		 */
+		FormatAnalysis analyze(int args, long width) {
+			args += FormatAnalysis.argumentsFor(mincol, padchar, commaInterval, commaChar);
+
+			return FormatAnalysis.of(args, Math.max(FormatAnalysis.valueOf(mincol, 0), width));
+		}
 	}
 
 	/**
@@ -59,34 +99,34 @@ public abstract class GeneralNumberDirective implements Directive {
 		CLParameters params = compCTX.decr.parameters;
 		CLModifiers  mods   = compCTX.decr.modifiers;
 
-		NumberParams np = new NumberParams();
+		CLValue mincol        = CLValue.nil();
+		CLValue padchar       = CLValue.nil();
+		CLValue commaInterval = CLValue.nil();
+		CLValue commaChar     = CLValue.nil();
 
 		if (params.length() >= (argidx + 2)) {
 			params.mapIndex("mincol", argidx + 1);
-			np.mincol = params.resolveKey("mincol");
+			mincol = params.resolveKey("mincol");
 		}
 
 		if (params.length() >= (argidx + 3)) {
 			params.mapIndex("padchar", argidx + 2);
-			np.padchar = params.resolveKey("padchar");
+			padchar = params.resolveKey("padchar");
 		}
 
 		if (mods.colonMod) {
-			np.commaMode = true;
-
 			if (params.length() >= (argidx + 4)) {
 				params.mapIndex("cchar", argidx + 3);
-				np.commaChar = params.resolveKey("cchar");
+				commaChar = params.resolveKey("cchar");
 			}
 
 			if (params.length() >= (argidx + 5)) {
 				params.mapIndex("cinterval", argidx + 4);
-				np.commaInterval = params.resolveKey("cinterval");
+				commaInterval = params.resolveKey("cinterval");
 			}
 		}
 
-		np.signed = mods.atMod;
-
-		return np;
+		return new NumberParams(mincol, padchar, mods.atMod, mods.colonMod,
+				commaInterval, commaChar);
 	}
 }
@@ -50,9 +50,9 @@ class GotoEdict implements Edict {
 		FORWARD, BACKWARD, INDEX
 	}
 
-	private Mode mode;
+	private final Mode mode;
 
-	private CLValue numVal;
+	private final CLValue numVal;
 
 	public GotoEdict(Mode mode, CLValue numVal) {
 		this.mode = mode;
@@ -83,4 +83,45 @@ class GotoEdict implements Edict {
 		}
 
 	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		int args = FormatAnalysis.argumentsFor(numVal);
+
+		long num;
+		switch (mode) {
+		case FORWARD:
+			num = FormatAnalysis.valueOf(numVal, 1);
+
+			if (num == FormatAnalysis.UNBOUNDED_OUTPUT) {
+				return FormatAnalysis.of(args, 0)
+						.withArguments(args, FormatAnalysis.UNBOUNDED_ARGUMENTS);
+			}
+
+			return FormatAnalysis.of(args + (int) Math.min(num, Integer.MAX_VALUE - args), 0);
+		case BACKWARD:
+			num = FormatAnalysis.valueOf(numVal, 1);
+
+			FormatAnalysis res;
+			if (num == FormatAnalysis.UNBOUNDED_OUTPUT) {
+				res = FormatAnalysis.of(args, 0)
+						.withArguments(-FormatAnalysis.UNBOUNDED_ARGUMENTS, args);
+			} else {
+				res = FormatAnalysis.of(args - (int) Math.min(num, Integer.MAX_VALUE), 0);
+			}
+
+			return res.withHazard(FormatAnalysis.Hazard.BACKWARD_JUMP);
+		default:
+			// Going to a particular argument could go anywhere
+			return FormatAnalysis.of(0, 0)
+					.withArguments(-FormatAnalysis.UNBOUNDED_ARGUMENTS,
+							FormatAnalysis.UNBOUNDED_ARGUMENTS)
+					.withHazard(FormatAnalysis.Hazard.BACKWARD_JUMP);
+		}
+	}
 }
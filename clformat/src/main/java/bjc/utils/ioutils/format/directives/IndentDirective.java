@@ -28,9 +28,9 @@ public class IndentDirective implements Directive {
 }
 
 class IndentEdict implements Edict {
-	private CLValue numIndentsVal;
+	private final CLValue numIndentsVal;
 
-	private boolean isRelative;
+	private final boolean isRelative;
 
 	public IndentEdict(CLValue numIndents, boolean isRelative) {
 		this.numIndentsVal = numIndents;
@@ -60,6 +60,11 @@ class IndentEdict implements Edict {
 			formCTX.writer.setLevel(numIndents);
 		}
 	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		return FormatAnalysis.of(FormatAnalysis.argumentsFor(numIndentsVal), 0);
+	}
 }
 
 class IndentConfigureEdict implements Edict {
@@ -67,4 +72,9 @@ class IndentConfigureEdict implements Edict {
 	public void format(FormatContext formCTX) {
 		// @TODO implement me - Ben Culkin, 1/5/20
 	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		return FormatAnalysis.empty();
+	}
 }
@@ -3,7 +3,6 @@ package bjc.utils.ioutils.format.directives;
 import java.io.*;
 import java.util.*;
 import bjc.inflexion.*;
-import bjc.utils.ioutils.ReportWriter;
 import bjc.utils.ioutils.format.*;
 
 /**
@@ -60,22 +59,37 @@ public class InflectDirective implements Directive {
 }
 
 class InflectEdict implements Edict {
-	private CLString body;
+	private final CLString body;
 
 	public InflectEdict(List<SimpleDecree> body, CLFormatter fmt) {
-		this.body = new CLString(fmt.compile(body));
+		this.body = new CLString(fmt.compile(body), fmt.isFrozen());
 	}
 
 	@Override
 	public void format(FormatContext formCTX) throws IOException {
-		ReportWriter newWriter = formCTX.writer.duplicate(new StringWriter());
+		try (FormatContext.Scratch scratch = formCTX.getScratch()) {
+			body.formatInto(formCTX.withWriter(scratch.writer));
 
-		body.format(newWriter, formCTX.items);
+			String strang = InflectionML.inflect(scratch.buffer.toString());
 
-		String strang = newWriter.toString();
+			formCTX.writer.write(strang);
+		}
+	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return body.isPositionIndependent();
+	}
 
-		strang = InflectionML.inflect(strang);
+	@Override
+	public boolean isParallel() {
+		return body.isParallel();
+	}
 
-		formCTX.writer.write(strang);
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		// There's no telling how much longer inflecting text makes it
+		return body.analyze(itemWidth).contained()
+				.withOutput(FormatAnalysis.UNBOUNDED_OUTPUT);
 	}
 }
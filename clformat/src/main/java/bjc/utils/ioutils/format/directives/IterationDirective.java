@@ -2,7 +2,11 @@ package bjc.utils.ioutils.format.directives;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+
 import bjc.esodata.*;
+import bjc.utils.ioutils.ReportWriter;
+import bjc.utils.ioutils.StringBuilderWriter;
 import bjc.utils.ioutils.format.*;
 
 /**
@@ -19,6 +23,10 @@ public class IterationDirective implements Directive {
 		List<SimpleDecree> body = new ArrayList<>();
 
 		Iterator<SimpleDecree> dirIter = compCTX.directives;
+
+		// How many iterations inside of this one are still open
+		int nestingLevel = 0;
+
 		// :GroupDecree
 		while (dirIter.hasNext()) {
 			SimpleDecree decr = dirIter.next();
@@ -28,8 +36,15 @@ public class IterationDirective implements Directive {
 				String dirName = decr.name;
 	
 				if (dirName != null) {
-					if (dirName.equals("}")) break;
-					else                     body.add(decr);
+					if (dirName.equals("}")) {
+						if (nestingLevel == 0) break;
+
+						nestingLevel -= 1;
+					} else if (dirName.equals("{")) {
+						nestingLevel += 1;
+					}
+
+					body.add(decr);
 				}
 			}
 		}
@@ -61,25 +76,48 @@ public class IterationDirective implements Directive {
 class IterationEdict implements Edict {
 	private static final char DIR_NAME = '{';
 
+	// How many chunks to split a parallel iteration into for each thread, so
+	// that a slow chunk doesn't hold up the others for long
+	private static final int CHUNKS_PER_THREAD = 4;
+
 	public static enum Mode {
 		ALL_SUBLISTS, ALL, SUBLIST, NORMAL
 	}
 
-	private Mode mode;
+	private final Mode mode;
+
+	private final CLString body;
 
-	private CLString body;
+	private final CLFormatter fmt;
 
-	private CLFormatter fmt;
+	private final CLValue maxItrVal;
 
-	private CLValue maxItrVal;
+	// The fewest sublists to format in parallel, or 0 to always format them
+	// in order
+	private final int parallelThreshold;
+	// The pool to format sublists on, if we format them in parallel
+	private final ForkJoinPool pool;
 
 	public IterationEdict(Mode mode, List<SimpleDecree> body, CLFormatter fmt, CLValue maxItr) {
 		this.mode = mode;
-		this.body = new CLString(fmt.compile(body));
+		this.body = new CLString(fmt.compile(body), fmt.isFrozen());
 
 		this.fmt = fmt;
 
 		this.maxItrVal = maxItr;
+
+		// Sublists are the only thing where what each iteration prints only
+		// depends on its own items, so they are the only thing we can split up.
+		boolean canSplit = mode == Mode.SUBLIST && !this.body.isEmpty()
+				&& this.body.isPositionIndependent();
+
+		if (canSplit && fmt.getParallelThreshold() > 0) {
+			parallelThreshold = fmt.getParallelThreshold();
+			pool              = fmt.getParallelPool();
+		} else {
+			parallelThreshold = 0;
+			pool              = null;
+		}
 	}
 
 	@Override
@@ -92,7 +130,7 @@ class IterationEdict implements Edict {
 		Object iter = formCTX.items.item();
 
 		boolean usingString = false;
-		String currBody = null;
+		CLString currBody = null;
 
 		if (body.isEmpty()) {
 			/* Grab an argument. */
@@ -100,8 +138,11 @@ class IterationEdict implements Edict {
 				throw new IllegalFormatConversionException('{', String.class);
 			}
 
+			// Compile the body once, instead of once per iteration. The
+			// formatter caches it, so later calls with the same body don't
+			// need to compile it at all.
 			usingString = true;
-			currBody    = (String) iter;
+			currBody    = fmt.compileBody((String) iter);
 
 			if (!formCTX.items.right()) {
 				throw new IllegalArgumentException(
@@ -111,137 +152,340 @@ class IterationEdict implements Edict {
 			iter = formCTX.items.item();
 		}
 
+		// Static bodies are formatted as top-level strings, so escapes in them
+		// only end the current iteration. Escapes from dynamic bodies are left
+		// set in the context, and checked after each iteration.
 		switch (mode) {
 		case ALL_SUBLISTS:
-			try {
-				do {
-					if (numIterations > maxIterations) break;
-					numIterations += 1;
+			do {
+				if (numIterations > maxIterations) break;
+				numIterations += 1;
+				formCTX.countIterations(1);
+
+				if (!(iter instanceof Iterable<?>)) {
+					throw new IllegalFormatConversionException(DIR_NAME,
+							iter.getClass());
+				}
 
-					if (!(iter instanceof Iterable<?>)) {
-						throw new IllegalFormatConversionException(DIR_NAME,
-								iter.getClass());
-					}
+				@SuppressWarnings("unchecked")
+				Iterable<Object> nitr    = (Iterable<Object>) iter;
+				Tape<Object>     nParams = new SingleTape<>(nitr);
 
-					@SuppressWarnings("unchecked")
-					Iterable<Object> nitr    = (Iterable<Object>) iter;
-					Tape<Object>     nParams = new SingleTape<>(nitr);
-
-					try {
-						if (usingString) {
-							// @Speed @Memory :DynamicFormatString
-							// For a speed/memory tradeoff here, we could be compiling
-							// strang into a
-							// CLString and then caching those compiled string. However,
-							// we aren't
-							// doing that now. -- ben, 12/17/19
-							fmt.doFormatString(currBody, formCTX.writer, nParams, false);
-						} else {
-							body.format(formCTX.writer, nParams);
-						}
-					} catch (DirectiveEscape eex) {
-						if (eex.endIteration) {
-							if (formCTX.items.atEnd()) throw eex;
-						}
-					}
+				FormatContext nCTX = formCTX.withItems(nParams);
 
-					formCTX.items.right();
-					iter = formCTX.items.item();
-				} while (formCTX.items.position() < formCTX.items.size());
-			} catch (DirectiveEscape eex) {
-				// Do nothing
-			}
+				if (usingString) {
+					// :DynamicFormatString
+					currBody.formatInto(nCTX, false);
+				} else {
+					body.formatInto(nCTX);
+				}
+
+				if (formCTX.isEscaping()) {
+					boolean endIteration = formCTX.isEndingIteration();
+
+					formCTX.clearEscape();
+
+					if (endIteration && formCTX.items.atEnd()) break;
+				}
+
+				formCTX.items.right();
+				iter = formCTX.items.item();
+			} while (!formCTX.items.atEnd());
 			break;
 		case ALL:
-			try {
-				while (!formCTX.items.atEnd()) {
-					if (numIterations > maxIterations) break;
+			while (!formCTX.items.atEnd()) {
+				if (numIterations > maxIterations) break;
 
-					numIterations += 1;
+				numIterations += 1;
+				formCTX.countIterations(1);
 
-					if (usingString) {
-						// :DynamicFormatString
-						fmt.doFormatString(currBody, formCTX.writer, formCTX.items, false);
-					} else {
-						body.format(formCTX);
-					}
+				if (usingString) {
+					// :DynamicFormatString
+					currBody.formatInto(formCTX, false);
+				} else {
+					body.formatInto(formCTX);
+				}
+
+				if (formCTX.isEscaping()) {
+					endAllIteration(formCTX);
+					break;
 				}
-			} catch (DirectiveEscape eex) {
-				if (eex.endIteration)
-					throw new UnsupportedOperationException(
-							"Colon mod not allowed on escape marker without colon mod on iteration");
 			}
 			break;
-		case SUBLIST:
+		case SUBLIST: {
 			if (!(iter instanceof Iterable<?>)) {
 				throw new IllegalFormatConversionException(DIR_NAME, iter.getClass());
 			}
 
-			try {
-				@SuppressWarnings("unchecked")
-				Iterable<Object> itb = (Iterable<Object>) iter;
-				Iterator<Object> itr = itb.iterator();
-				while (itr.hasNext()) {
-					Object obj = itr.next();
+			@SuppressWarnings("unchecked")
+			Iterable<Object> itb = (Iterable<Object>) iter;
 
-					if (numIterations > maxIterations) break;
-					numIterations += 1;
+			// There's no point splitting things up with only one thread to
+			// run them on
+			boolean useParallel = parallelThreshold > 0 && pool.getParallelism() > 1
+					&& canSplitOutput(formCTX.writer);
 
-					if (!(obj instanceof Iterable<?>)) {
-						throw new IllegalFormatConversionException(DIR_NAME,
-								obj.getClass());
-					}
+			if (useParallel) {
+				List<Object> sublists = takeSublists(itb, maxIterations);
 
-					@SuppressWarnings("unchecked")
-					Iterable<Object> nitr = (Iterable<Object>) obj;
-					Tape<Object> nParams = new SingleTape<>(nitr);
-
-					try {
-						if (usingString) {
-							// :DynamicString
-							fmt.doFormatString(currBody, formCTX.writer, nParams, false);
-						} else {
-							body.format(formCTX.writer, nParams);
-						}
-					} catch (DirectiveEscape eex) {
-						if (eex.endIteration && !itr.hasNext()) throw eex;
-					}
+				if (sublists.size() >= parallelThreshold) {
+					formatParallel(formCTX, sublists);
+					break;
 				}
-			} catch (DirectiveEscape eex) {
-				// Do nothing
+
+				itb = sublists;
 			}
+
+			formatSublists(formCTX, itb.iterator(), maxIterations, currBody, usingString);
+		}
 			break;
-		case NORMAL:
+		case NORMAL: {
 			if (!(iter instanceof Iterable<?>)) {
 				throw new IllegalFormatConversionException(DIR_NAME, iter.getClass());
 			}
 
-			try {
-				@SuppressWarnings("unchecked")
-				Iterable<Object> itr = (Iterable<Object>) iter;
-				Tape<Object> nParams = new SingleTape<>(itr);
-
-				while (!nParams.atEnd()) {
-					if (numIterations > maxIterations) break;
-					numIterations += 1;
-
-					if (usingString) {
-						// :DynamicString
-						fmt.doFormatString(currBody, formCTX.writer, nParams, false);
-					} else {
-						body.format(formCTX.writer, nParams);
-					}
+			@SuppressWarnings("unchecked")
+			Iterable<Object> itr = (Iterable<Object>) iter;
+			Tape<Object> nParams = new SingleTape<>(itr);
+
+			FormatContext nCTX = formCTX.withItems(nParams);
+
+			while (!nParams.atEnd()) {
+				if (numIterations > maxIterations) break;
+				numIterations += 1;
+				formCTX.countIterations(1);
+
+				if (usingString) {
+					// :DynamicFormatString
+					currBody.formatInto(nCTX, false);
+				} else {
+					body.formatInto(nCTX);
+				}
+
+				if (formCTX.isEscaping()) {
+					endAllIteration(formCTX);
+					break;
 				}
-			} catch (DirectiveEscape eex) {
-				if (eex.endIteration)
-					throw new UnsupportedOperationException(
-							"Colon mod not allowed on escape marker without colon mod on iteration");
 			}
+		}
 			break;
 		default:
 			throw new IllegalArgumentException("Unimplemented iteration mode " + mode);
 		}
 
-		formCTX.items.right();
+		// ~@{ takes its items straight from ours, so it has already moved past
+		// everything it used.
+		if (mode != Mode.ALL) formCTX.items.right();
+	}
+
+	// Format a set of sublists one after another
+	private void formatSublists(FormatContext formCTX, Iterator<Object> itr,
+			int maxIterations, CLString currBody, boolean usingString) throws IOException {
+		int numIterations = 0;
+
+		while (itr.hasNext()) {
+			Object obj = itr.next();
+
+			if (numIterations > maxIterations) break;
+			numIterations += 1;
+			formCTX.countIterations(1);
+
+			if (!(obj instanceof Iterable<?>)) {
+				throw new IllegalFormatConversionException(DIR_NAME, obj.getClass());
+			}
+
+			@SuppressWarnings("unchecked")
+			Iterable<Object> nitr = (Iterable<Object>) obj;
+			Tape<Object> nParams = new SingleTape<>(nitr);
+
+			FormatContext nCTX = formCTX.withItems(nParams);
+
+			if (usingString) {
+				// :DynamicFormatString
+				currBody.formatInto(nCTX, false);
+			} else {
+				body.formatInto(nCTX);
+			}
+
+			if (formCTX.isEscaping()) {
+				boolean endIteration = formCTX.isEndingIteration();
+
+				formCTX.clearEscape();
+
+				if (endIteration && !itr.hasNext()) break;
+			}
+		}
+	}
+
+	/*
+	 * Check if output written to separate buffers and then copied to a writer
+	 * comes out the same as if it was written to the writer directly.
+	 *
+	 * A writer that is indenting prints the indentation at the start of each
+	 * write that follows a newline, and one with extra line spacing repeats
+	 * newlines, which nested directives that buffer their output (like ~( )
+	 * end up doing twice. Neither of those happen with the defaults.
+	 */
+	private static boolean canSplitOutput(ReportWriter writer) {
+		return writer.getLevel() == 0 && writer.getLineSpacing() == 1;
+	}
+
+	// Get the sublists that would be formatted, in order
+	private static List<Object> takeSublists(Iterable<Object> itb, int maxIterations) {
+		// Iteration stops once it has done one more than the maximum
+		long limit = (long) maxIterations + 1;
+
+		List<Object> sublists = new ArrayList<>();
+
+		for (Object obj : itb) {
+			if (sublists.size() >= limit) break;
+
+			sublists.add(obj);
+		}
+
+		return sublists;
+	}
+
+	/*
+	 * Format a set of sublists in parallel.
+	 *
+	 * The sublists are split into chunks, each of which is formatted into its
+	 * own buffer on the pool. The buffers are written out in order as the
+	 * chunks finish, so the output is the same as formatting the sublists one
+	 * at a time, up to and including the point where something fails.
+	 *
+	 * The chunks share the limits of the format, so they stop as soon as
+	 * between them they go over a limit, not once they are joined.
+	 */
+	private void formatParallel(FormatContext formCTX, List<Object> sublists)
+			throws IOException {
+		int numChunks = Math.min(sublists.size(),
+				pool.getParallelism() * CHUNKS_PER_THREAD);
+
+		List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(numChunks);
+
+		for (int i = 0; i < numChunks; i++) {
+			int start = (int) ((long) sublists.size() * i / numChunks);
+			int end   = (int) ((long) sublists.size() * (i + 1) / numChunks);
+
+			// Set the chunk up here, since the writer it copies its settings
+			// from is written to while the chunks run.
+			Chunk chunk = new Chunk(formCTX, sublists.subList(start, end));
+
+			tasks.add(pool.submit(chunk::format));
+		}
+
+		for (int i = 0; i < numChunks; i++) {
+			Chunk chunk = tasks.get(i).join();
+
+			if (chunk.failure != null) {
+				for (int j = i + 1; j < numChunks; j++) tasks.get(j).cancel(false);
+
+				chunk.buffer.writeTo(formCTX.writer);
+
+				chunk.rethrow();
+			}
+
+			formCTX.joinFork(chunk.chunkCTX, chunk.buffer);
+		}
+	}
+
+	/*
+	 * A run of sublists, formatted into a buffer of its own.
+	 */
+	private final class Chunk {
+		final StringBuilderWriter buffer;
+
+		final FormatContext chunkCTX;
+
+		final List<Object> sublists;
+
+		// What went wrong formatting this chunk, if anything
+		Throwable failure;
+
+		Chunk(FormatContext formCTX, List<Object> sublists) {
+			this.buffer   = new StringBuilderWriter();
+			this.chunkCTX = formCTX.fork(formCTX.writer.duplicate(buffer));
+
+			this.sublists = sublists;
+		}
+
+		Chunk format() {
+			try {
+				formatSublists(chunkCTX, sublists.iterator(), Integer.MAX_VALUE, body,
+						false);
+			} catch (IOException | RuntimeException | Error ex) {
+				// Hold onto this until everything before it is written out
+				failure = ex;
+			}
+
+			return this;
+		}
+
+		void rethrow() throws IOException {
+			if (failure instanceof IOException)      throw (IOException) failure;
+			if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+
+			throw (Error) failure;
+		}
+	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		// Bodies that come from the items could contain anything
+		return !body.isEmpty() && body.isPositionIndependent();
+	}
+
+	@Override
+	public boolean isParallel() {
+		return parallelThreshold > 0 || body.isParallel();
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		long maxIterations = FormatAnalysis.valueOf(maxItrVal, Integer.MAX_VALUE);
+
+		boolean isBounded = maxIterations < Integer.MAX_VALUE;
+
+		// Iteration stops once it has done one more than the maximum
+		long times = isBounded ? maxIterations + 1 : FormatAnalysis.UNBOUNDED_OUTPUT;
+
+		int args = FormatAnalysis.argumentsFor(maxItrVal);
+
+		FormatAnalysis bod;
+		if (body.isEmpty()) {
+			// The body is one of the arguments
+			args += 1;
+
+			bod = FormatAnalysis.unknown(FormatAnalysis.Hazard.DYNAMIC_FORMAT);
+		} else {
+			bod = body.analyze(itemWidth);
+		}
+
+		FormatAnalysis loop = bod.contained().repeated(times);
+		if (!isBounded) loop = loop.withHazard(FormatAnalysis.Hazard.UNBOUNDED_ITERATION);
+
+		if (mode == Mode.ALL) {
+			// The body uses our arguments, and stops when they run out
+			loop = loop.withArguments(Math.min(0, loop.getMinArguments()),
+					loop.getMaxArguments());
+
+			return FormatAnalysis.of(args, 0).then(loop);
+		}
+
+		// Everything else uses the items of a single argument
+		return loop.withArguments(args + 1, args + 1);
+	}
+
+	// Handle an escape from a mode which iterates over all of its items at once
+	private static void endAllIteration(FormatContext formCTX) {
+		boolean endIteration = formCTX.isEndingIteration();
+
+		formCTX.clearEscape();
+
+		if (endIteration) {
+			throw new UnsupportedOperationException(
+					"Colon mod not allowed on escape marker without colon mod on iteration");
+		}
 	}
 }
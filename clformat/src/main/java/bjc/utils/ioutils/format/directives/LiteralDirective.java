@@ -11,7 +11,7 @@ import bjc.utils.ioutils.format.*;
  *
  */
 public class LiteralDirective implements Directive {
-	private String lit;
+	private final String lit;
 
 	/**
 	 * Create a new literal directive.
@@ -46,8 +46,12 @@ public class LiteralDirective implements Directive {
  * Compiled version of the directive.
  */
 class LiteralEdict implements Edict {
-	private String lit;
-	private CLValue nTimes;
+	// The longest text a constant count will be folded into; past this, the
+	// text is printed when the edict is run instead of being built up front.
+	private static final int MAX_CONSTANT_LENGTH = 4096;
+
+	private final String lit;
+	private final CLValue nTimes;
 
 	public LiteralEdict(String lit, CLValue nTimes) {
 		this.lit = lit;
@@ -63,6 +67,38 @@ class LiteralEdict implements Edict {
 			num = nTimes.asInt(formCTX.items, "occurance count", "literal", 1);
 		}
 
+		formCTX.checkOutput((long) lit.length() * Math.max(0, num));
+
 		for (int i = 0; i < num; i++) formCTX.writer.write(lit);
 	}
+
+	@Override
+	public String getConstantText() {
+		if (nTimes == null) return lit;
+		if (!nTimes.isConstant()) return null;
+
+		try {
+			int num = Math.max(0, nTimes.asInt(null, "occurance count", "literal", 1));
+
+			if ((long) lit.length() * num > MAX_CONSTANT_LENGTH) return null;
+
+			return lit.repeat(num);
+		} catch (IllegalArgumentException iaex) {
+			// Leave the error for when the edict is actually used
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		long num = FormatAnalysis.valueOf(nTimes, 1);
+
+		return FormatAnalysis.of(FormatAnalysis.argumentsFor(nTimes),
+				FormatAnalysis.mulOutput(lit.length(), num));
+	}
 }
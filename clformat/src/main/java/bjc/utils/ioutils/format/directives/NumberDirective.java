@@ -32,10 +32,10 @@ public class NumberDirective extends GeneralNumberDirective {
 		this.directive = directive;
 	}
 
-	private int argidx;
-	private int radix;
+	private final int argidx;
+	private final int radix;
 
-	private char directive;
+	private final char directive;
 
 	@Override
 	public Edict compile(CompileContext compCTX) {
@@ -46,10 +46,10 @@ public class NumberDirective extends GeneralNumberDirective {
 }
 
 class NumberEdict implements Edict {
-	private int radix;
-	private String directive;
+	private final int radix;
+	private final String directive;
 
-	private NumberParams np;
+	private final NumberParams np;
 
 	public NumberEdict(int radix, char directive, int argidx, NumberParams np) {
 		this.radix = radix;
@@ -76,22 +76,36 @@ class NumberEdict implements Edict {
 
 		boolean signed = np.signed;
 
-		String res;
+		int commaInterval = 0;
+		char commaChar    = ',';
 
 		if (np.commaMode) {
-			char commaChar = np.commaChar.asChar(formCTX.items, "comma character",
+			commaChar = np.commaChar.asChar(formCTX.items, "comma character",
 					directive, ',');
-			int commaInterval = np.commaInterval.asInt(formCTX.items, "comma interval",
+			commaInterval = np.commaInterval.asInt(formCTX.items, "comma interval",
 					directive, 0);
-
-			res = NumberUtils.toCommaString(val, mincol, padchar, commaInterval,
-					commaChar, signed, radix);
-		} else {
-			res = NumberUtils.toNormalString(val, mincol, padchar, signed, radix);
 		}
 
-		formCTX.writer.write(res);
+		// Build the number in place, so printing it doesn't allocate anything
+		formCTX.checkOutput(mincol);
+
+		char[] buf = formCTX.getChars(Math.max(mincol, NumberUtils.MAX_COMMA_LENGTH));
+
+		int start = NumberUtils.toCommaChars(val, mincol, padchar, commaInterval,
+				commaChar, signed, radix, buf);
+
+		formCTX.writer.write(buf, start, buf.length - start);
 
 		formCTX.items.right();
 	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		return np.analyze(1, NumberUtils.MAX_COMMA_LENGTH);
+	}
 }
@@ -52,13 +52,13 @@ class RadixEdict implements Edict {
 		NORMAL, ROMAN, ORDINAL, CARDINAL
 	}
 
-	private Mode mode;
+	private final Mode mode;
 
-	private CLValue radixVal;
+	private final CLValue radixVal;
 
-	private NumberParams np;
+	private final NumberParams np;
 
-	private boolean isClassic;
+	private final boolean isClassic;
 
 	public RadixEdict(Mode mode, CLValue radix, NumberParams np, boolean isClassic) {
 		this.mode = mode;
@@ -66,6 +66,8 @@ class RadixEdict implements Edict {
 		this.radixVal = radix;
 
 		this.np = np;
+
+		this.isClassic = isClassic;
 	}
 
 	@Override
@@ -80,16 +82,15 @@ class RadixEdict implements Edict {
 
 		long val = ((Number) item).longValue();
 
-		String res;
 		switch (mode) {
 		case ROMAN:
-			res = NumberUtils.toRoman(val, isClassic);
+			NumberUtils.appendRoman(val, isClassic, formCTX.writer);
 			break;
 		case ORDINAL:
-			res = NumberUtils.toOrdinal(val);
+			NumberUtils.appendOrdinal(val, formCTX.writer);
 			break;
 		case CARDINAL:
-			res = NumberUtils.toCardinal(val);
+			NumberUtils.appendCardinal(val, null, formCTX.writer);
 			break;
 		case NORMAL: {
 			int radix    = radixVal.asInt(formCTX.items, "radix", "R", 10);
@@ -98,18 +99,23 @@ class RadixEdict implements Edict {
 
 			boolean signed = np.signed;
 
+			int commaInterval = 0;
+			char commaChar    = ',';
+
 			if (np.commaMode) {
-				char commaChar
-						= np.commaChar.asChar(formCTX.items, "comma character", "R", ',');
-				int commaInterval
+				commaChar = np.commaChar.asChar(formCTX.items, "comma character", "R", ',');
+				commaInterval
 						= np.commaInterval.asInt(formCTX.items, "comma interval", "R", 0);
-
-				res = NumberUtils.toCommaString(val, mincol, padchar, commaInterval,
-						commaChar, signed, radix);
-			} else {
-				res = NumberUtils.toNormalString(val, mincol, padchar, signed, radix);
 			}
 
+			formCTX.checkOutput(mincol);
+
+			char[] buf = formCTX.getChars(Math.max(mincol, NumberUtils.MAX_COMMA_LENGTH));
+
+			int start = NumberUtils.toCommaChars(val, mincol, padchar, commaInterval,
+					commaChar, signed, radix, buf);
+
+			formCTX.writer.write(buf, start, buf.length - start);
 			break;
 		}
 
@@ -117,8 +123,27 @@ class RadixEdict implements Edict {
 			throw new IllegalArgumentException("Unsupported radix mode " + mode);
 		}
 
-		formCTX.writer.write(res);
-
 		formCTX.items.right();
 	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		switch (mode) {
+		case ROMAN:
+			// Big numbers turn into a lot of Ms
+			return FormatAnalysis.of(1, FormatAnalysis.UNBOUNDED_OUTPUT);
+		case ORDINAL:
+		case CARDINAL:
+			// Longer than the words for any number we can print
+			return FormatAnalysis.of(1, 256);
+		default:
+			return np.analyze(1 + FormatAnalysis.argumentsFor(radixVal),
+					NumberUtils.MAX_COMMA_LENGTH);
+		}
+	}
 }
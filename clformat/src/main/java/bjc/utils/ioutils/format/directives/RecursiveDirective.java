@@ -20,9 +20,9 @@ public class RecursiveDirective implements Directive {
 }
 
 class RecursiveEdict implements Edict {
-	private boolean isInline;
+	private final boolean isInline;
 
-	private CLFormatter fmt;
+	private final CLFormatter fmt;
 
 	public RecursiveEdict(boolean isInline, CLFormatter fmt) {
 		this.isInline = isInline;
@@ -34,6 +34,16 @@ class RecursiveEdict implements Edict {
 	public void format(FormatContext formCTX) throws IOException {
 		// System.err.printf("[TRACE] Processing ? directive with params: " +
 		// formCTX.items.toString());
+		formCTX.enterRecursion();
+
+		try {
+			formatBody(formCTX);
+		} finally {
+			formCTX.exitRecursion();
+		}
+	}
+
+	private void formatBody(FormatContext formCTX) throws IOException {
 		Object body = formCTX.items.item();
 
 		formCTX.items.right();
@@ -43,13 +53,12 @@ class RecursiveEdict implements Edict {
 				throw new MismatchedFormatArgType("?", String.class, body.getClass());
 			}
 
-			try {
-				String bod = (String) body;
+			String bod = (String) body;
 
-				fmt.doFormatString(bod, formCTX.writer, formCTX.items, true);
-			} catch (DirectiveEscape eex) {
-				if (eex.endIteration) throw new UnexpectedColonEscape();
-			}
+			// :DynamicFormatString
+			//
+			// Escapes in the body only end the body.
+			fmt.compileBody(bod).formatInto(formCTX);
 		} else {
 			if (formCTX.items.atEnd()) {
 				throw new IllegalArgumentException(
@@ -71,14 +80,28 @@ class RecursiveEdict implements Edict {
 			Iterable<Object> itb = (Iterable<Object>) item;
 			Tape<Object> newParams = new SingleTape<>(itb);
 
-			try {
-				String bod = (String) body;
+			String bod = (String) body;
 
-				// :DynamicString
-				fmt.doFormatString(bod, formCTX.writer, newParams, true);
-			} catch (DirectiveEscape eex) {
-				throw new UnexpectedColonEscape();
-			}
+			// :DynamicFormatString
+			//
+			// Escapes in the body only end the body.
+			FormatContext newCTX = formCTX.withItems(newParams);
+
+			fmt.compileBody(bod).formatInto(newCTX);
+		}
+	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		FormatAnalysis res = FormatAnalysis.unknown(FormatAnalysis.Hazard.DYNAMIC_FORMAT)
+				.withHazard(FormatAnalysis.Hazard.UNBOUNDED_RECURSION);
+
+		// The body and its arguments are used up, and an inline body can use
+		// any number of our arguments past that.
+		if (isInline) {
+			return res.withArguments(1, FormatAnalysis.UNBOUNDED_ARGUMENTS);
+		} else {
+			return res.contained().withArguments(2, 2);
 		}
 	}
 }
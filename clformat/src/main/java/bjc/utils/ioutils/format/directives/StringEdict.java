@@ -8,7 +8,7 @@ import java.io.*;
  * @author Ben Culkin
  */
 public class StringEdict implements Edict {
-	private String val;
+	private final String val;
 
 	/**
 	 * Create a new string edict for a given string.
@@ -24,4 +24,14 @@ public class StringEdict implements Edict {
 	public void format(FormatContext formCTX) throws IOException {
 		formCTX.writer.write(val);
 	}
+
+	@Override
+	public String getConstantText() {
+		return val;
+	}
+
+	@Override
+	public boolean isPositionIndependent() {
+		return true;
+	}
 }
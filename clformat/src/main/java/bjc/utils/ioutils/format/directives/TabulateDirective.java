@@ -50,11 +50,11 @@ public class TabulateDirective implements Directive {
 }
 
 class TabulateEdict implements Edict {
-	private boolean isRelative;
-	private boolean fromIndent;
+	private final boolean isRelative;
+	private final boolean fromIndent;
 
-	private CLValue colincVal;
-	private CLValue colidVal;
+	private final CLValue colincVal;
+	private final CLValue colidVal;
 
 	public TabulateEdict(boolean isRelative, CLValue colinc, boolean fromIndent,
 			CLValue colid) {
@@ -83,6 +83,8 @@ class TabulateEdict implements Edict {
 			int colinc = colincVal.asInt(itms, "column increment", "T", 1);
 			int colrel = colidVal.asInt(itms, "relative column number", "T", 1);
 
+			formCTX.checkOutput((long) Math.max(0, colrel) + Math.max(0, colinc));
+
 			for (int i = 0; i < colrel; i++) writer.write(padchar);
 
 			int nSpaces = 0;
@@ -97,6 +99,8 @@ class TabulateEdict implements Edict {
 			int colnum = colidVal.asInt(itms, "column number", "T", 1);
 
 			if (currCol < colnum) {
+				formCTX.checkOutput(colnum - currCol);
+
 				for (int i = currCol; i < colnum; i++) writer.write(padchar);
 			} else {
 				if (colinc == 0) return;
@@ -111,4 +115,17 @@ class TabulateEdict implements Edict {
 			}
 		}
 	}
+
+	@Override
+	public FormatAnalysis analyze(int itemWidth) {
+		long colinc = FormatAnalysis.valueOf(colincVal, 1);
+		long colid  = FormatAnalysis.valueOf(colidVal, 1);
+
+		// Relative tabs print colid spaces, and then up to colinc more to line
+		// things up; absolute ones never print more than colid.
+		long output = isRelative ? FormatAnalysis.addOutput(colid, colinc) : colid;
+
+		return FormatAnalysis.of(FormatAnalysis.argumentsFor(colincVal, colidVal),
+				output);
+	}
 }
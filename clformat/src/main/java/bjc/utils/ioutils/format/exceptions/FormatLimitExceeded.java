@@ -0,0 +1,21 @@
+package bjc.utils.ioutils.format.exceptions;
+
+/**
+ * Exception thrown when formatting something goes over one of the limits set
+ * for it.
+ *
+ * @author Ben Culkin
+ */
+public class FormatLimitExceeded extends RuntimeException {
+	private static final long serialVersionUID = 2467960203571465308L;
+
+	/**
+	 * Create a new exception with a given message.
+	 *
+	 * @param msg
+	 *            The message for the exception.
+	 */
+	public FormatLimitExceeded(String msg) {
+		super(msg);
+	}
+}
@@ -1,6 +1,19 @@
 package bjc.utils.test.ioutils;
 
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import bjc.esodata.SingleTape;
+import bjc.utils.ioutils.ReportWriter;
 import bjc.utils.ioutils.format.*;
+import bjc.utils.ioutils.format.directives.*;
+import bjc.utils.ioutils.format.exceptions.*;
+import bjc.utils.math.NumberUtils;
 
 import org.junit.Test;
 
@@ -34,6 +47,9 @@ public class CLFormatterTest {
 		assertEquals("  5", format("~3D", 5));
 		assertEquals("005", format("~3,'0D", 5));
 		assertEquals("6|55|35", format("~,,'|,2:D", 0xFFFF));
+		assertEquals("   +12,345", format("~10,,,3@:D", 12345));
+		assertEquals("-9,223,372,036,854,775,808", format("~,,,3:D", Long.MIN_VALUE));
+		assertEquals("-FF", format("~X", -255));
 	}
 
 	@Test
@@ -77,6 +93,9 @@ public class CLFormatterTest {
 
 		assertEquals("Pairs: (1, 1) (2, 2) (3, 3).", format("Pairs:~:@{ (~S, ~S)~}.",
 				asList(1, 1), asList(2, 2), asList(3, 3)));
+
+		// The items ~@{ doesn't get to are left for the directives after it
+		assertEquals(format("~1@{~A~}", 1, 2, 3) + "3", format("~1@{~A~}~A", 1, 2, 3));
 	}
 
 	@Test
@@ -88,6 +107,29 @@ public class CLFormatterTest {
 		assertEquals("<Foo 5> 14", format("~@? ~D", "<~A ~D>", "Foo", 5, 14, 7));
 	}
 
+	@Test
+	public void testDynamicBodyPrinting() throws IOException {
+		CLFormatter dynFmt = new CLFormatter();
+
+		assertEquals("<1><2><3>", dynFmt.formatString("~{~}", "<~A>", asList(1, 2, 3)));
+		assertEquals("1, 2, 3", dynFmt.formatString("~{~}", "~A~^, ", asList(1, 2, 3)));
+		assertEquals("<1><2>", dynFmt.formatString("~{~}", "<~A>", asList(1, 2)));
+
+		// The outer string and the bodies are each compiled once, into
+		// separate caches.
+		assertEquals("Strings are compiled once", 1, dynFmt.getFormatCache().getMisses());
+		assertEquals("Bodies are compiled once", 2, dynFmt.getBodyCache().getMisses());
+
+		// Bodies from arguments don't push format strings out of the cache
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i + "1", dynFmt.formatString("~@?", i + "~A", 1));
+		}
+
+		assertEquals("Bodies don't evict format strings", 2,
+				dynFmt.getFormatCache().getMisses());
+		assertTrue("Body cache stays bounded", dynFmt.getBodyCache().size() <= 32);
+	}
+
 	@Test
 	public void testEscapePrinting() {
 		assertEquals("Done.", format("Done.~^ ~D warning.~^ ~D error."));
@@ -101,6 +143,14 @@ public class CLFormatterTest {
 		assertEquals("XIV xiv", format("~@R ~(~@R~)", 14, 14));
 	}
 
+	@Test
+	public void testOldRomanPrinting() {
+		// ~:@R prints old Roman numerals, which don't subtract
+		assertEquals("IV IX XIV XL", format("~@R ~@R ~@R ~@R", 4, 9, 14, 40));
+		assertEquals("IIII VIIII XIIII XXXX", format("~:@R ~:@R ~:@R ~:@R", 4, 9, 14, 40));
+		assertEquals("MCMXCIX MDCCCCLXXXXVIIII", format("~@R ~:@R", 1999, 1999));
+	}
+
 //	@Test
 	public void testListPrinting() {
 		// Test printing a list
@@ -108,9 +158,9 @@ public class CLFormatterTest {
 //		String fmtStr
 //				= "Items:~#[ none~; ~A~; ~A and ~A~:;~@{~#*[ ~A,~; and ~A~; ~A~]~}~].";
 
-		fmt.DEBUG = true;
+		fmt.setDebug(true);
 		assertEquals("Items: none.", format(fmtStr));
-		fmt.DEBUG = false;
+		fmt.setDebug(false);
 
 		assertEquals("Items: foo.", format(fmtStr, "foo"));
 		assertEquals("Items: foo and bar.", format(fmtStr, "foo", "bar"));
@@ -150,6 +200,633 @@ public class CLFormatterTest {
 				format("~D dog~:[s are~; is~] here", 3, 3 == 1));
 	}
 
+	@Test
+	public void testFormatCache() throws IOException {
+		CLFormatter cacheFmt = new CLFormatter();
+		CLFormatCache cache = cacheFmt.getFormatCache();
+
+		assertEquals("5 dogs", cacheFmt.formatString("~D dogs", 5));
+		assertEquals("7 dogs", cacheFmt.formatString("~D dogs", 7));
+
+		assertEquals("First use is a miss", 1, cache.getMisses());
+		assertEquals("Second use is a hit", 1, cache.getHits());
+
+		cache.setMaxSize(1);
+		assertEquals("cats", cacheFmt.formatString("cats"));
+		assertEquals("Full cache evicts", 1, cache.getEvictions());
+		assertEquals("Cache stays bounded", 1, cache.size());
+
+		cache.setEnabled(false);
+		assertEquals("9 dogs", cacheFmt.formatString("~D dogs", 9));
+		assertEquals("Disabled cache holds nothing", 0, cache.size());
+		assertEquals("Disabled cache doesn't count", 2, cache.getMisses());
+	}
+
+	@Test
+	public void testChannelOutput() throws IOException {
+		CLString strang = fmt.compile("~{~A~}");
+
+		List<Object> words = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) words.add("\u00e9t\u00e9 ");
+
+		String expected = strang.format(words);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		strang.format(Channels.newChannel(bytes), words);
+
+		assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+		ByteBuffer buf = ByteBuffer.allocate(16);
+		strang.format(buf, asList("\u00e9", "t\u00e9"));
+		buf.flip();
+
+		assertEquals("\u00e9t\u00e9", StandardCharsets.UTF_8.decode(buf).toString());
+	}
+
+	@Test
+	public void testNestedCaseConversion() {
+		assertFormat("Foo-BAR baz_qux", "~@(~A~)-~:@(~A~) ~(~A~)", "foo", "bar", "BAZ_QUX");
+		assertFormat("Hello World 2nd", "~:(~A~)", "hello world 2nd");
+		assertFormat("[A b][C d]", "~{[~@(~A ~A~)]~}", asList("a", "b", "c", "d"));
+		assertFormat("STRASSE \u00c9T\u00c9", "~:@(~A ~A~)", "stra\u00dfe", "\u00e9t\u00e9");
+	}
+
+	@Test
+	public void testFrozenIsImmutable() {
+		CLFormatter frozen = fmt.freeze();
+
+		assertTrue(frozen.isFrozen());
+		assertFalse(fmt.isFrozen());
+		assertSame(frozen, frozen.freeze());
+
+		try {
+			frozen.setDebug(true);
+			fail("Frozen formatters shouldn't be changeable");
+		} catch (IllegalStateException isex) {
+			// Expected
+		}
+
+		String[] formats = {
+				"~10,2,1,'*A ~:@C ~8,'0D ~:B ~16,8,'0R ~@R ~:R ~R",
+				"~{~A~^, ~} ~:{[~A ~A]~} ~@{~A~} ~:@{~A~}",
+				"~[zero~;one~:;many~] ~:[no~;yes~] ~@[~A~] ~? ~@?",
+				"~:@(~A~) ~(~A~) ~`[~A~`] ~3T~% ~& ~| ~~ ~* ~:* ~`D",
+		};
+
+		for (String format : formats) {
+			CLString strang = fmt.compileFrozen(format);
+
+			assertTrue(strang.isFrozen());
+			assertFalse(fmt.compile(format).isFrozen());
+
+			assertImmutable(strang, new IdentityHashMap<>());
+		}
+	}
+
+	@Test
+	public void testFrozenConcurrentFormat() throws Exception {
+		CLString strang = fmt.compileFrozen("~A: ~{~:(~A~)~^, ~} ~8,'0D ~@R");
+
+		int numThreads = 8;
+		int numRounds  = 500;
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+
+			for (int i = 0; i < numThreads; i++) {
+				final int thread = i;
+
+				results.add(pool.submit(() -> {
+					for (int j = 0; j < numRounds; j++) {
+						int val = thread * numRounds + j + 1;
+
+						String expected = String.format("T%d: Foo, Bar %08d %s",
+								thread, val, format("~@R", val));
+						String actual = strang.format("T" + thread,
+								asList("foo", "bar"), val, val);
+
+						if (!expected.equals(actual)) return false;
+					}
+
+					return true;
+				}));
+			}
+
+			for (Future<Boolean> res : results) assertTrue(res.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testNestedGroups() {
+		// Conditionals inside of conditionals
+		assertFormat("y", "~[a~;~[x~;y~]~;b~]", 1, 1);
+		assertFormat("b", "~[a~;~[x~;y~]~;b~]", 2);
+
+		String englishList
+				= "~#[ none~; ~A~; ~A and ~A~:;~@{~#*[ ~A,~; and ~A~; ~A~]~}~]";
+
+		assertFormat(" none", englishList);
+		assertFormat(" a and b", englishList, "a", "b");
+		assertFormat(" a, b, c and d", englishList, "a", "b", "c", "d");
+
+		// Iterations inside of iterations
+		assertFormat("12|3|", "~{~{~A~}|~}", asList(asList(1, 2), asList(3)));
+		assertFormat("1,2;3;", "~:{~{~A~^,~};~}",
+				asList(asList(asList(1, 2)), asList(asList(3))));
+	}
+
+	@Test
+	public void testExampleTemplates() {
+		// These are the templates from example-format-strings.sprop
+		String dumpHexOutput = "~:{~8,'0X: ~2{~8@{~#[     ~:;~2,'0X ~]~}  ~}~v@{  ~}"
+				+ "~2{~8@{~A~} ~}~1%~}";
+
+		List<Object> rows = asList(asList(16, asList(0x41, 0x42), 14, asList('A', 'B')));
+
+		String dump = format(dumpHexOutput, rows);
+
+		assertTrue(dump, dump.startsWith("00000010: 41 42 "));
+		assertTrue(dump, dump.endsWith("AB \n"));
+
+		// A bare ~% before another directive takes % as a parameter
+		String bare = format(dumpHexOutput.replace("~1%", "~%"), rows);
+
+		assertTrue(bare, bare.endsWith("~}"));
+
+		String abbrevList = "~#,[NONE~;~A~;~A and ~A~:;~A, ~A~]~#,[~; and ~A~:;, ~A, etc~]";
+
+		assertFormat("NONE", abbrevList);
+		assertFormat("a and b", abbrevList, "a", "b");
+		assertFormat("a, b and c", abbrevList, "a", "b", "c");
+		assertFormat("a, b, c, etc", abbrevList, "a", "b", "c", "d");
+	}
+
+	@Test
+	public void testParallelIteration() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			CLFormatter parFmt = new CLFormatter();
+			parFmt.setParallelIteration(2, pool);
+
+			String body = "~:{~A~^: ~:(~A~)~[ zero~; one~:; many~]\t~1%~}";
+
+			List<Object> rows = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				if (i % 7 == 0) rows.add(asList("short " + i));
+				else            rows.add(asList("row " + i, "name " + i, i % 3));
+			}
+
+			CLString sequential = fmt.compile(body);
+			CLString parallel   = parFmt.compile(body);
+
+			assertFalse(sequential.isParallel());
+			assertTrue(parallel.isParallel());
+
+			assertEquals(sequential.format(rows), parallel.format(rows));
+
+			// Bodies that depend on where they are in the output aren't split up
+			assertFalse(parFmt.compile("~:{~A~10T~A~%~}").isParallel());
+			assertFalse(parFmt.compile("~:{~A~&~}").isParallel());
+			assertFalse(parFmt.compile("~:{~A~?~}").isParallel());
+
+			// A failure comes after the same output it would have otherwise
+			rows.set(600, "not a list");
+
+			StringWriter seqOut = new StringWriter();
+			StringWriter parOut = new StringWriter();
+
+			try {
+				sequential.format(new ReportWriter(seqOut), rows);
+				fail("Formatted a sublist that isn't a list");
+			} catch (IllegalFormatConversionException ifcex) {
+				// Expected
+			}
+
+			try {
+				parallel.format(new ReportWriter(parOut), rows);
+				fail("Formatted a sublist that isn't a list");
+			} catch (IllegalFormatConversionException ifcex) {
+				// Expected
+			}
+
+			assertEquals(seqOut.toString(), parOut.toString());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testRecompile() throws IOException {
+		String text = "Dear ~A, you owe ~:D for ~{~A~^, ~}.~[~; Thanks!~]";
+
+		CLString prev = fmt.compile(text);
+
+		// Each edit is an offset, a count of removed characters, and new text
+		Object[][] edits = {
+				{ 5, 2, "~@(~A~)" },	// Replace a directive with a group
+				{ 0, 0, "~1%" },	// Insert at the start
+				{ 22, 0, "~~" },	// Split a literal with a directive
+				{ 22, 2, "" },	// Take it back out
+				{ 41, 0, "#" },	// Insert inside a group
+		};
+
+		List<Object> items = asList(3, 4);
+
+		for (Object[] edit : edits) {
+			int offset      = (Integer) edit[0];
+			int removed     = (Integer) edit[1];
+			String inserted = (String) edit[2];
+
+			String edited = text.substring(0, offset) + inserted
+					+ text.substring(offset + removed);
+
+			CLString next = fmt.recompile(prev, text, offset, removed, inserted);
+
+			assertEquals(edited, fmt.compile(edited).format("bob", 1234, items, 1, "x"),
+					next.format("bob", 1234, items, 1, "x"));
+
+			text = edited;
+			prev = next;
+		}
+
+		// An edit that breaks the string fails just like compiling it would
+		try {
+			fmt.recompile(prev, text, 0, 0, "~]");
+
+			fail("Recompiled a group end outside of a group");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testRegisterDirective() throws IOException {
+		CLFormatter custom = new CLFormatter();
+
+		Directive quote = new Directive() {
+			@Override
+			public Edict compile(CompileContext compCTX) {
+				return (formCTX) -> {
+					formCTX.writer.write("'" + formCTX.items.item() + "'");
+
+					formCTX.items.right();
+				};
+			}
+		};
+
+		try {
+			custom.formatString("~Q", "a");
+
+			fail("Used a directive before it was registered");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+
+		assertEquals("x", custom.formatString("~A", "x"));
+
+		custom.registerDirective("Q", quote);
+		custom.registerDirective("A", quote);
+
+		// Strings compiled with the old directives aren't used from the cache
+		assertEquals("'x'", custom.formatString("~A", "x"));
+		assertEquals("'a' 'b'", custom.formatString("~Q ~A", "a", "b"));
+		assertEquals("'c'", custom.compile("~{~A~}").format(asList("c")));
+
+		assertTrue(custom.unregisterDirective("A"));
+		assertFalse(custom.unregisterDirective("A"));
+		assertEquals("x", custom.formatString("~A", "x"));
+
+		// Frozen formatters keep the directives they were frozen with
+		CLFormatter frozen = custom.freeze();
+		assertEquals("'a'", frozen.formatString("~Q", "a"));
+
+		try {
+			frozen.registerDirective("Z", quote);
+
+			fail("Registered a directive with a frozen formatter");
+		} catch (IllegalStateException isex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testPageDecorations() throws IOException {
+		StringWriter sw = new StringWriter();
+
+		try (ReportWriter rw = new ReportWriter(sw)) {
+			rw.setLinesPerPage(1);
+			rw.setPageHeader(fmt.compile("Page ~R~%").asPageDecoration());
+
+			fmt.compile("~A\n~A").format(rw, "a", "b");
+		}
+
+		assertEquals("Page one\na\nPage two\nb", sw.toString());
+	}
+
+	@Test
+	public void testStreamTape() throws IOException {
+		int[] pulled = new int[1];
+
+		Iterator<Object> rows = new Iterator<Object>() {
+			@Override
+			public boolean hasNext() {
+				return pulled[0] < 1000;
+			}
+
+			@Override
+			public Object next() {
+				return pulled[0]++;
+			}
+		};
+
+		CLString twice = fmt.compile("~@{~A=~:* ~A~^ ~}");
+		StreamTape<Object> tape = new StreamTape<>(rows, 1);
+
+		String res = twice.format(new ReportWriter(), tape);
+
+		assertTrue(res.startsWith("0= 0 1= 1 2= 2 "));
+		assertTrue(res.endsWith(" 999= 999"));
+		assertEquals(1000, tape.size());
+
+		pulled[0] = 0;
+		tape = new StreamTape<>(rows, 1);
+
+		assertEquals("Items are read as they are needed", "0 1",
+				fmt.compile("~A ~A").format(new ReportWriter(), tape));
+		assertEquals(2, pulled[0]);
+
+		try {
+			fmt.compile("~A~A~3:* ~A").format(new ReportWriter(), tape);
+
+			fail("Moved back further than the window");
+		} catch (IllegalStateException isex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testAnalyze() {
+		FormatAnalysis simple = fmt.compile("Hello ~A, you are ~5D!").analyze(10);
+
+		assertTrue(simple.hasFixedArguments());
+		assertEquals(2, simple.getMaxArguments());
+		assertEquals("Hello , you are !".length() + 10 + NumberUtils.MAX_COMMA_LENGTH,
+				simple.getMaxOutput());
+		assertTrue(simple.isSafe());
+
+		FormatAnalysis optional = fmt.compile("~:[no~;yes ~A~]").analyze(10);
+
+		assertFalse(optional.hasFixedArguments());
+		assertEquals(1, optional.getMinArguments());
+		assertEquals(2, optional.getMaxArguments());
+
+		FormatAnalysis bounded = fmt.compile("~5{~A~^, ~}").analyze(10);
+
+		assertEquals("Iteration runs one more than its maximum", 6 * 12,
+				bounded.getMaxOutput());
+		assertTrue(bounded.isSafe());
+
+		FormatAnalysis unbounded = fmt.compile("~@{~A ~:* ~}").analyze();
+
+		assertTrue(unbounded.hasHazard(FormatAnalysis.Hazard.UNBOUNDED_ITERATION));
+		assertTrue(unbounded.hasHazard(FormatAnalysis.Hazard.BACKWARD_JUMP));
+		assertFalse(unbounded.isOutputBounded());
+
+		FormatAnalysis recursive = fmt.compile("~?").analyze();
+
+		assertTrue(recursive.hasHazard(FormatAnalysis.Hazard.UNBOUNDED_RECURSION));
+		assertFalse(recursive.isSafe());
+	}
+
+	@Test
+	public void testFormatLimits() throws IOException {
+		FormatLimits limits = new FormatLimits(100, 10, 2);
+
+		assertLimited("~@{~A~}", limits, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+		assertLimited("~100A~100A", limits, 1, 2);
+		assertLimited("~?", limits, "~?", asList("~?", asList("~A", asList(1))));
+
+		ReportWriter rw = new ReportWriter();
+		fmt.compile("~@{~A~}").formatInto(
+				new FormatContext(rw, new SingleTape<>(asList(1, 2, 3)), limits));
+
+		assertEquals("Formats within the limits work", "123", rw.toString());
+	}
+
+	@Test
+	public void testDirectiveFormatLimits() throws IOException {
+		FormatLimits limits = new FormatLimits(1000, 10000, 2);
+
+		// Each of these is a single directive asked to print far too much.
+		Object[][] cases = {
+				{ "~V%", 50000000 },
+				{ "~50000000A", "x" },
+				{ "~V,,,'*@A", 50000000, "x" },
+				{ "~VD", 50000000, 1 },
+				{ "~V,5@T", 50000000 },
+		};
+
+		for (Object[] cse : cases) {
+			String   format = (String) cse[0];
+			Object[] params = Arrays.copyOfRange(cse, 1, cse.length);
+
+			ReportWriter rw = new ReportWriter();
+
+			try {
+				fmt.compile(format).formatInto(
+						new FormatContext(rw, new SingleTape<>(params), limits));
+
+				fail("Format went over the limits: " + format);
+			} catch (FormatLimitExceeded flex) {
+				// Expected
+			}
+
+			assertTrue("Printed " + rw.getCharsWritten() + " characters for " + format,
+					rw.getCharsWritten() <= 1000);
+		}
+	}
+
+	@Test
+	public void testParallelFormatLimits() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			CLFormatter parFmt = new CLFormatter();
+			parFmt.setParallelIteration(2, pool);
+
+			CLString parallel = parFmt.compile("~:{~A~%~}");
+			assertTrue(parallel.isParallel());
+
+			List<Object> rows = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) rows.add(asList(String.format("row %04d", i)));
+
+			int rowLength = parallel.format(rows.subList(0, 1)).length();
+
+			// The rows are split into chunks of 62 or 63, each of which is under
+			// the limits by itself, but they aren't together.
+			assertParallelLimited(parallel, new FormatLimits(1000, 10000, 2), rows,
+					1000 + rowLength);
+			assertParallelLimited(parallel, new FormatLimits(100000, 200, 2), rows,
+					200 * rowLength);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void assertParallelLimited(CLString format, FormatLimits limits,
+			List<Object> rows, int maxPrinted) throws IOException {
+		ReportWriter rw = new ReportWriter();
+
+		try {
+			format.formatInto(
+					new FormatContext(rw, new SingleTape<>(new Object[] { rows }), limits));
+
+			fail("Format went over the limits: " + limits);
+		} catch (FormatLimitExceeded flex) {
+			// Expected
+		}
+
+		String printed = rw.toString();
+
+		assertTrue("Printed " + printed.length() + " characters with limits " + limits,
+				printed.length() <= maxPrinted);
+	}
+
+	private void assertLimited(String format, FormatLimits limits, Object... params)
+			throws IOException {
+		FormatContext formCTX
+				= new FormatContext(new ReportWriter(), new SingleTape<>(params), limits);
+
+		try {
+			fmt.compile(format).formatInto(formCTX);
+
+			fail("Format went over the limits: " + format);
+		} catch (FormatLimitExceeded flex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testSpecializedString() throws IOException {
+		Object[][] cases = {
+				{ "Plain text, no directives." },
+				{ "a~1%b~3%c~~d~|e" },
+				{ "Hello, ~A! You are ~D years old.", "World", 42 },
+				{ "~{~A~^, ~}.", asList("a", "b", "c") },
+				{ "~A~^ and ~A", "foo" },
+				{ "~:@(~A~) ~@R ~8,'0X", "loud", 1999, 0xBEEF },
+				{ "~[zero~;one~:;many~]: ~V%end", 1, 2 },
+		};
+
+		for (Object[] cse : cases) {
+			String   format = (String) cse[0];
+			Object[] params = Arrays.copyOfRange(cse, 1, cse.length);
+
+			CLString interp = fmt.compile(format);
+			CLString spec   = interp.specialize();
+
+			assertFalse(interp.isSpecialized());
+			assertTrue(spec.isSpecialized());
+			assertSame(spec, spec.specialize());
+
+			assertEquals(format, interp.format(params), spec.format(params));
+		}
+
+		CLString frozen = fmt.compileFrozen("~A and ~A").specialize();
+		assertTrue(frozen.isFrozen());
+		assertEquals("1 and 2", frozen.format(1, 2));
+
+		// Huge constant counts aren't folded into text up front
+		CLString huge = fmt.compile("a~2000000000%b").specialize();
+		assertTrue(huge.isSpecialized());
+
+		ReportWriter rw = new ReportWriter();
+		try {
+			huge.formatInto(new FormatContext(rw, new SingleTape<>(),
+					new FormatLimits(1000, 10000, 2)));
+
+			fail("Format went over the limits");
+		} catch (FormatLimitExceeded flex) {
+			// Expected
+		}
+
+		assertEquals("a", rw.toString());
+
+		CLString longer = fmt.compile("~5000%").specialize();
+		assertEquals("\n".repeat(5000), longer.format());
+	}
+
+	@Test
+	public void testDecimalFormats() throws IOException {
+		CLFormatter locFmt = new CLFormatter();
+
+		locFmt.setLocale(Locale.US);
+		assertEquals(Locale.US, locFmt.getLocale());
+
+		assertEquals("1,234.5", locFmt.formatString("~`D", 1234.5));
+		assertEquals("0001.50", locFmt.formatString("~\"0000.00\"`D", 1.5));
+		assertEquals("0001.50 12.3", locFmt.formatString("~V`D ~V`D", "0000.00", 1.5, "#.#", 12.34));
+
+		// Use more patterns than get cached, more than once
+		CLString strang = locFmt.compile("~V`D");
+		for (int i = 0; i < 60; i++) {
+			int places = 1 + (i % 20);
+
+			String pattern  = "0." + "0".repeat(places);
+			String expected = "1.5" + "0".repeat(places - 1);
+
+			assertEquals(expected, strang.format(pattern, 1.5));
+		}
+
+		locFmt.setLocale(Locale.GERMANY);
+
+		assertEquals("1.234,5", locFmt.formatString("~`D", 1234.5));
+		assertEquals("1,50", locFmt.formatString("~\"0.00\"`D", 1.5));
+	}
+
+	// Check that every object reachable from a frozen string can't be changed
+	private static void assertImmutable(Object obj, Map<Object, Object> seen) {
+		if (obj == null || seen.containsKey(obj)) return;
+		seen.put(obj, obj);
+
+		if (obj instanceof CLFormatter) {
+			assertTrue("Reachable formatter isn't frozen", ((CLFormatter) obj).isFrozen());
+			return;
+		}
+
+		if (obj instanceof Collection<?>) {
+			for (Object elm : (Collection<?>) obj) assertImmutable(elm, seen);
+			return;
+		}
+
+		Class<?> clasz = obj.getClass();
+		if (!clasz.getName().startsWith("bjc.utils.ioutils.format")) return;
+		if (clasz.isEnum()) return;
+
+		for (Class<?> cls = clasz; cls != Object.class; cls = cls.getSuperclass()) {
+			for (Field fld : cls.getDeclaredFields()) {
+				int mods = fld.getModifiers();
+
+				if (Modifier.isStatic(mods)) continue;
+
+				assertTrue("Mutable field " + fld, Modifier.isFinal(mods));
+
+				try {
+					fld.setAccessible(true);
+
+					assertImmutable(fld.get(obj), seen);
+				} catch (IllegalAccessException iaex) {
+					throw new AssertionError(iaex);
+				}
+			}
+		}
+	}
+
 	/*private void assertFormat(String msg, String res, String fomt, Object... params) {
 		assertEquals(msg, res, format(fomt, params));
 	}*/
@@ -82,4 +82,26 @@ public class CLParametersTest {
 			assertEquals("Mixed parameters work", "4", val3.getValue(scratch));
 		}
 	}
+
+	@Test
+	public void testLiteralValues() {
+		Tape<Object> scratch = new SingleTape<>();
+
+		CLParameters params = fromDirective("12,'x,,abc");
+
+		assertEquals("Literal ints parse", 12,
+				params.getByIndex(0).asInt(scratch, "test", "T", 0));
+		assertEquals("Literal chars parse", 'x',
+				params.getByIndex(1).asChar(scratch, "test", "T", ' '));
+		assertEquals("Blank literals use the default", 7,
+				params.getByIndex(2).asInt(scratch, "test", "T", 7));
+
+		try {
+			params.getByIndex(3).asInt(scratch, "test", "T", 0);
+
+			fail("Non-numeric literal used as an int");
+		} catch (IllegalArgumentException iaex) {
+			// Expected
+		}
+	}
 }
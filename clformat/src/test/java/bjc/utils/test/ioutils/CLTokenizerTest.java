@@ -1,5 +1,8 @@
 package bjc.utils.test.ioutils;
 
+import java.util.*;
+import java.util.regex.*;
+
 import bjc.utils.ioutils.format.*;
 
 import org.junit.Test;
@@ -24,4 +27,69 @@ public class CLTokenizerTest {
 		assertTrue("Decree from empty tokenizer is a literal", dec.isLiteral);
 		assertEquals("Decree from empty tokenizer is empty", "", dec.name);
 	}
+
+	@Test
+	public void testMatchesPattern() {
+		// The tokenizer should find the same directives the regex does
+		String[] inputs = {
+				"~:{~8,'0X: ~2{~8@{~#     ~:;~2,'0X ~]~}  ~}~v@{  ~}~2{~8@{~A~} ~}~%~}",
+				"~#[ none~; ~A~; ~A and ~A:;~@{~#*[ ~A,~; and ~A~; ~A~]~}~]",
+				"~#[NONE~;~a~;~a and ~a~:;~a, ~a~]~#[~; and ~a~:;, ~a, etc~]",
+				"~12 ~1,2 ~,,D ~'ab ~VA ~V ~%b ~`` ~:: ~/ab ~/ab/ ~ x",
+				"~\"a,b\",5D ~\"a\\\"b\"D ~#name;'x,3@:D ~-5,+3R ~```[ ~`/",
+		};
+
+		for (String input : inputs) {
+			Matcher mat = CLPattern.getDirectiveMatcher(input);
+
+			CLTokenizer tokenzer = new CLTokenizer(input);
+
+			while (tokenzer.hasNext()) {
+				SimpleDecree dec = tokenzer.next();
+
+				if (dec.isLiteral && !dec.isUserCall) continue;
+
+				assertTrue("Regex found directive " + dec + " in " + input, mat.find());
+
+				assertEquals(mat.start(), (int) dec.position.getLeft());
+				assertEquals(mat.end(),   (int) dec.position.getRight());
+				assertEquals(mat.group("name"), dec.name);
+			}
+
+			assertFalse("Tokenizer found all directives in " + input, mat.find());
+		}
+	}
+
+	@Test
+	public void testLiteralPositions() {
+		CLTokenizer tokenzer = new CLTokenizer("ab~Acd~");
+
+		assertDecree(tokenzer.next(), true,  "ab",  0, 2);
+		assertDecree(tokenzer.next(), false, "A",   2, 4);
+		// A trailing ~ that isn't a directive is kept as text
+		assertDecree(tokenzer.next(), true,  "cd~",  4, 7);
+
+		assertFalse("Tokenizer has no more decrees", tokenzer.hasNext());
+	}
+
+	@Test
+	public void testErrorPosition() {
+		CLFormatter fmt = new CLFormatter();
+
+		try {
+			fmt.compile("abc ~A ~]");
+
+			fail("Stray conditional-end compiled");
+		} catch (IllegalArgumentException iaex) {
+			assertTrue(iaex.getMessage(), iaex.getMessage().contains("position 7"));
+		}
+	}
+
+	private static void assertDecree(SimpleDecree dec, boolean isLiteral, String name,
+			int start, int end) {
+		assertEquals("Literal-ness of " + dec, isLiteral, dec.isLiteral);
+		assertEquals(name, dec.name);
+		assertEquals(start, (int) dec.position.getLeft());
+		assertEquals(end,   (int) dec.position.getRight());
+	}
 }